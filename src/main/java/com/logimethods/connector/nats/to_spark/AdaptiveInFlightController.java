@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes the maximum number of in-flight (unacknowledged) messages of a NATS Streaming receiver,
+ * in a way similar to the TCP congestion control (slow start, additive increase / multiplicative decrease):
+ * <ul>
+ * <li>when the mean time needed to store a message into Spark is above the target latency, the window is halved,</li>
+ * <li>when it is below the target while the whole window has been used during the last period, the window grows
+ * (doubled until the first decrease, then increased by 10%).</li>
+ * </ul>
+ * The window always stays within the [min, max] bounds.
+ */
+class AdaptiveInFlightController implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final int minInFlight;
+	protected final int maxInFlight;
+	protected final long targetLatencyNanos;
+
+	protected int window;
+	protected boolean slowStart = true;
+	protected transient LongAdder messages = new LongAdder();
+	protected transient LongAdder latencies = new LongAdder();
+
+	/**
+	 * @param minInFlight, the lower bound of the window
+	 * @param maxInFlight, the upper bound of the window
+	 * @param targetLatencyNanos, the maximum mean time (in nanoseconds) to store a message into Spark
+	 * @param initialWindow, the first window
+	 */
+	AdaptiveInFlightController(int minInFlight, int maxInFlight, long targetLatencyNanos, int initialWindow) {
+		if ((minInFlight <= 0) || (maxInFlight < minInFlight)) {
+			throw new IllegalArgumentException("Invalid maxInFlight bounds: [" + minInFlight + ", " + maxInFlight + "]");
+		}
+		this.minInFlight = minInFlight;
+		this.maxInFlight = maxInFlight;
+		this.targetLatencyNanos = targetLatencyNanos;
+		this.window = bound(initialWindow);
+	}
+
+	/**
+	 * Records the time needed to store a message (between its delivery by NATS and its acknowledgment).
+	 * @param latencyNanos, the time in nanoseconds
+	 */
+	void record(long latencyNanos) {
+		messages.increment();
+		latencies.add(latencyNanos);
+	}
+
+	/**
+	 * @return the new window, computed from the messages recorded since the previous call
+	 */
+	synchronized int adjust() {
+		final long count = messages.sumThenReset();
+		final long totalLatency = latencies.sumThenReset();
+		if (count == 0) {
+			return window;
+		}
+
+		final long meanLatency = totalLatency / count;
+		if (meanLatency > targetLatencyNanos) {
+			slowStart = false;
+			window = bound(window / 2);
+		} else if (count >= window) {
+			window = bound(slowStart ? window * 2 : window + Math.max(1, window / 10));
+		}
+		return window;
+	}
+
+	/**
+	 * @return the current window
+	 */
+	synchronized int getWindow() {
+		return window;
+	}
+
+	protected int bound(int value) {
+		return Math.max(minInFlight, Math.min(maxInFlight, value));
+	}
+
+	/**
+	 * The counters are not serialized: they are created with the deserialized controller, before it is shared by any thread.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		messages = new LongAdder();
+		latencies = new LongAdder();
+	}
+
+	@Override
+	public String toString() {
+		return "AdaptiveInFlightController [minInFlight=" + minInFlight + ", maxInFlight=" + maxInFlight
+				+ ", targetLatencyNanos=" + targetLatencyNanos + ", window=" + window + "]";
+	}
+}
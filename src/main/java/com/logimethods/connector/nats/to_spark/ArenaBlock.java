@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+
+/**
+ * A block of raw NATS messages, stored into Spark as a single object by a receiver collecting them through {@code asArenaStreamOf()}:
+ * the payloads are written back to back into fixed size slabs, indexed by their offsets, and the NATS Subjects are only kept once per block.
+ * <p>
+ * The messages are decoded while the block is iterated (see {@link #decode(BiFunction)}).
+ *
+ * @author agent
+ */
+public class ArenaBlock implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final byte[][] slabs;
+	protected final int slabSize;
+	protected final int[] offsets;
+	protected final int[] subjectIds;
+	protected final String[] subjects;
+
+	/**
+	 * @param slabs, the concatenated payloads, split into slabs (all full, except the last one)
+	 * @param slabSize, the size of the slabs
+	 * @param offsets, the offset of each payload within the concatenated payloads, followed by their total size
+	 * @param subjectIds, the index (within subjects) of the NATS Subject of each payload
+	 * @param subjects, the NATS Subjects of that block
+	 */
+	public ArenaBlock(byte[][] slabs, int slabSize, int[] offsets, int[] subjectIds, String[] subjects) {
+		this.slabs = slabs;
+		this.slabSize = slabSize;
+		this.offsets = offsets;
+		this.subjectIds = subjectIds;
+		this.subjects = subjects;
+	}
+
+	/**
+	 * @return the number of messages of that block
+	 */
+	public int size() {
+		return subjectIds.length;
+	}
+
+	/**
+	 * @param index, the index of a message
+	 * @return the NATS Subject of that message
+	 */
+	public String getSubject(int index) {
+		return subjects[subjectIds[index]];
+	}
+
+	/**
+	 * @param index, the index of a message
+	 * @return a copy of the payload of that message
+	 */
+	public byte[] getPayload(int index) {
+		final int start = offsets[index];
+		final int end = offsets[index + 1];
+		final byte[] payload = new byte[end - start];
+		int position = start;
+		while (position < end) {
+			final int slabPosition = position % slabSize;
+			final int size = Math.min(end - position, slabSize - slabPosition);
+			System.arraycopy(slabs[position / slabSize], slabPosition, payload, position - start, size);
+			position += size;
+		}
+		return payload;
+	}
+
+	/**
+	 * @param decoder, decodes a message from its NATS Subject &amp; payload
+	 * @param <X> the type of the decoded messages
+	 * @return the decoded messages, each of them being decoded when reached
+	 */
+	public <X> Iterator<X> decode(BiFunction<String, byte[], X> decoder) {
+		return new Iterator<X>() {
+			int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size();
+			}
+
+			@Override
+			public X next() {
+				if (! hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final int index = next++;
+				return decoder.apply(getSubject(index), getPayload(index));
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "ArenaBlock [messages=" + size() + ", bytes=" + offsets[size()] + ", subjects=" + subjects.length + "]";
+	}
+}
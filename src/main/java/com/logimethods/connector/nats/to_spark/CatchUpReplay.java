@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+/**
+ * Splits the backlog of a NATS Streaming channel (from its first to its last sequence) into contiguous ranges
+ * of (almost) the same size, each of them to be replayed by its own temporary subscription, and keeps track of their completion.
+ * <p>
+ * The ranges cover the backlog without overlap, so once all of them are replayed, a live subscription starting
+ * at {@code last + 1} receives the following messages without gap nor duplicate.
+ */
+class CatchUpReplay {
+
+	protected final String channel;
+	protected final long first;
+	protected final long last;
+	protected final long rangeSize;
+	protected final boolean[] completed;
+	protected int remaining;
+
+	/**
+	 * @param channel, the replayed NATS Streaming channel
+	 * @param first, the first sequence of the backlog
+	 * @param last, the last sequence of the backlog
+	 * @param ranges, the requested number of ranges (reduced if the backlog is smaller)
+	 */
+	CatchUpReplay(String channel, long first, long last, int ranges) {
+		if ((first <= 0) || (last < first) || (ranges < 1)) {
+			throw new IllegalArgumentException("Invalid backlog of '" + channel + "': [" + first + ", " + last + "] / " + ranges);
+		}
+		this.channel = channel;
+		this.first = first;
+		this.last = last;
+		final long backlog = last - first + 1;
+		final int count = (int) Math.min(ranges, backlog);
+		this.rangeSize = (backlog + count - 1) / count;
+		// The last ranges might be empty after the rounding up
+		final int used = (int) ((backlog + rangeSize - 1) / rangeSize);
+		this.completed = new boolean[used];
+		this.remaining = used;
+	}
+
+	String getChannel() {
+		return channel;
+	}
+
+	long getFirst() {
+		return first;
+	}
+
+	long getLast() {
+		return last;
+	}
+
+	int getRanges() {
+		return completed.length;
+	}
+
+	/**
+	 * @param range, the index of a range
+	 * @return the first sequence of that range
+	 */
+	long getFrom(int range) {
+		return first + range * rangeSize;
+	}
+
+	/**
+	 * @param range, the index of a range
+	 * @return the last sequence of that range
+	 */
+	long getTo(int range) {
+		return Math.min(last, getFrom(range) + rangeSize - 1);
+	}
+
+	/**
+	 * @param range, the index of a range whose last message has been handled
+	 * @return true if that range was not already completed
+	 */
+	synchronized boolean complete(int range) {
+		if (completed[range]) {
+			return false;
+		}
+		completed[range] = true;
+		remaining--;
+		return true;
+	}
+
+	synchronized boolean isCompleted(int range) {
+		return completed[range];
+	}
+
+	/**
+	 * @return true once all the ranges have been replayed
+	 */
+	synchronized boolean isComplete() {
+		return remaining == 0;
+	}
+
+	/**
+	 * @return the highest sequence below which all the messages have been replayed
+	 */
+	synchronized long getReplayedSequence() {
+		for (int range = 0; range < completed.length; range++) {
+			if (! completed[range]) {
+				return getFrom(range) - 1;
+			}
+		}
+		return last;
+	}
+
+	@Override
+	public String toString() {
+		return "CatchUpReplay [channel=" + channel + ", first=" + first + ", last=" + last + ", ranges=" + completed.length + "]";
+	}
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+/**
+ * The ways the NATS Subjects of a receiver are spread over NATS Dispatchers (each of them being a thread).
+ *
+ * @see OmnipotentStandardNatsToSparkConnector#withDispatcherTopology(DispatcherTopology, int)
+ * @see OmnipotentNatsStreamingToSparkConnector#withDispatcherTopology(DispatcherTopology, int)
+ */
+public enum DispatcherTopology {
+	/**
+	 * One single Dispatcher handles all the Subjects (the default of the NATS Streaming receivers).
+	 */
+	SHARED,
+	/**
+	 * A fixed pool of Dispatchers, the Subjects being assigned to them by Consistent Hashing.
+	 */
+	POOL,
+	/**
+	 * One Dispatcher per Subject (the default of the standard NATS receivers).
+	 */
+	PER_SUBJECT
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import io.nats.streaming.Message;
+import io.nats.streaming.MessageHandler;
+
+/**
+ * The handler of a NATS Streaming subscription which is about to be closed (see {@code adaptiveMaxInFlight()}):
+ * once drained, the messages still delivered to that subscription are ignored (left unacknowledged, they are redelivered
+ * to the other members of the queue group when that subscription is closed), while the ones being handled are awaited.
+ */
+class DrainableMessageHandler implements MessageHandler {
+
+	protected final MessageHandler messageHandler;
+	protected volatile boolean draining = false;
+	protected int active = 0;
+
+	/**
+	 * @param messageHandler, the handler of the messages
+	 */
+	DrainableMessageHandler(MessageHandler messageHandler) {
+		this.messageHandler = messageHandler;
+	}
+
+	@Override
+	public void onMessage(Message message) {
+		synchronized (this) {
+			if (draining) {
+				return;
+			}
+			active++;
+		}
+		try {
+			messageHandler.onMessage(message);
+		} finally {
+			synchronized (this) {
+				if (--active == 0) {
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops handling the new messages, then waits for the ones being handled.
+	 * @param timeoutMillis, the maximum time to wait
+	 * @return true if no message is being handled anymore
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	synchronized boolean drain(long timeoutMillis) throws InterruptedException {
+		draining = true;
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while ((active > 0) && (remaining > 0)) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return active == 0;
+	}
+}
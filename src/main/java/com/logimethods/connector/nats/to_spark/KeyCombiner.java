@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+
+import com.codahale.metrics.Counter;
+
+import scala.Tuple2;
+
+/**
+ * Folds the values received for the same key (the NATS Subject) with an associative function,
+ * so a single Key/Value record per key is stored into Spark for each flush (usually, each Spark Block Interval).
+ * <p>
+ * The keys &amp; values are kept in two arrays (open addressing with linear probing), which are reused from one flush to the next:
+ * no entry is allocated per received message.
+ *
+ * @param <V> the type of the values
+ * @param <M> the type of the NATS Messages kept to be acknowledged once their combined record has been stored
+ */
+class KeyCombiner<V, M> {
+
+	protected static final int INITIAL_CAPACITY = 64;
+
+	protected final BinaryOperator<V> reducer;
+	protected final boolean keepMessages;
+	protected final Counter combinedCounter;
+
+	protected String[] keys = new String[INITIAL_CAPACITY];
+	protected Object[] values = new Object[INITIAL_CAPACITY];
+	protected int size = 0;
+	protected long received = 0;
+	protected List<M> messages = new ArrayList<M>();
+
+	/**
+	 * @param reducer, the associative function folding two values of the same key
+	 * @param keepMessages, whether the messages have to be provided on flush (to be acknowledged)
+	 * @param combinedCounter, counts the records saved by the combination
+	 */
+	KeyCombiner(BinaryOperator<V> reducer, boolean keepMessages, Counter combinedCounter) {
+		this.reducer = reducer;
+		this.keepMessages = keepMessages;
+		this.combinedCounter = combinedCounter;
+	}
+
+	/**
+	 * @param key, the key of the value (its NATS Subject)
+	 * @param value, the decoded value
+	 * @param message, the NATS Message of that value
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized void add(String key, V value, M message) {
+		final int index = indexOf(keys, key);
+		if (keys[index] == null) {
+			keys[index] = key;
+			values[index] = value;
+			if (++size * 2 > keys.length) {
+				grow();
+			}
+		} else {
+			values[index] = reducer.apply((V) values[index], value);
+		}
+		received++;
+		if (keepMessages) {
+			messages.add(message);
+		}
+	}
+
+	/**
+	 * Provides the combined records (one per key) &amp; their messages to the sink, then starts a new combination.
+	 * @param sink, stores the records (then acknowledges the messages, if any)
+	 */
+	@SuppressWarnings("unchecked")
+	void flush(BiConsumer<List<Tuple2<String, V>>, List<M>> sink) {
+		final List<Tuple2<String, V>> records;
+		final List<M> combinedMessages;
+		final long combined;
+		synchronized (this) {
+			if (size == 0) {
+				return;
+			}
+			records = new ArrayList<Tuple2<String, V>>(size);
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != null) {
+					records.add(new Tuple2<String, V>(keys[i], (V) values[i]));
+					keys[i] = null;
+					values[i] = null;
+				}
+			}
+			combined = received - size;
+			size = 0;
+			received = 0;
+			combinedMessages = messages;
+			messages = new ArrayList<M>(keepMessages ? combinedMessages.size() : 0);
+		}
+		combinedCounter.inc(combined);
+		sink.accept(records, combinedMessages);
+	}
+
+	/**
+	 * @return the number of distinct keys waiting to be flushed
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	protected void grow() {
+		final String[] previousKeys = keys;
+		final Object[] previousValues = values;
+		keys = new String[previousKeys.length * 2];
+		values = new Object[previousValues.length * 2];
+		for (int i = 0; i < previousKeys.length; i++) {
+			if (previousKeys[i] != null) {
+				final int index = indexOf(keys, previousKeys[i]);
+				keys[index] = previousKeys[i];
+				values[index] = previousValues[i];
+			}
+		}
+	}
+
+	protected static int indexOf(String[] table, String key) {
+		final int mask = table.length - 1;
+		final int h = key.hashCode();
+		int index = (h ^ (h >>> 16)) & mask;
+		while ((table[index] != null) && (! table[index].equals(key))) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+}
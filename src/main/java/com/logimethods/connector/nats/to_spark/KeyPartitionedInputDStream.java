@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.streaming.StreamingContext;
+import org.apache.spark.streaming.Time;
+import org.apache.spark.streaming.dstream.ReceiverInputDStream;
+import org.apache.spark.streaming.receiver.Receiver;
+import org.apache.spark.streaming.scheduler.ReceivedBlockInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scala.Option;
+import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+import scala.reflect.ClassTag;
+
+/**
+ * A Spark Stream of Key (the NATS Subject) / Value records, whose RDDs are partitioned by a {@link org.apache.spark.HashPartitioner} on their keys.
+ * <p>
+ * Its receiver stores each block with the index of the partition of its keys (as block metadata),
+ * so the blocks can be grouped by partition (see {@link KeyPartitionedRDD}) without moving any data.
+ *
+ * @param <V> the type of the values
+ * @author agent
+ */
+public class KeyPartitionedInputDStream<V> extends ReceiverInputDStream<Tuple2<String, V>> {
+
+	private static final long serialVersionUID = 1L;
+
+	static final Logger logger = LoggerFactory.getLogger(KeyPartitionedInputDStream.class);
+
+	protected final Receiver<Tuple2<String, V>> receiver;
+	protected final int partitions;
+	protected final ClassTag<Tuple2<String, V>> classTag;
+
+	/**
+	 * @param ssc, the (Scala based) Spark Streaming Context
+	 * @param receiver, a Key/Value receiver storing its blocks by partition
+	 * @param partitions, the number of partitions
+	 * @param classTag, the ClassTag of the records
+	 */
+	public KeyPartitionedInputDStream(StreamingContext ssc, Receiver<Tuple2<String, V>> receiver, int partitions, ClassTag<Tuple2<String, V>> classTag) {
+		super(ssc, classTag);
+		this.receiver = receiver;
+		this.partitions = partitions;
+		this.classTag = classTag;
+	}
+
+	@Override
+	public Receiver<Tuple2<String, V>> getReceiver() {
+		return receiver;
+	}
+
+	/**
+	 * @return the number of partitions of the RDDs
+	 */
+	public int getPartitions() {
+		return partitions;
+	}
+
+	@Override
+	public Option<RDD<Tuple2<String, V>>> compute(Time validTime) {
+		final Option<RDD<Tuple2<String, V>>> blocks = super.compute(validTime);
+		if (blocks.isEmpty()) {
+			return blocks;
+		}
+
+		final Option<Seq<ReceivedBlockInfo>> infos = context().scheduler().receiverTracker().getBlocksOfBatch(validTime).get(id());
+		final List<ReceivedBlockInfo> blockInfos = infos.isDefined() 
+				? JavaConverters.seqAsJavaListConverter(infos.get()).asJava() 
+				: Collections.<ReceivedBlockInfo>emptyList();
+		final RDD<Tuple2<String, V>> rdd = blocks.get();
+		if (blockInfos.size() != rdd.partitions().length) {
+			logger.warn("The blocks of {} at {} do not match its RDD: that RDD is not partitioned.", this, validTime);
+			return blocks;
+		}
+
+		// The partitions of the Block RDD follow the order of its blocks
+		final List<Option<Object>> metadata = new ArrayList<Option<Object>>(blockInfos.size());
+		for (ReceivedBlockInfo blockInfo : blockInfos) {
+			metadata.add(blockInfo.metadataOption());
+		}
+		final int[] blockPartitions = getBlockPartitions(metadata, partitions);
+		if (blockPartitions == null) {
+			logger.warn("Some blocks of {} have not been stored by partition: the RDD at {} is not partitioned.", this, validTime);
+			return blocks;
+		}
+		return Option.apply(new KeyPartitionedRDD<Tuple2<String, V>>(rdd, blockPartitions, partitions, classTag));
+	}
+
+	/**
+	 * @param metadata, the metadata of each block
+	 * @param partitions, the number of partitions
+	 * @return the (key) partition of each block, or null if one of those blocks has not been stored by partition
+	 */
+	static int[] getBlockPartitions(List<Option<Object>> metadata, int partitions) {
+		final int[] blockPartitions = new int[metadata.size()];
+		for (int i = 0; i < blockPartitions.length; i++) {
+			final Option<Object> blockMetadata = metadata.get(i);
+			if (blockMetadata.isEmpty() || (! (blockMetadata.get() instanceof Integer))) {
+				return null;
+			}
+			final int partition = (Integer) blockMetadata.get();
+			if ((partition < 0) || (partition >= partitions)) {
+				return null;
+			}
+			blockPartitions[i] = partition;
+		}
+		return blockPartitions;
+	}
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.spark.Dependency;
+import org.apache.spark.HashPartitioner;
+import org.apache.spark.NarrowDependency;
+import org.apache.spark.Partition;
+import org.apache.spark.Partitioner;
+import org.apache.spark.TaskContext;
+import org.apache.spark.rdd.RDD;
+
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+import scala.reflect.ClassTag;
+
+/**
+ * An RDD made of the blocks of a key partitioned receiver (see {@link KeyPartitionedInputDStream}), where each partition
+ * gathers the blocks holding the keys of that partition, according to a {@link HashPartitioner}.
+ * <p>
+ * Since that RDD declares its partitioner, the key based operations using the same number of partitions
+ * ({@code reduceByKey(func, partitions)}, {@code join(other, partitions)}...) do not need to shuffle it.
+ *
+ * @param <T> the type of the (Key/Value) records
+ * @author agent
+ */
+public class KeyPartitionedRDD<T> extends RDD<T> {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final RDD<T> blocks;
+	protected final int[][] blocksOf;
+	protected final HashPartitioner hashPartitioner;
+
+	/**
+	 * @param blocks, the RDD of the received blocks
+	 * @param blockPartitions, the (key) partition of each block
+	 * @param partitions, the number of partitions
+	 * @param classTag, the ClassTag of the records
+	 */
+	public KeyPartitionedRDD(RDD<T> blocks, int[] blockPartitions, int partitions, ClassTag<T> classTag) {
+		this(blocks, group(blockPartitions, partitions), classTag);
+	}
+
+	protected KeyPartitionedRDD(RDD<T> blocks, int[][] blocksOf, ClassTag<T> classTag) {
+		super(blocks.context(), dependencies(new BlockDependency<T>(blocks, blocksOf)), classTag);
+		this.blocks = blocks;
+		this.blocksOf = blocksOf;
+		this.hashPartitioner = new HashPartitioner(blocksOf.length);
+	}
+
+	@Override
+	public Option<Partitioner> partitioner() {
+		return Option.apply((Partitioner) hashPartitioner);
+	}
+
+	@Override
+	public Partition[] getPartitions() {
+		final Partition[] parentPartitions = blocks.partitions();
+		final Partition[] partitions = new Partition[blocksOf.length];
+		for (int i = 0; i < partitions.length; i++) {
+			final Partition[] parents = new Partition[blocksOf[i].length];
+			for (int j = 0; j < parents.length; j++) {
+				parents[j] = parentPartitions[blocksOf[i][j]];
+			}
+			partitions[i] = new KeyPartition(i, parents);
+		}
+		return partitions;
+	}
+
+	@Override
+	public scala.collection.Iterator<T> compute(Partition split, TaskContext context) {
+		final Partition[] parents = ((KeyPartition) split).parents;
+		final Iterator<T> records = new Iterator<T>() {
+			int next = 0;
+			Iterator<T> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (! current.hasNext()) {
+					if (next >= parents.length) {
+						return false;
+					}
+					current = JavaConverters.asJavaIteratorConverter(blocks.iterator(parents[next++], context)).asJava();
+				}
+				return true;
+			}
+
+			@Override
+			public T next() {
+				if (! hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+		return JavaConverters.asScalaIteratorConverter(records).asScala();
+	}
+
+	@Override
+	public Seq<String> getPreferredLocations(Partition split) {
+		final Set<String> locations = new LinkedHashSet<String>();
+		for (Partition parent : ((KeyPartition) split).parents) {
+			locations.addAll(JavaConverters.seqAsJavaListConverter(blocks.preferredLocations(parent)).asJava());
+		}
+		return JavaConverters.asScalaBufferConverter(new ArrayList<String>(locations)).asScala();
+	}
+
+	/**
+	 * @param blockPartitions, the (key) partition of each block
+	 * @param partitions, the number of partitions
+	 * @return the blocks of each partition
+	 */
+	protected static int[][] group(int[] blockPartitions, int partitions) {
+		final int[] counts = new int[partitions];
+		for (int partition : blockPartitions) {
+			counts[partition]++;
+		}
+		final int[][] blocksOf = new int[partitions][];
+		for (int partition = 0; partition < partitions; partition++) {
+			blocksOf[partition] = new int[counts[partition]];
+			counts[partition] = 0;
+		}
+		for (int block = 0; block < blockPartitions.length; block++) {
+			final int partition = blockPartitions[block];
+			blocksOf[partition][counts[partition]++] = block;
+		}
+		return blocksOf;
+	}
+
+	protected static Seq<Dependency<?>> dependencies(Dependency<?> dependency) {
+		final List<Dependency<?>> dependencies = new ArrayList<Dependency<?>>(1);
+		dependencies.add(dependency);
+		return JavaConverters.asScalaBufferConverter(dependencies).asScala();
+	}
+
+	protected static class KeyPartition implements Partition {
+		private static final long serialVersionUID = 1L;
+
+		protected final int index;
+		protected final Partition[] parents;
+
+		KeyPartition(int index, Partition[] parents) {
+			this.index = index;
+			this.parents = parents;
+		}
+
+		@Override
+		public int index() {
+			return index;
+		}
+
+		@Override
+		public int hashCode() {
+			return index;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof KeyPartition) && (((KeyPartition) other).index == index);
+		}
+	}
+
+	protected static class BlockDependency<T> extends NarrowDependency<T> {
+		private static final long serialVersionUID = 1L;
+
+		protected final int[][] blocksOf;
+
+		BlockDependency(RDD<T> blocks, int[][] blocksOf) {
+			super(blocks);
+			this.blocksOf = blocksOf;
+		}
+
+		@Override
+		public scala.collection.immutable.List<Object> getParents(int partitionId) {
+			final List<Object> parents = new ArrayList<Object>(blocksOf[partitionId].length);
+			for (int parent : blocksOf[partitionId]) {
+				parents.add(parent);
+			}
+			return JavaConverters.asScalaBufferConverter(parents).asScala().toList();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Keeps only the latest message of each NATS Subject between two flushes (usually, one per Spark Block Interval).
+ * <p>
+ * Each Subject owns a slot, created on its first message and then reused: a new message replaces the pending one
+ * with a single atomic swap, so the NATS Dispatcher(s) never wait for a lock nor for the decoding of the messages
+ * (which is done on flush). The replaced messages are counted by the provided Counter.
+ *
+ * @param <M> the type of the NATS Messages
+ */
+class LatestValueConflator<M> {
+
+	protected final ConcurrentHashMap<String, AtomicReference<M>> slots = new ConcurrentHashMap<String, AtomicReference<M>>();
+	protected final Counter conflatedCounter;
+
+	/**
+	 * @param conflatedCounter, counts the messages replaced by a more recent one
+	 */
+	LatestValueConflator(Counter conflatedCounter) {
+		this.conflatedCounter = conflatedCounter;
+	}
+
+	/**
+	 * @param subject, the NATS Subject of the message
+	 * @param message, the latest message of that Subject
+	 * @return the pending message replaced by that one, or null
+	 */
+	M offer(String subject, M message) {
+		AtomicReference<M> slot = slots.get(subject);
+		if (slot == null) {
+			slot = slots.computeIfAbsent(subject, s -> new AtomicReference<M>());
+		}
+		final M previous = slot.getAndSet(message);
+		if (previous != null) {
+			conflatedCounter.inc();
+		}
+		return previous;
+	}
+
+	/**
+	 * Provides the pending message of each Subject (if any) to the sink, emptying the slots.
+	 * @param sink, decodes &amp; stores a message
+	 * @return the number of provided messages
+	 */
+	int flush(Consumer<M> sink) {
+		int count = 0;
+		for (AtomicReference<M> slot : slots.values()) {
+			final M message = slot.getAndSet(null);
+			if (message != null) {
+				sink.accept(message);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of Subjects seen so far
+	 */
+	int subjects() {
+		return slots.size();
+	}
+}
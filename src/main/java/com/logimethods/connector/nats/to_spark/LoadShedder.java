@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * A bounded buffer between the NATS Dispatcher(s) and the Spark {@code store()} calls, which applies an {@link OverloadPolicy}
+ * (and counts the dropped messages) when the receiver cannot keep up, instead of letting the NATS Client drop them silently.
+ * <p>
+ * The pending messages are stored by a dedicated thread, which is throttled by the rate limiter of the Spark Receiver Supervisor
+ * (see {@code spark.streaming.receiver.maxRate} and {@code spark.streaming.backpressure.enabled}): the buffer fills up when that rate is exceeded.
+ *
+ * @param <M> the type of the NATS Messages
+ */
+class LoadShedder<M> {
+
+	static final Logger logger = LoggerFactory.getLogger(LoadShedder.class);
+
+	protected static final long POLL_TIMEOUT_MS = 100;
+
+	protected final OverloadPolicy policy;
+	protected final int capacity;
+	protected final int sampling;
+	protected final Consumer<M> store;
+	protected final Counter shedCounter;
+
+	protected final ArrayBlockingQueue<M> queue;
+	protected final LinkedHashMap<String, M> latestPerSubject;
+	protected final AtomicLong overloadedCount = new AtomicLong();
+
+	protected volatile boolean running = false;
+	protected Thread storingThread;
+
+	/**
+	 * @param policy, the policy to apply when the buffer is full
+	 * @param capacity, the maximum number of pending messages
+	 * @param sampling, the N of the 1-in-N {@link OverloadPolicy#SAMPLE} policy
+	 * @param store, decodes &amp; stores a message into Spark
+	 * @param shedCounter, counts the dropped messages
+	 */
+	LoadShedder(OverloadPolicy policy, int capacity, int sampling, Consumer<M> store, Counter shedCounter) {
+		this.policy = policy;
+		this.capacity = capacity;
+		this.sampling = Math.max(1, sampling);
+		this.store = store;
+		this.shedCounter = shedCounter;
+		if (policy == OverloadPolicy.LATEST_PER_SUBJECT) {
+			this.queue = null;
+			this.latestPerSubject = new LinkedHashMap<String, M>();
+		} else {
+			this.queue = new ArrayBlockingQueue<M>(capacity);
+			this.latestPerSubject = null;
+		}
+	}
+
+	/**
+	 * Called by the NATS Dispatcher(s).
+	 * @param subject, the NATS Subject of the message
+	 * @param message, the message to store
+	 */
+	void offer(String subject, M message) {
+		switch (policy) {
+		case DROP_NEWEST:
+			if (! queue.offer(message)) {
+				shedCounter.inc();
+			}
+			break;
+		case DROP_OLDEST:
+			while (! queue.offer(message)) {
+				if (queue.poll() != null) {
+					shedCounter.inc();
+				}
+			}
+			break;
+		case SAMPLE:
+			if (queue.offer(message)) {
+				overloadedCount.set(0);
+			} else if ((overloadedCount.getAndIncrement() % sampling) == 0) {
+				while (! queue.offer(message)) {
+					if (queue.poll() != null) {
+						shedCounter.inc();
+					}
+				}
+			} else {
+				shedCounter.inc();
+			}
+			break;
+		case LATEST_PER_SUBJECT:
+			synchronized (latestPerSubject) {
+				if (latestPerSubject.containsKey(subject)) {
+					latestPerSubject.put(subject, message);
+					shedCounter.inc();
+				} else if (latestPerSubject.size() < capacity) {
+					latestPerSubject.put(subject, message);
+					latestPerSubject.notify();
+				} else {
+					shedCounter.inc();
+				}
+			}
+			break;
+		}
+	}
+
+	void start(String name) {
+		running = true;
+		storingThread = new Thread(this::storeLoop, name);
+		storingThread.setDaemon(true);
+		storingThread.start();
+	}
+
+	void stop() {
+		running = false;
+		if (storingThread != null) {
+			storingThread.interrupt();
+			storingThread = null;
+		}
+	}
+
+	/**
+	 * @return the number of pending messages
+	 */
+	int size() {
+		if (queue != null) {
+			return queue.size();
+		}
+		synchronized (latestPerSubject) {
+			return latestPerSubject.size();
+		}
+	}
+
+	protected void storeLoop() {
+		try {
+			while (running) {
+				final M message = next();
+				if (message != null) {
+					store.accept(message);
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.debug("{} interrupted", Thread.currentThread().getName());
+		}
+	}
+
+	protected M next() throws InterruptedException {
+		if (queue != null) {
+			return queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		}
+		synchronized (latestPerSubject) {
+			if (latestPerSubject.isEmpty()) {
+				latestPerSubject.wait(POLL_TIMEOUT_MS);
+			}
+			final Iterator<Map.Entry<String, M>> iterator = latestPerSubject.entrySet().iterator();
+			if (iterator.hasNext()) {
+				final M message = iterator.next().getValue();
+				iterator.remove();
+				return message;
+			}
+			return null;
+		}
+	}
+}
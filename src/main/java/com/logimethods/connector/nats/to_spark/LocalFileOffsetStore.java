@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An {@link OffsetStore} keeping the sequences into a (Properties) file of the local file system,
+ * replaced atomically at each save.
+ *
+ * @author agent
+ */
+public class LocalFileOffsetStore implements OffsetStore {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final String directory;
+	protected final String name;
+
+	/**
+	 * @param directory, the directory of the file (created if needed)
+	 * @param name, the name of the file (without extension), which has to be specific to the receiver
+	 */
+	public LocalFileOffsetStore(String directory, String name) {
+		this.directory = directory;
+		this.name = name;
+	}
+
+	protected Path getPath() {
+		return Paths.get(directory, name + ".offsets");
+	}
+
+	@Override
+	public Map<String, Long> load() throws IOException {
+		final Map<String, Long> sequences = new HashMap<String, Long>();
+		final Path path = getPath();
+		if (Files.exists(path)) {
+			final Properties properties = new Properties();
+			try (InputStream in = Files.newInputStream(path)) {
+				properties.load(in);
+			}
+			for (String channel : properties.stringPropertyNames()) {
+				sequences.put(channel, Long.valueOf(properties.getProperty(channel)));
+			}
+		}
+		return sequences;
+	}
+
+	@Override
+	public void save(Map<String, Long> sequences) throws IOException {
+		final Properties properties = new Properties();
+		for (Map.Entry<String, Long> entry : sequences.entrySet()) {
+			properties.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+		final Path path = getPath();
+		Files.createDirectories(path.getParent());
+		final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp)) {
+			properties.store(out, null);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public String toString() {
+		return "LocalFileOffsetStore [" + getPath() + "]";
+	}
+}
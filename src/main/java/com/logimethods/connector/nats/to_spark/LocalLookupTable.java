@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * The (JVM local) content of a {@link NatsLookupCache}: a concurrent map read by the Spark tasks,
+ * updated by a single thread (the NATS Dispatcher of its subscription).
+ * <p>
+ * When a maximum number of entries is defined, the least recently updated keys are evicted.
+ * That order is only kept by the updating thread: the lookups are plain reads of the concurrent map.
+ *
+ * @param <V> the type of the values
+ */
+class LocalLookupTable<V> {
+
+	protected final int maxEntries;
+	protected final Counter updatesCounter;
+	protected final Counter evictedCounter;
+
+	protected final ConcurrentHashMap<String, V> values = new ConcurrentHashMap<String, V>();
+	protected final LinkedHashMap<String, Boolean> updateOrder = new LinkedHashMap<String, Boolean>();
+	protected volatile long lastUpdateNanos = 0;
+
+	/**
+	 * @param maxEntries, the maximum number of entries (0 for no limit)
+	 * @param updatesCounter, counts the applied updates
+	 * @param evictedCounter, counts the evicted entries
+	 */
+	LocalLookupTable(int maxEntries, Counter updatesCounter, Counter evictedCounter) {
+		this.maxEntries = maxEntries;
+		this.updatesCounter = updatesCounter;
+		this.evictedCounter = evictedCounter;
+	}
+
+	/**
+	 * To be called by a single thread.
+	 * @param key, the updated key
+	 * @param value, the new value of that key, or null to remove it
+	 */
+	void update(String key, V value) {
+		if (value == null) {
+			values.remove(key);
+			if (maxEntries > 0) {
+				updateOrder.remove(key);
+			}
+		} else {
+			values.put(key, value);
+			if (maxEntries > 0) {
+				updateOrder.remove(key);
+				updateOrder.put(key, Boolean.TRUE);
+				final Iterator<String> oldest = updateOrder.keySet().iterator();
+				while (updateOrder.size() > maxEntries) {
+					values.remove(oldest.next());
+					oldest.remove();
+					evictedCounter.inc();
+				}
+			}
+		}
+		updatesCounter.inc();
+		lastUpdateNanos = System.nanoTime();
+	}
+
+	/**
+	 * @param key, a key
+	 * @return the latest value of that key, or null if unknown
+	 */
+	V get(String key) {
+		return values.get(key);
+	}
+
+	int size() {
+		return values.size();
+	}
+
+	/**
+	 * @return the time of the latest update (see {@link System#nanoTime()}), or 0 if none
+	 */
+	long getLastUpdateNanos() {
+		return lastUpdateNanos;
+	}
+}
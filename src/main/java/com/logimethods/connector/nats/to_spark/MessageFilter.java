@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.io.Serializable;
+
+/**
+ * A predicate on the NATS Subject and the raw payload of a message, applied by the receivers before decoding &amp; storing that message
+ * (see {@code withFilter()}). Common filters are provided by {@link MessageFilters}.
+ * <p>
+ * The filter is called by the NATS Dispatcher(s): it should be fast, and should not modify the payload.
+ *
+ * @author agent
+ */
+@FunctionalInterface
+public interface MessageFilter extends Serializable {
+
+	/**
+	 * @param subject, the NATS Subject of the message
+	 * @param payload, the payload of the message, not decoded (but decompressed if the receiver decompresses the payloads)
+	 * @return true if that message has to be stored into Spark
+	 */
+	boolean accept(String subject, byte[] payload);
+
+	/**
+	 * @param other, another filter
+	 * @return a filter accepting the messages accepted by both filters
+	 */
+	default MessageFilter and(MessageFilter other) {
+		return (subject, payload) -> accept(subject, payload) && other.accept(subject, payload);
+	}
+
+	/**
+	 * @param other, another filter
+	 * @return a filter accepting the messages accepted by any of those filters
+	 */
+	default MessageFilter or(MessageFilter other) {
+		return (subject, payload) -> accept(subject, payload) || other.accept(subject, payload);
+	}
+
+	/**
+	 * @return a filter accepting the messages rejected by that one
+	 */
+	default MessageFilter negate() {
+		return (subject, payload) -> ! accept(subject, payload);
+	}
+}
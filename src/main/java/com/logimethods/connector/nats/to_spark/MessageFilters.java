@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.nio.charset.StandardCharsets;
+
+import com.logimethods.connector.nats_spark.NatsSparkUtilities;
+
+/**
+ * Common {@link MessageFilter}s, working on the NATS Subject tokens and on the raw payload bytes,
+ * without decoding the payload nor allocating any object per message.
+ *
+ * @author agent
+ */
+public final class MessageFilters {
+
+	private MessageFilters() {
+	}
+
+	/**
+	 * @param index, the position of the token (starting with 0) within the NATS Subject
+	 * @param token, the expected token
+	 * @return a filter accepting the Subjects (like {@code prices.EUR.USD}) having that token at that position
+	 */
+	public static MessageFilter subjectToken(int index, String token) {
+		return (subject, payload) -> {
+			int start = 0;
+			for (int i = 0; i < index; i++) {
+				start = subject.indexOf('.', start) + 1;
+				if (start == 0) {
+					return false;
+				}
+			}
+			int end = subject.indexOf('.', start);
+			if (end < 0) {
+				end = subject.length();
+			}
+			return (end - start == token.length()) && subject.regionMatches(start, token, 0, token.length());
+		};
+	}
+
+	/**
+	 * @param pattern, a NATS Subject, including wildcards ({@code *} for any token, {@code >} for the remaining tokens)
+	 * @return a filter accepting the Subjects matching that pattern
+	 */
+	public static MessageFilter subjectMatches(String pattern) {
+		return (subject, payload) -> NatsSparkUtilities.matchesSubject(pattern, subject);
+	}
+
+	/**
+	 * @param prefix, the expected first bytes of the payload
+	 * @return a filter accepting the payloads starting with those bytes
+	 */
+	public static MessageFilter payloadPrefix(byte[] prefix) {
+		return payloadBytes(0, prefix);
+	}
+
+	/**
+	 * @param prefix, the expected beginning of the payload (encoded as UTF-8)
+	 * @return a filter accepting the payloads starting with that String
+	 */
+	public static MessageFilter payloadPrefix(String prefix) {
+		return payloadBytes(0, prefix.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param offset, the position of the bytes within the payload
+	 * @param bytes, the expected bytes
+	 * @return a filter accepting the payloads holding those bytes at that position
+	 */
+	public static MessageFilter payloadBytes(int offset, byte[] bytes) {
+		final byte[] expected = bytes.clone();
+		return (subject, payload) -> (payload != null) && regionMatches(payload, offset, expected);
+	}
+
+	/**
+	 * Probes a JSON payload, without parsing it: the first occurrences of the field name (at any depth) are checked,
+	 * until one of them is followed by the expected value.
+	 * @param field, the name of a JSON field
+	 * @param value, the expected value of that field: a String (without its quotes), or a number, true, false or null
+	 * @return a filter accepting the JSON payloads where that field has that value
+	 */
+	public static MessageFilter jsonField(String field, String value) {
+		final byte[] name = ('"' + field + '"').getBytes(StandardCharsets.UTF_8);
+		final byte[] quoted = ('"' + value + '"').getBytes(StandardCharsets.UTF_8);
+		final byte[] literal = value.getBytes(StandardCharsets.UTF_8);
+		return (subject, payload) -> {
+			if (payload == null) {
+				return false;
+			}
+			int from = indexOf(payload, name, 0);
+			while (from >= 0) {
+				int i = skipWhitespaces(payload, from + name.length);
+				if ((i < payload.length) && (payload[i] == ':')) {
+					i = skipWhitespaces(payload, i + 1);
+					if (regionMatches(payload, i, quoted) 
+							|| (regionMatches(payload, i, literal) && isValueEnd(payload, i + literal.length))) {
+						return true;
+					}
+				}
+				from = indexOf(payload, name, from + name.length);
+			}
+			return false;
+		};
+	}
+
+	static boolean regionMatches(byte[] payload, int offset, byte[] expected) {
+		if ((offset < 0) || (payload.length - offset < expected.length)) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (payload[offset + i] != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static int indexOf(byte[] payload, byte[] expected, int from) {
+		final int last = payload.length - expected.length;
+		for (int i = from; i <= last; i++) {
+			if ((payload[i] == expected[0]) && regionMatches(payload, i, expected)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static int skipWhitespaces(byte[] payload, int from) {
+		int i = from;
+		while ((i < payload.length) && ((payload[i] == ' ') || (payload[i] == '\t') || (payload[i] == '\r') || (payload[i] == '\n'))) {
+			i++;
+		}
+		return i;
+	}
+
+	static boolean isValueEnd(byte[] payload, int i) {
+		return (i == payload.length) || (payload[i] == ',') || (payload[i] == '}') || (payload[i] == ']') 
+				|| (payload[i] == ' ') || (payload[i] == '\t') || (payload[i] == '\r') || (payload[i] == '\n');
+	}
+}
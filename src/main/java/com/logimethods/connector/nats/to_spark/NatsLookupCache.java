@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.logimethods.connector.nats_spark.NatsSparkMetrics;
+import com.logimethods.connector.nats_spark.NatsSparkUtilities;
+import com.logimethods.connector.nats_spark.ShutdownRegistry;
+import com.logimethods.connector.nats_spark.ShutdownRegistry.Phase;
+
+import io.nats.client.Connection;
+import io.nats.client.Dispatcher;
+import io.nats.client.Nats;
+import io.nats.client.Options;
+
+/**
+ * A Spark Executor local cache of (reference) data published on NATS, to be looked up from any Spark task:
+ * <pre>
+ * final NatsLookupCache&lt;String&gt; instruments =
+ * 		NatsLookupCache.newCache("instruments", String.class, "reference.instrument.&gt;").withNatsURL(NATS_SERVER_URL);
+ * trades.map(trade -&gt; new Tuple2&lt;&gt;(trade, instruments.get(trade.getSymbol())));
+ * </pre>
+ * <p>
+ * That handle is Serializable: it can be used inside the Spark closures. On each JVM, the first lookup subscribes (once per cache name)
+ * to the NATS Subjects, whose messages are then applied as updates: the key is the last token of the Subject (see {@link #withKeyExtractor(Function)}),
+ * the value is the decoded payload, and an empty payload removes the key.
+ * The following lookups are plain reads of a concurrent map, without any I/O.
+ * <p>
+ * The values published before that subscription are not known: the publisher of the reference data can be asked to publish them again
+ * (see {@link #withRefresh(String, Duration)}).
+ * The numbers of updates &amp; evictions are reported by the {@code cache.[name].updates} &amp; {@code cache.[name].evicted} Counters
+ * of {@link NatsSparkMetrics}, and the number of entries by the {@code cache.[name].size} Gauge.
+ *
+ * @param <V> the type of the values
+ *
+ * @author agent
+ */
+public class NatsLookupCache<V> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	static final Logger logger = LoggerFactory.getLogger(NatsLookupCache.class);
+
+	protected static final long QUIET_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	protected static final Map<String, LocalLookupTable<?>> tables = new HashMap<String, LocalLookupTable<?>>();
+	protected static final Map<String, Connection> connections = new HashMap<String, Connection>();
+
+	protected final String name;
+	protected final Class<V> type;
+	protected final Collection<String> subjects;
+	protected String natsURL;
+	protected Properties properties;
+	protected Function<byte[], V> dataDecoder = null;
+	protected Function<String, String> keyExtractor = null;
+	protected int maxEntries = 0;
+	protected String refreshSubject = null;
+	protected Duration warmUp = Duration.ZERO;
+	protected transient volatile LocalLookupTable<V> table;
+
+	protected NatsLookupCache(String name, Class<V> type, Collection<String> subjects) {
+		this.name = name;
+		this.type = type;
+		this.subjects = subjects;
+	}
+
+	/**
+	 * @param name, the name of that cache, shared by all its copies on a JVM
+	 * @param type, the type of the values
+	 * @param subjects, the NATS Subjects (wildcards allowed) on which the values are published
+	 * @return a new cache handle
+	 */
+	public static <V> NatsLookupCache<V> newCache(String name, Class<V> type, String... subjects) {
+		return new NatsLookupCache<V>(name, type, NatsSparkUtilities.transformIntoAList(subjects));
+	}
+
+	/**
+	 * @param natsURL, the NATS URL to set
+	 * @return the cache itself
+	 */
+	public NatsLookupCache<V> withNatsURL(String natsURL) {
+		this.natsURL = natsURL;
+		return this;
+	}
+
+	/**
+	 * @param properties, the properties of the NATS Connection
+	 * @return the cache itself
+	 */
+	public NatsLookupCache<V> withProperties(Properties properties) {
+		this.properties = properties;
+		return this;
+	}
+
+	/**
+	 * @param dataDecoder, the (Serializable) function used to decode the payloads into values
+	 * @return the cache itself
+	 */
+	public NatsLookupCache<V> withDataDecoder(Function<byte[], V> dataDecoder) {
+		this.dataDecoder = dataDecoder;
+		return this;
+	}
+
+	/**
+	 * @param keyExtractor, the (Serializable) function providing the key of the value published on a NATS Subject
+	 * @return the cache itself
+	 */
+	public NatsLookupCache<V> withKeyExtractor(Function<String, String> keyExtractor) {
+		this.keyExtractor = keyExtractor;
+		return this;
+	}
+
+	/**
+	 * @param maxEntries, the maximum number of entries per JVM, beyond which the least recently updated keys are evicted
+	 * @return the cache itself
+	 */
+	public NatsLookupCache<V> withMaxEntries(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("The maximum number of entries should be positive: " + maxEntries);
+		}
+		this.maxEntries = maxEntries;
+		return this;
+	}
+
+	/**
+	 * Once subscribed, publishes an (empty) message on the refresh Subject, asking the publisher of the reference data to publish it again,
+	 * then holds the first lookup until the updates stop (for 100 ms), or until the warm up duration is reached.
+	 * @param refreshSubject, the NATS Subject on which to ask for the values
+	 * @param warmUp, the maximum time to wait for those values
+	 * @return the cache itself
+	 */
+	public NatsLookupCache<V> withRefresh(String refreshSubject, Duration warmUp) {
+		this.refreshSubject = refreshSubject;
+		this.warmUp = warmUp;
+		return this;
+	}
+
+	/**
+	 * @param key, a key
+	 * @return the latest value of that key known by that JVM, or null if unknown
+	 */
+	public V get(String key) {
+		return getTable().get(key);
+	}
+
+	/**
+	 * @param key, a key
+	 * @param defaultValue, the value returned if that key is unknown
+	 * @return the latest value of that key known by that JVM, or the default value
+	 */
+	public V getOrDefault(String key, V defaultValue) {
+		final V value = getTable().get(key);
+		return (value != null) ? value : defaultValue;
+	}
+
+	/**
+	 * @return the number of entries known by that JVM
+	 */
+	public int size() {
+		return getTable().size();
+	}
+
+	/**
+	 * Closes the subscription of that cache on that JVM (the next lookup will subscribe again).
+	 */
+	public void close() {
+		synchronized (tables) {
+			tables.remove(name);
+			final Connection connection = connections.remove(name);
+			if (connection != null) {
+				ShutdownRegistry.unregister(connection);
+				try {
+					connection.close();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		table = null;
+	}
+
+	protected LocalLookupTable<V> getTable() {
+		LocalLookupTable<V> localTable = table;
+		if (localTable == null) {
+			localTable = open();
+			table = localTable;
+		}
+		return localTable;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected LocalLookupTable<V> open() {
+		synchronized (tables) {
+			LocalLookupTable<V> localTable = (LocalLookupTable<V>) tables.get(name);
+			if (localTable != null) {
+				return localTable;
+			}
+
+			localTable = new LocalLookupTable<V>(maxEntries, NatsSparkMetrics.counter("cache", name, "updates"),
+												NatsSparkMetrics.counter("cache", name, "evicted"));
+			try {
+				connections.put(name, subscribe(localTable));
+			} catch (IOException e) {
+				throw new IllegalStateException("Not able to subscribe " + this + ": " + e.getMessage(), e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while subscribing " + this, e);
+			}
+			final LocalLookupTable<V> gaugedTable = localTable;
+			NatsSparkMetrics.gauge((Gauge<Integer>) gaugedTable::size, "cache", name, "size");
+			tables.put(name, localTable);
+			return localTable;
+		}
+	}
+
+	protected Connection subscribe(LocalLookupTable<V> localTable) throws IOException, InterruptedException {
+		final Options options = (properties != null) ? new Options.Builder(properties).build()
+							: (natsURL != null) ? new Options.Builder().server(natsURL).build()
+							: new Options.Builder().build();
+		final Connection connection = ShutdownRegistry.register(Nats.connect(options), Phase.CONNECTION, Connection::close);
+
+		final Dispatcher dispatcher = connection.createDispatcher(m -> {
+			final String key = extractKey(m.getSubject());
+			final byte[] payload = m.getData();
+			try {
+				localTable.update(key, ((payload == null) || (payload.length == 0)) ? null : decodeData(payload));
+			} catch (Exception e) {
+				logger.warn("Not able to update '{}' of {}: {}", key, this, e.getMessage());
+			}
+		});
+		for (String subject : subjects) {
+			dispatcher.subscribe(subject);
+		}
+		logger.info("{} has subscribed to {}.", this, subjects);
+
+		if (refreshSubject != null) {
+			connection.publish(refreshSubject, new byte[0]);
+			warmUp(localTable);
+		}
+		return connection;
+	}
+
+	protected void warmUp(LocalLookupTable<V> localTable) throws InterruptedException {
+		final long deadline = System.nanoTime() + warmUp.toNanos();
+		while (System.nanoTime() < deadline) {
+			final long lastUpdate = localTable.getLastUpdateNanos();
+			if ((lastUpdate != 0) && (System.nanoTime() - lastUpdate > QUIET_PERIOD_NANOS)) {
+				break;
+			}
+			Thread.sleep(10);
+		}
+		logger.info("{} has been warmed up with {} entries.", this, localTable.size());
+	}
+
+	protected String extractKey(String subject) {
+		return (keyExtractor != null) ? keyExtractor.apply(subject) : subject.substring(subject.lastIndexOf('.') + 1);
+	}
+
+	protected V decodeData(byte[] payload) {
+		return (dataDecoder != null) ? dataDecoder.apply(payload) : NatsSparkUtilities.decodeData(type, payload);
+	}
+
+	@Override
+	public String toString() {
+		return "NatsLookupCache [name=" + name + ", subjects=" + subjects + (natsURL != null ? ", natsURL=" + natsURL : "") + "]";
+	}
+}
@@ -7,14 +7,23 @@
  *******************************************************************************/
 package com.logimethods.connector.nats.to_spark;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
 
 import org.apache.spark.storage.StorageLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.logimethods.connector.nats_spark.IncompleteException;
+import com.logimethods.connector.nats_spark.NatsSparkMetrics;
+
 import io.nats.streaming.Message;
 import io.nats.streaming.MessageHandler;
 import io.nats.streaming.SubscriptionOptions;
@@ -34,6 +43,12 @@ public class NatsStreamingToKeyValueSparkConnectorImpl<V>
 
 	protected static final Logger logger = LoggerFactory.getLogger(NatsStreamingToKeyValueSparkConnectorImpl.class);
 
+	protected BinaryOperator<V> combiner = null;
+	protected scala.Function2<V, V, V> scalaCombiner = null;
+	protected transient KeyCombiner<V, Message> keyCombiner;
+	protected int keyPartitions = 0;
+	protected transient PartitionedBlocks<V, Message> partitionedBlocks;
+
 	protected NatsStreamingToKeyValueSparkConnectorImpl(Class<V> type, StorageLevel storageLevel, Collection<String> subjects,
 			Properties properties, String queue, String natsUrl, String clusterID, String clientID, 
 			SubscriptionOptions subscriptionOpts, SubscriptionOptions.Builder subscriptionOptsBuilder, Function<byte[], V> dataDecoder, scala.Function1<byte[], V> scalaDataDecoder) {
@@ -48,6 +63,151 @@ public class NatsStreamingToKeyValueSparkConnectorImpl<V>
 		this.scalaDataDecoder = scalaDataDecoder;
 	}
 
+	/**
+	 * Folds the values received on the same NATS Subject during each Spark Block Interval, to store a single record per Subject
+	 * (as a reduceByKey() would do, but before the data is stored into Spark).
+	 * The messages are acknowledged (in the manual acknowledgement mode) &amp; checkpointed once their combined record has been stored.
+	 * The number of records saved that way is reported by the {@code receiver.[id].combined} Counter of {@link NatsSparkMetrics}.
+	 * 
+	 * @param combiner, an associative function folding two values of the same NATS Subject
+	 * @return the connector itself
+	 */
+	public NatsStreamingToKeyValueSparkConnectorImpl<V> withCombiner(BinaryOperator<V> combiner) {
+		this.combiner = combiner;
+		return this;
+	}
+
+	/**
+	 * @param scalaCombiner, an associative function folding two values of the same NATS Subject
+	 * @return the connector itself
+	 * @see #withCombiner(BinaryOperator)
+	 */
+	public NatsStreamingToKeyValueSparkConnectorImpl<V> withCombiner(scala.Function2<V, V, V> scalaCombiner) {
+		this.scalaCombiner = scalaCombiner;
+		return this;
+	}
+
+	/**
+	 * @param keyPartitions, the number of partitions the records are stored by (see asPartitionedStreamOfKeyValue())
+	 * @return the connector itself
+	 */
+	protected NatsStreamingToKeyValueSparkConnectorImpl<V> withKeyPartitions(int keyPartitions) {
+		this.keyPartitions = keyPartitions;
+		return this;
+	}
+
+	@Override
+	protected void receive() throws IOException, InterruptedException, IncompleteException, TimeoutException {
+		startPartitionedBlocks();
+		startCombiner();
+		super.receive();
+	}
+
+	/**
+	 * When an OffsetStore is defined, the partitioned blocks are stored with the blocks of the SequenceCheckpointer.
+	 */
+	protected void startPartitionedBlocks() {
+		if (keyPartitions <= 0) {
+			return;
+		}
+
+		partitionedBlocks = new PartitionedBlocks<V, Message>(keyPartitions, this::store, this::acknowledge);
+		if (offsetStore == null) {
+			final long interval = getBlockIntervalNanos();
+			getScheduler().scheduleWithFixedDelay(this::flushPartitionedBlocks, interval, interval, TimeUnit.NANOSECONDS);
+		}
+		logger.info("The records received by {} will be stored by blocks of {} partitions.", this, keyPartitions);
+	}
+
+	protected void flushPartitionedBlocks() {
+		final PartitionedBlocks<V, Message> blocks = partitionedBlocks;
+		if (blocks != null) {
+			try {
+				blocks.flush();
+			} catch (Exception e) {
+				logger.error("Not able to store the partitioned blocks of {}: {}", this, e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	protected void storeMessage(Tuple2<String, V> data, Message message) {
+		final PartitionedBlocks<V, Message> blocks = partitionedBlocks;
+		if ((blocks != null) && (checkpointer == null)) {
+			blocks.add(data, message);
+		} else {
+			super.storeMessage(data, message);
+		}
+	}
+
+	@Override
+	protected void storeBlock(List<Tuple2<String, V>> block) {
+		final PartitionedBlocks<V, Message> blocks = partitionedBlocks;
+		if (blocks != null) {
+			blocks.addAll(block, Collections.<Message>emptyList());
+			blocks.flush();
+		} else {
+			super.storeBlock(block);
+		}
+	}
+
+	protected void startCombiner() {
+		if ((combiner == null) && (scalaCombiner == null)) {
+			return;
+		}
+
+		final BinaryOperator<V> reducer = (combiner != null) ? combiner : scalaCombiner::apply;
+		final boolean keepMessages = (offsetStore != null) || getSubscriptionOptsBuilder().build().isManualAcks();
+		keyCombiner = new KeyCombiner<V, Message>(reducer, keepMessages, NatsSparkMetrics.counter(metricName("combined")));
+		final long interval = getBlockIntervalNanos();
+		getScheduler().scheduleWithFixedDelay(this::flushCombiner, interval, interval, TimeUnit.NANOSECONDS);
+		logger.info("The values received by {} will be combined per NATS Subject.", this);
+	}
+
+	protected void flushCombiner() {
+		final KeyCombiner<V, Message> combination = keyCombiner;
+		if (combination != null) {
+			try {
+				combination.flush(this::storeCombined);
+			} catch (Exception e) {
+				logger.error("Not able to store the combined records of {}: {}", this, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Stores the combined records (as part of the next block when an OffsetStore is defined, or of their partition block), 
+	 * then acknowledges the messages they are made of.
+	 * @param records, the combined records (one per NATS Subject)
+	 * @param messages, the NATS Streaming messages of those records
+	 */
+	protected void storeCombined(List<Tuple2<String, V>> records, List<Message> messages) {
+		final SequenceCheckpointer<Tuple2<String, V>> blocks = checkpointer;
+		if (blocks != null) {
+			blocks.addAll(records, messages);
+			return;
+		}
+		final PartitionedBlocks<V, Message> partitioned = partitionedBlocks;
+		if (partitioned != null) {
+			partitioned.addAll(records, messages);
+			return;
+		}
+		store(records.iterator());
+		for (Message message : messages) {
+			acknowledge(message);
+		}
+	}
+
+	@Override
+	public void onStop() {
+		// Stored while the checkpointer and the subscriptions (to acknowledge the messages) are still there
+		flushCombiner();
+		flushPartitionedBlocks();
+		super.onStop();
+		keyCombiner = null;
+		partitionedBlocks = null;
+	}
+
 	@Override
 	protected MessageHandler getMessageHandler() {
 		return new MessageHandler() {
@@ -59,8 +219,13 @@ public class NatsStreamingToKeyValueSparkConnectorImpl<V>
 					logger.trace("Received by {} on Subject '{}': {}.", NatsStreamingToKeyValueSparkConnectorImpl.this,
 							m.getSubject(), s);
 				}
-				
-				store(s);
+
+				final KeyCombiner<V, Message> combination = keyCombiner;
+				if (combination != null) {
+					combination.add(s._1, s._2, m);
+				} else {
+					storeMessage(s, m);
+				}
 			}
 		};
 	}
@@ -9,9 +9,11 @@ package com.logimethods.connector.nats.to_spark;
 
 import org.apache.spark.storage.StorageLevel;
 import org.apache.spark.streaming.StreamingContext;
+import org.apache.spark.streaming.api.java.JavaDStream;
 import org.apache.spark.streaming.api.java.JavaPairDStream;
 import org.apache.spark.streaming.api.java.JavaReceiverInputDStream;
 import org.apache.spark.streaming.api.java.JavaStreamingContext;
+import org.apache.spark.streaming.dstream.DStream;
 import org.apache.spark.streaming.dstream.ReceiverInputDStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import io.nats.streaming.Message;
 import io.nats.streaming.MessageHandler;
 import scala.Tuple2;
+import scala.reflect.ClassTag;
 
 /**
  * A NATS Streaming to Spark Connector.
@@ -76,6 +79,120 @@ public class NatsStreamingToSparkConnectorImpl<R> extends OmnipotentNatsStreamin
 		return ssc.receiverStream(this.storedAsKeyValue(), scala.reflect.ClassTag$.MODULE$.apply(Tuple2.class));
 	}
 
+	/**
+	 * The records are stored by blocks holding the keys of a single partition (according to a {@link org.apache.spark.HashPartitioner}), 
+	 * so the RDDs of that Stream come with a partitioner: the key based operations using the same number of partitions
+	 * (like {@code reduceByKey(func, partitions)}) do not need to shuffle them.
+	 * @param ssc, the (Java based) Spark Streaming Context
+	 * @param partitions, the number of partitions of the RDDs
+	 * @return a Spark Stream, belonging to the provided Context, 
+	 * that will collect NATS Messages as Key (the NATS Subject) / Value (the NATS Payload), partitioned by Key
+	 */
+	public JavaPairDStream<String, R> asPartitionedStreamOfKeyValue(JavaStreamingContext ssc, int partitions) {
+		return new JavaPairDStream<String, R>(asPartitionedStreamOfKeyValue(ssc.ssc(), partitions), 
+											scala.reflect.ClassTag$.MODULE$.apply(String.class), scala.reflect.ClassTag$.MODULE$.apply(type));
+	}
+
+	/**
+	 * @param ssc, the (Scala based) Spark Streaming Context
+	 * @param partitions, the number of partitions of the RDDs
+	 * @return a Spark Stream, belonging to the provided Context, 
+	 * that will collect NATS Messages as Tuples of (the NATS Subject) / (the NATS Payload), partitioned by Key
+	 * @see #asPartitionedStreamOfKeyValue(JavaStreamingContext, int)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public KeyPartitionedInputDStream<R> asPartitionedStreamOfKeyValue(StreamingContext ssc, int partitions) {
+		final NatsStreamingToKeyValueSparkConnectorImpl<R> receiver = this.storedAsKeyValue().withKeyPartitions(partitions);
+		return new KeyPartitionedInputDStream<R>(ssc, receiver, partitions, (ClassTag) scala.reflect.ClassTag$.MODULE$.apply(Tuple2.class));
+	}
+
+	/**
+	 * The raw payloads are copied into slabs (see {@link #withArenaSlabSize(int)}) and stored by blocks, one per Spark Block Interval,
+	 * then decoded by the Spark tasks: no object is allocated per message on the receiver side.
+	 * The size of each block (in bytes) is reported by the {@code receiver.[id].arena.blockBytes} Histogram of {@code NatsSparkMetrics}.
+	 * @param ssc, the (Java based) Spark Streaming Context
+	 * @return a Spark Stream, belonging to the provided Context, that will collect NATS Messages
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public JavaDStream<R> asArenaStreamOf(JavaStreamingContext ssc) {
+		arenaMode = true;
+		final JavaDStream<ArenaBlock> blocks = (JavaDStream) ssc.receiverStream(this);
+		return blocks.flatMap(block -> block.decode((subject, payload) -> decodeTaskData(payload)));
+	}
+
+	/**
+	 * @param ssc, the (Scala based) Spark Streaming Context
+	 * @return a Spark Stream, belonging to the provided Context, that will collect NATS Messages
+	 * @see #asArenaStreamOf(JavaStreamingContext)
+	 */
+	public DStream<R> asArenaStreamOf(StreamingContext ssc) {
+		return asArenaStreamOf(new JavaStreamingContext(ssc)).dstream();
+	}
+
+	/**
+	 * The raw payloads are copied into slabs (see {@link #withArenaSlabSize(int)}) and stored by blocks, one per Spark Block Interval,
+	 * then decoded by the Spark tasks: no object is allocated per message on the receiver side.
+	 * The size of each block (in bytes) is reported by the {@code receiver.[id].arena.blockBytes} Histogram of {@code NatsSparkMetrics}.
+	 * @param ssc, the (Java based) Spark Streaming Context
+	 * @return a Spark Stream, belonging to the provided Context, 
+	 * that will collect NATS Messages as Key (the NATS Subject) / Value (the NATS Payload)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public JavaPairDStream<String, R> asArenaStreamOfKeyValue(JavaStreamingContext ssc) {
+		arenaMode = true;
+		final JavaDStream<ArenaBlock> blocks = (JavaDStream) ssc.receiverStream(this);
+		return blocks.flatMapToPair(block -> block.decode((subject, payload) -> new Tuple2<String, R>(subject, decodeTaskData(payload))));
+	}
+
+	/**
+	 * @param ssc, the (Scala based) Spark Streaming Context
+	 * @return a Spark Stream, belonging to the provided Context, 
+	 * that will collect NATS Messages as Tuples of (the NATS Subject) / (the NATS Payload)
+	 * @see #asArenaStreamOfKeyValue(JavaStreamingContext)
+	 */
+	public DStream<Tuple2<String, R>> asArenaStreamOfKeyValue(StreamingContext ssc) {
+		return asArenaStreamOfKeyValue(new JavaStreamingContext(ssc)).dstream();
+	}
+
+	/**
+	 * @param ssc, the (Java based) Spark Streaming Context
+	 * @param n, the number of receivers, sharing the same NATS Queue (or splitting the Subjects, see withSubjectSharding()) and spread over the Spark Executors
+	 * @return the union of the Spark Streams, belonging to the provided Context, that will collect NATS Messages
+	 */
+	public JavaDStream<R> asParallelStreamOf(JavaStreamingContext ssc, int n) {
+		return unionOf(ssc, replicate(this, n));
+	}
+	
+	/**
+	 * @param ssc, the (Scala based) Spark Streaming Context
+	 * @param n, the number of receivers, sharing the same NATS Queue (or splitting the Subjects, see withSubjectSharding()) and spread over the Spark Executors
+	 * @return the union of the Spark Streams, belonging to the provided Context, that will collect NATS Messages
+	 */
+	public DStream<R> asParallelStreamOf(StreamingContext ssc, int n) {
+		return unionOf(ssc, replicate(this, n), scala.reflect.ClassTag$.MODULE$.apply(type));
+	}
+	
+	/**
+	 * @param ssc, the (Java based) Spark Streaming Context
+	 * @param n, the number of receivers, sharing the same NATS Queue (or splitting the Subjects, see withSubjectSharding()) and spread over the Spark Executors
+	 * @return the union of the Spark Streams, belonging to the provided Context, 
+	 * that will collect NATS Messages as Key (the NATS Subject) / Value (the NATS Payload)
+	 */
+	public JavaPairDStream<String, R> asParallelStreamOfKeyValue(JavaStreamingContext ssc, int n) {
+		return unionOf(ssc, replicate(this.storedAsKeyValue(), n)).mapToPair(tuple -> tuple);
+	}
+	
+	/**
+	 * @param ssc, the (Scala based) Spark Streaming Context
+	 * @param n, the number of receivers, sharing the same NATS Queue (or splitting the Subjects, see withSubjectSharding()) and spread over the Spark Executors
+	 * @return the union of the Spark Streams, belonging to the provided Context, 
+	 * that will collect NATS Messages as Tuples of (the NATS Subject) / (the NATS Payload)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public DStream<Tuple2<String, R>> asParallelStreamOfKeyValue(StreamingContext ssc, int n) {
+		return unionOf(ssc, replicate(this.storedAsKeyValue(), n), (ClassTag) scala.reflect.ClassTag$.MODULE$.apply(Tuple2.class));
+	}
+
 	@Override
 	protected MessageHandler getMessageHandler() {
 		return new MessageHandler() {
@@ -86,7 +203,7 @@ public class NatsStreamingToSparkConnectorImpl<R> extends OmnipotentNatsStreamin
 					logger.trace("Received by {} on Subject '{}': {}.", NatsStreamingToSparkConnectorImpl.this,
 							m.getSubject(), s);
 				}
-				store(s);
+				storeMessage(s, m);
 			}
 		};
 	}
@@ -11,22 +11,46 @@ import static com.logimethods.connector.nats_spark.Constants.PROP_SUBJECTS;
 import static io.nats.client.Options.PROP_URL;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.spark.SparkEnv;
 import org.apache.spark.storage.StorageLevel;
+import org.apache.spark.streaming.StreamingContext;
+import org.apache.spark.streaming.api.java.JavaDStream;
+import org.apache.spark.streaming.api.java.JavaStreamingContext;
+import org.apache.spark.streaming.dstream.DStream;
 import org.apache.spark.streaming.receiver.Receiver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.logimethods.connector.nats_spark.ConsistentHashRing;
 import com.logimethods.connector.nats_spark.IncompleteException;
+import com.logimethods.connector.nats_spark.NatsSparkMetrics;
 import com.logimethods.connector.nats_spark.NatsSparkUtilities;
+import com.logimethods.connector.nats_spark.PayloadCompression;
+import com.logimethods.connector.nats_spark.PayloadDictionaries;
+import com.logimethods.connector.nats_spark.PayloadDictionary;
+import com.logimethods.connector.nats_spark.UnknownDictionaryException;
 
 import io.nats.client.Message;
 import io.nats.streaming.StreamingConnection;
 import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.reflect.ClassTag;
 
 /**
  * A NATS to Spark Connector.
@@ -60,9 +84,32 @@ public abstract class NatsToSparkConnector<T,R,V> extends Receiver<R> {
 	protected String 			 natsUrl;
 	protected Function<byte[], V> dataDecoder = null;
 	protected scala.Function1<byte[], V> scalaDataDecoder = null;
+	protected boolean decompression = false;
+	protected String dictionaryControlSubject = PayloadDictionaries.DEFAULT_CONTROL_SUBJECT;
 	protected transient StreamingConnection connection;
+	protected transient ScheduledExecutorService scheduler;
+	protected Duration restartInitialDelay = Duration.ofSeconds(1);
+	protected Duration restartMaxDelay = Duration.ofMinutes(1);
+	protected transient int restartAttempts = 0;
+	protected transient long failureStartNanos = 0;
+	protected transient volatile boolean stopping = false;
+	protected boolean subjectSharding = false;
+	protected int shardIndex = 0;
+	protected int shardCount = 1;
+	protected int replicaCount = 1;
+	protected boolean conflation = false;
+	protected MessageFilter messageFilter = null;
+	protected boolean arenaMode = false;
+	protected int arenaSlabSize = DEFAULT_ARENA_SLAB_SIZE;
+	protected long reassemblyMaxBytes = 0;
+	protected Duration reassemblyTimeout = DEFAULT_REASSEMBLY_TIMEOUT;
 
 	protected final static String CLIENT_ID = "NatsToSparkConnector_";
+	protected static final String BLOCK_INTERVAL_PROPERTY = "spark.streaming.blockInterval";
+	protected static final String DEFAULT_BLOCK_INTERVAL = "200ms";
+	protected static final int DEFAULT_ARENA_SLAB_SIZE = 64 * 1024;
+	protected static final long DEFAULT_REASSEMBLY_MAX_BYTES = 64 * 1024 * 1024;
+	protected static final Duration DEFAULT_REASSEMBLY_TIMEOUT = Duration.ofSeconds(30);
 
 	protected NatsToSparkConnector(Class<V> type, StorageLevel storageLevel) {
 		super(storageLevel);
@@ -146,6 +193,229 @@ public abstract class NatsToSparkConnector<T,R,V> extends Receiver<R> {
 		return (T)this;
 	}
 
+	/**
+	 * A payload compressed with a dictionary which is still unknown is never decoded as it is: the dictionary is requested to the publishers
+	 * and waited for (up to {@link PayloadDictionaries#REQUEST_TIMEOUT}), then the message is rejected.
+	 * A rejected NATS Streaming message is not acknowledged (with manual acks), to be redelivered; a rejected NATS message is dropped
+	 * and counted by the {@code receiver.[id].rejected} Counter.
+	 * @param decompression, if true, the compressed payloads (see {@link PayloadCompression}) will be decompressed before being decoded,
+	 * while the other ones will be decoded as they are
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withDecompression(boolean decompression) {
+		this.decompression = decompression;
+		return (T)this;
+	}
+
+	/**
+	 * @param decompression, if true, the compressed payloads (see {@link PayloadCompression}) will be decompressed before being decoded,
+	 * while the other ones will be decoded as they are (see {@link #withDecompression(boolean)})
+	 * @param dictionaryControlSubject, the NATS Subject on which the compression dictionaries are announced by the publishers
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withDecompression(boolean decompression, String dictionaryControlSubject) {
+		this.decompression = decompression;
+		this.dictionaryControlSubject = dictionaryControlSubject;
+		return (T)this;
+	}
+
+	/**
+	 * When set, the receivers created by asParallelStreamOf() will split the NATS Subjects between them
+	 * (by Consistent Hashing, see {@link ConsistentHashRing}) instead of all subscribing to all of them:
+	 * the messages of a given Subject will then be received by one single receiver, in order.
+	 * @param subjectSharding, true to split the subjects between the parallel receivers
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withSubjectSharding(boolean subjectSharding) {
+		this.subjectSharding = subjectSharding;
+		return (T)this;
+	}
+
+	/**
+	 * That receiver will only subscribe to its share of the NATS Subjects, as assigned by Consistent Hashing (see {@link ConsistentHashRing}).
+	 * @param shardIndex, the index of that receiver, between 0 and shardCount - 1
+	 * @param shardCount, the total number of receivers sharing those subjects
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withSubjectShard(int shardIndex, int shardCount) {
+		if ((shardIndex < 0) || (shardIndex >= shardCount)) {
+			throw new IllegalArgumentException("Invalid shard " + shardIndex + " out of " + shardCount);
+		}
+		this.subjectSharding = true;
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+		return (T)this;
+	}
+
+	/**
+	 * When the receiver cannot connect to NATS, or loses its connection, it is restarted by Spark after a delay
+	 * doubled after each failed attempt (with a random jitter), between the provided bounds.
+	 * The time needed to recover is reported by the {@code receiver.[id].recovery} Timer of {@link NatsSparkMetrics}.
+	 * @param initialDelay, the delay before the first restart
+	 * @param maxDelay, the maximum delay between two restarts
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withRestartBackoff(Duration initialDelay, Duration maxDelay) {
+		this.restartInitialDelay = initialDelay;
+		this.restartMaxDelay = maxDelay;
+		return (T)this;
+	}
+
+	/**
+	 * Only stores the latest message received on each NATS Subject during each Spark Block Interval (for prices or states, for example).
+	 * The messages are decoded &amp; stored once per Block Interval, so the NATS Dispatchers keep up with bursts.
+	 * The number of messages replaced by a more recent one is reported by the {@code receiver.[id].conflated} Counter of {@link NatsSparkMetrics}.
+	 * @param conflation, true to keep only the latest message of each Subject
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withConflation(boolean conflation) {
+		this.conflation = conflation;
+		return (T)this;
+	}
+
+	/**
+	 * Only stores the messages accepted by the filter, which is applied before their payload is decoded (see {@link MessageFilters}).
+	 * The numbers of accepted &amp; rejected messages are reported by the {@code receiver.[id].filter.accepted} &amp; {@code receiver.[id].filter.rejected}
+	 * Counters of {@link NatsSparkMetrics}, and the ratio of accepted messages by the {@code receiver.[id].filter.selectivity} Gauge.
+	 * When the decompression is enabled (see withDecompression()), the filter is given the decompressed payloads.
+	 * @param messageFilter, the predicate on the NATS Subject &amp; the (not decoded) payload of the messages
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withFilter(MessageFilter messageFilter) {
+		this.messageFilter = messageFilter;
+		return (T)this;
+	}
+
+	/**
+	 * Defines the size of the slabs into which the payloads are copied by a receiver collecting them through {@code asArenaStreamOf()}.
+	 * @param slabSize, the size (in bytes) of the (heap) slabs, by default 64 KB
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withArenaSlabSize(int slabSize) {
+		if (slabSize <= 0) {
+			throw new IllegalArgumentException("The size of the arena slabs should be positive: " + slabSize);
+		}
+		this.arenaSlabSize = slabSize;
+		return (T)this;
+	}
+
+	/**
+	 * Rebuilds the payloads split into chunks by the publishers (see {@code SparkToNatsConnector.withChunking()}) before they are decoded,
+	 * keeping up to 64 MB of partial payloads for up to 30 seconds.
+	 * @return the connector itself
+	 */
+	public T withChunkReassembly() {
+		return withChunkReassembly(DEFAULT_REASSEMBLY_MAX_BYTES, DEFAULT_REASSEMBLY_TIMEOUT);
+	}
+
+	/**
+	 * Rebuilds the payloads split into chunks by the publishers (see {@code SparkToNatsConnector.withChunking()}) before they are decoded.
+	 * The numbers of rebuilt &amp; dropped payloads are reported by the {@code receiver.[id].chunks.reassembled} &amp; {@code receiver.[id].chunks.expired}
+	 * Counters of {@link NatsSparkMetrics}. With NATS Streaming, the chunks are acknowledged once their rebuilt payload has been stored,
+	 * so the chunks of a dropped payload are redelivered.
+	 * @param maxBytes, the maximum size (in bytes) of the partial payloads kept by that receiver (the oldest ones are dropped beyond)
+	 * @param timeout, the time after which a partial payload is dropped
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withChunkReassembly(long maxBytes, Duration timeout) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("The size of the reassembly buffer should be positive: " + maxBytes);
+		}
+		this.reassemblyMaxBytes = maxBytes;
+		this.reassemblyTimeout = timeout;
+		return (T)this;
+	}
+
+	/**
+	 * Transfers the optional settings of that connector to the provided one (see storedAsKeyValue()).
+	 * @param connector, the connector to set
+	 * @return the provided connector
+	 */
+	protected <C extends NatsToSparkConnector<?,?,V>> C transferSettingsTo(C connector) {
+		connector.decompression = decompression;
+		connector.dictionaryControlSubject = dictionaryControlSubject;
+		connector.subjectSharding = subjectSharding;
+		connector.shardIndex = shardIndex;
+		connector.shardCount = shardCount;
+		connector.restartInitialDelay = restartInitialDelay;
+		connector.restartMaxDelay = restartMaxDelay;
+		connector.conflation = conflation;
+		connector.messageFilter = messageFilter;
+		connector.arenaSlabSize = arenaSlabSize;
+		connector.reassemblyMaxBytes = reassemblyMaxBytes;
+		connector.reassemblyTimeout = reassemblyTimeout;
+		return connector;
+	}
+
+	/**
+	 * Creates n receivers, copies of the provided one (sharing the same NATS Queue).
+	 * Spark spreads them over its Executors (see its ReceiverSchedulingPolicy).
+	 * @param receiver, the receiver to copy (left untouched)
+	 * @param n, the number of receivers
+	 * @return the receivers
+	 */
+	protected static <C extends NatsToSparkConnector<?,?,?>> List<C> replicate(C receiver, int n) {
+		if (n < 1) {
+			throw new IllegalArgumentException("At least one receiver is required: " + n);
+		}
+		final List<C> receivers = new ArrayList<C>(n);
+		for (int i = 0; i < n; i++) {
+			final C copy = SerializationUtils.clone(receiver);
+			copy.replicaCount = n;
+			copy.prepareReplica(i);
+			if (copy.subjectSharding) {
+				copy.shardIndex = i;
+				copy.shardCount = n;
+			}
+			receivers.add(copy);
+		}
+		logger.info("{} receivers will share the '{}' NATS Queue.", n, receiver.natsQueue);
+		return receivers;
+	}
+
+	/**
+	 * Called on each receiver created by replicate(), to make it distinct from the other ones.
+	 * @param index, the index of that receiver
+	 */
+	protected void prepareReplica(int index) {
+	}
+
+	/**
+	 * @param ssc, the (Java based) Spark Streaming Context
+	 * @param receivers, the receivers to collect messages from
+	 * @return the union of the Spark Streams of those receivers
+	 */
+	protected static <X> JavaDStream<X> unionOf(JavaStreamingContext ssc, List<? extends Receiver<X>> receivers) {
+		final List<JavaDStream<X>> streams = new ArrayList<JavaDStream<X>>(receivers.size());
+		for (Receiver<X> receiver : receivers) {
+			streams.add(ssc.receiverStream(receiver));
+		}
+		return (streams.size() == 1) ? streams.get(0) : ssc.union(streams.get(0), streams.subList(1, streams.size()));
+	}
+
+	/**
+	 * @param ssc, the (Scala based) Spark Streaming Context
+	 * @param receivers, the receivers to collect messages from
+	 * @param classTag, the ClassTag of the collected messages
+	 * @return the union of the Spark Streams of those receivers
+	 */
+	protected static <X> DStream<X> unionOf(StreamingContext ssc, List<? extends Receiver<X>> receivers, ClassTag<X> classTag) {
+		final List<DStream<X>> streams = new ArrayList<DStream<X>>(receivers.size());
+		for (Receiver<X> receiver : receivers) {
+			streams.add(ssc.receiverStream(receiver, classTag));
+		}
+		return (streams.size() == 1) ? streams.get(0) : ssc.union(JavaConverters.asScalaBufferConverter(streams).asScala(), classTag);
+	}
+
 	/* **************** STANDARD NATS **************** */
 	
 	/**
@@ -175,20 +445,77 @@ public abstract class NatsToSparkConnector<T,R,V> extends Receiver<R> {
 	
 	@Override
 	public void onStart() {
+		stopping = false;
 		//Start the thread that receives data over a connection
-		new Thread()  {
+		new Thread("NatsToSparkConnector-" + streamId() + "-start")  {
 			@Override public void run() {
 				try {
 					receive();
+					recovered();
 				} catch (Exception e) {
 					logger.error("Cannot start the connector: ", e);
+					restartWithBackoff("Cannot start the connector", e);
 				}
 			}
 		}.start();
 	}
+
+	/**
+	 * Asks Spark to restart that receiver, after a delay which grows exponentially with the number of consecutive failures.
+	 * @param message, the reason of the restart
+	 * @param e, the cause of the restart (if any)
+	 */
+	protected synchronized void restartWithBackoff(String message, Throwable e) {
+		if (stopping) {
+			return;
+		}
+		if (failureStartNanos == 0) {
+			failureStartNanos = System.nanoTime();
+		}
+		final long delay = getRestartDelayMillis(restartAttempts++);
+		logger.warn("{}: {} will be restarted in {} ms (attempt {}).", message, this, delay, restartAttempts);
+		restart(message, e, (int) Math.min(Integer.MAX_VALUE, delay));
+	}
+
+	/**
+	 * @param attempt, the number of previous (consecutive) failed attempts
+	 * @return the delay before the next restart, in milliseconds
+	 */
+	protected long getRestartDelayMillis(int attempt) {
+		final long initial = Math.max(1, restartInitialDelay.toMillis());
+		final long max = Math.max(initial, restartMaxDelay.toMillis());
+		final int shift = Math.min(attempt, Long.numberOfLeadingZeros(initial) - 1);
+		final long backoff = Math.min(max, initial << shift);
+		// "Equal jitter": half of the delay is fixed, the other half is random
+		return (backoff / 2) + ThreadLocalRandom.current().nextLong((backoff / 2) + 1);
+	}
+
+	/**
+	 * To be called when the connection to NATS has been lost.
+	 */
+	protected synchronized void disconnected() {
+		if ((! stopping) && (failureStartNanos == 0)) {
+			failureStartNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * To be called when the receiver is connected (again) to NATS.
+	 */
+	protected synchronized void recovered() {
+		if (failureStartNanos != 0) {
+			final long recovery = System.nanoTime() - failureStartNanos;
+			NatsSparkMetrics.timer(metricName("recovery")).update(recovery, TimeUnit.NANOSECONDS);
+			logger.info("{} recovered after {} ms ({} restart(s)).", this, TimeUnit.NANOSECONDS.toMillis(recovery), restartAttempts);
+		}
+		failureStartNanos = 0;
+		restartAttempts = 0;
+	}
 	
 	@Override
 	public void onStop() {
+		stopping = true;
+		stopScheduler();
 		try {			
 			if (connection != null) {				
 				logger.info("Closing NATS Connection " + connection);
@@ -206,6 +533,38 @@ public abstract class NatsToSparkConnector<T,R,V> extends Receiver<R> {
 	 * @throws Exception
 	 **/
 	protected abstract void receive() throws Exception;
+
+	/**
+	 * @return a (daemon) thread to run the periodic tasks of that receiver, stopped with the receiver
+	 */
+	protected synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				final Thread thread = new Thread(r, "NatsToSparkConnector-" + streamId() + "-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return scheduler;
+	}
+
+	/**
+	 * @return the Spark Block Interval ({@code spark.streaming.blockInterval}), in nanoseconds
+	 */
+	protected long getBlockIntervalNanos() {
+		try {
+			return TimeUnit.MILLISECONDS.toNanos(SparkEnv.get().conf().getTimeAsMs(BLOCK_INTERVAL_PROPERTY, DEFAULT_BLOCK_INTERVAL));
+		} catch (Throwable e) {
+			return TimeUnit.MILLISECONDS.toNanos(200);
+		}
+	}
+
+	protected synchronized void stopScheduler() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
 	
 	protected void setNatsQueue() {
 		if (natsQueue == null )
@@ -230,6 +589,30 @@ public abstract class NatsToSparkConnector<T,R,V> extends Receiver<R> {
 		return subjects;
 	}    		
 
+	/**
+	 * @return the NATS Subjects to subscribe to, restricted to the share of that receiver when the Subjects are sharded
+	 * @throws IncompleteException
+	 */
+	protected Collection<String> getShardSubjects() throws IncompleteException {
+		final Collection<String> allSubjects = getSubjects();
+		if ((! subjectSharding) || (shardCount <= 1)) {
+			return allSubjects;
+		}
+		final ConsistentHashRing ring = new ConsistentHashRing(shardCount);
+		final List<String> shardSubjects = new ArrayList<String>();
+		for (String subject : allSubjects) {
+			if (ring.nodeOf(subject) == shardIndex) {
+				shardSubjects.add(subject);
+			}
+		}
+		if (shardSubjects.isEmpty()) {
+			logger.warn("The receiver {} (shard {} out of {}) has no NATS Subject to subscribe to among {}.", this, shardIndex, shardCount, allSubjects);
+		} else {
+			logger.info("The receiver {} (shard {} out of {}) will subscribe to {}.", this, shardIndex, shardCount, shardSubjects);
+		}
+		return shardSubjects;
+	}
+
 	protected String getNatsUrl() {
 		if (natsUrl ==  null) {
 			natsUrl = getProperties() != null ?  getProperties().getProperty(PROP_URL) : null;
@@ -238,6 +621,79 @@ public abstract class NatsToSparkConnector<T,R,V> extends Receiver<R> {
 		return natsUrl;
 	}    		
 
+	/**
+	 * @return the filter of the messages (if any), given the decompressed payloads (if enabled), counting the accepted &amp; rejected messages
+	 */
+	protected MessageFilter getMeasuredFilter() {
+		if (messageFilter == null) {
+			return null;
+		}
+
+		final MessageFilter filter = messageFilter;
+		final boolean decompress = decompression;
+		final Counter accepted = NatsSparkMetrics.counter(metricName("filter", "accepted"));
+		final Counter rejected = NatsSparkMetrics.counter(metricName("filter", "rejected"));
+		NatsSparkMetrics.gauge((Gauge<Double>) () -> {
+			final long acceptedCount = accepted.getCount();
+			final long total = acceptedCount + rejected.getCount();
+			return (total > 0) ? (double) acceptedCount / total : 1.0;
+		}, metricName("filter", "selectivity"));
+		return (subject, payload) -> {
+			final byte[] data = (decompress && PayloadCompression.isCompressed(payload)) ? PayloadCompression.decompress(payload, PayloadDictionaries.REQUEST_TIMEOUT) : payload;
+			if (filter.accept(subject, data)) {
+				accepted.inc();
+				return true;
+			}
+			rejected.inc();
+			return false;
+		};
+	}
+
+	/**
+	 * @param keepMessages, whether the messages have to be provided on flush (to be acknowledged)
+	 * @return a new arena, if that receiver is collected through {@code asArenaStreamOf()}
+	 */
+	protected <M> PayloadArena<M> newPayloadArena(boolean keepMessages) {
+		if (! arenaMode) {
+			return null;
+		}
+		logger.info("The payloads received by {} will be stored as blocks of {} byte slabs.", this, arenaSlabSize);
+		return new PayloadArena<M>(arenaSlabSize, keepMessages, NatsSparkMetrics.histogram(metricName("arena", "blockBytes")));
+	}
+
+	/**
+	 * @return a new reassembler of the chunked payloads, if enabled (see {@link #withChunkReassembly()}), whose partial payloads
+	 * are regularly expired
+	 */
+	protected <M> PayloadReassembler<M> newPayloadReassembler() {
+		if (reassemblyMaxBytes <= 0) {
+			return null;
+		}
+		final PayloadReassembler<M> reassembler = new PayloadReassembler<M>(reassemblyMaxBytes, reassemblyTimeout.toNanos(),
+																		NatsSparkMetrics.counter(metricName("chunks", "reassembled")),
+																		NatsSparkMetrics.counter(metricName("chunks", "expired")));
+		final long interval = Math.max(getBlockIntervalNanos(), reassemblyTimeout.toNanos() / 10);
+		getScheduler().scheduleWithFixedDelay(reassembler::expire, interval, interval, TimeUnit.NANOSECONDS);
+		return reassembler;
+	}
+
+	/**
+	 * Stores a block of raw payloads as a single object, serialized the way Spark expects the stored ByteBuffers to be.
+	 * @param block, the block to store
+	 */
+	protected void storeArenaBlock(ArenaBlock block) {
+		final ClassTag<ArenaBlock> tag = scala.reflect.ClassTag$.MODULE$.apply(ArenaBlock.class);
+		store(SparkEnv.get().serializer().newInstance().serialize(block, tag));
+	}
+
+	/**
+	 * @param names, the name of the metric
+	 * @return the name of that metric, prefixed by the id of that receiver
+	 */
+	protected String metricName(String... names) {
+		return MetricRegistry.name("receiver." + streamId(), names);
+	}
+
 	protected static String getUniqueClientName() {
 		return CLIENT_ID + NatsSparkUtilities.generateUniqueID();
 	}    
@@ -268,7 +724,33 @@ public abstract class NatsToSparkConnector<T,R,V> extends Receiver<R> {
 		return (R) new Tuple2<String,V>(subject, s);
 	}
 	
-	protected V decodeData(byte[] bytes) {
+	/**
+	 * @param data, the raw payload
+	 * @return the decoded payload
+	 * @throws UnknownDictionaryException when the payload has been compressed with a dictionary which is not available (see withDecompression())
+	 */
+	protected V decodeData(byte[] data) {
+		return decodePayload(decompression ? PayloadCompression.decompress(data, PayloadDictionaries.REQUEST_TIMEOUT) : data);
+	}
+
+	/**
+	 * Decodes a payload within a Spark task (see {@code asArenaStreamOf()}): the unknown compression dictionaries are requested
+	 * through a NATS Connection of that JVM (opened if needed), and waited for.
+	 * @param data, the raw payload
+	 * @return the decoded payload
+	 */
+	protected V decodeTaskData(byte[] data) {
+		if (! decompression) {
+			return decodePayload(data);
+		}
+		final Integer version = PayloadDictionary.extractVersion(data);
+		if ((version != null) && (PayloadDictionaries.get(version) == null)) {
+			PayloadDictionaries.listen(getNatsUrl(), getProperties(), dictionaryControlSubject);
+		}
+		return decodePayload(PayloadCompression.decompress(data, PayloadDictionaries.REQUEST_TIMEOUT));
+	}
+
+	protected V decodePayload(byte[] bytes) {
 		if (dataDecoder != null) {
 			return dataDecoder.apply(bytes);
 		} else if (scalaDataDecoder != null) {
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Keeps the sequence of the last NATS Streaming message stored into Spark, per channel,
+ * to resume from it when the receiver (or the whole application) is restarted.
+ *
+ * @see LocalFileOffsetStore
+ * @see OmnipotentNatsStreamingToSparkConnector#withOffsetStore(OffsetStore)
+ */
+public interface OffsetStore extends Serializable {
+
+	/**
+	 * @return the last stored sequences, per channel (empty if nothing has been stored yet)
+	 * @throws IOException
+	 */
+	Map<String, Long> load() throws IOException;
+
+	/**
+	 * @param sequences, the last stored sequences, per channel
+	 * @throws IOException
+	 */
+	void save(Map<String, Long> sequences) throws IOException;
+}
@@ -10,23 +10,47 @@ package com.logimethods.connector.nats.to_spark;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.spark.storage.StorageLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.logimethods.connector.nats_spark.ConsistentHashRing;
 import com.logimethods.connector.nats_spark.IncompleteException;
+import com.logimethods.connector.nats_spark.NatsSparkMetrics;
+import com.logimethods.connector.nats_spark.PayloadChunks;
+import com.logimethods.connector.nats_spark.PayloadDictionaries;
+import com.logimethods.connector.nats_spark.ShutdownRegistry;
+import com.logimethods.connector.nats_spark.ShutdownRegistry.Phase;
+import com.logimethods.connector.nats_spark.UnknownDictionaryException;
 
 import io.nats.streaming.Message;
 import io.nats.streaming.MessageHandler;
 import io.nats.streaming.NatsStreaming;
 import io.nats.streaming.Options;
+import io.nats.streaming.StreamingConnection;
 import io.nats.streaming.Subscription;
 import io.nats.streaming.SubscriptionOptions;
 
@@ -51,7 +75,33 @@ public abstract class OmnipotentNatsStreamingToSparkConnector<T,R,V> extends Nat
 	protected String clusterID, clientID;
 	protected transient SubscriptionOptions subscriptionOpts;
 	protected SubscriptionOptions.Builder subscriptionOptsBuilder;
-	protected Collection<Subscription> allSubscriptions = new HashSet<Subscription>();
+	protected Collection<Subscription> allSubscriptions = Collections.synchronizedSet(new HashSet<Subscription>());
+	protected AdaptiveInFlightController inFlightController;
+	protected transient int appliedMaxInFlight;
+	protected transient ConcurrentHashMap<Subscription, DrainableMessageHandler> drainables;
+	protected int subscriptionParallelism = DEFAULT_SUBSCRIPTION_PARALLELISM;
+	protected OffsetStore offsetStore;
+	protected int deduplicationWindow = 0;
+	protected transient ConcurrentHashMap<String, SequenceWindow> sequenceWindows;
+	protected transient SequenceCheckpointer<R> checkpointer;
+	protected transient LatestValueConflator<Message> conflator;
+	protected transient PayloadArena<Message> arena;
+	protected transient MessageHandler conflatedMessageHandler;
+	protected DispatcherTopology dispatcherTopology = DispatcherTopology.SHARED;
+	protected int dispatcherPoolSize = Runtime.getRuntime().availableProcessors();
+	protected int workerThreads = 0;
+	protected transient ExecutorService[] workers;
+	protected transient ConcurrentHashMap<String, AtomicInteger> dispatcherDepths;
+	protected int catchUpRanges = 0;
+	protected long catchUpMinBacklog = DEFAULT_CATCH_UP_MIN_BACKLOG;
+	protected transient Collection<Subscription> catchUpSubscriptions;
+
+	protected static final long IN_FLIGHT_ADJUSTMENT_PERIOD_MS = 5000;
+	protected static final long DRAIN_TIMEOUT_MS = 5000;
+	protected static final int DEFAULT_SUBSCRIPTION_PARALLELISM = 16;
+	protected static final int DEFAULT_DEDUPLICATION_WINDOW = 64 * 1024;
+	protected static final long DEFAULT_CATCH_UP_MIN_BACKLOG = 100000;
+	protected static final long CATCH_UP_PROBE_TIMEOUT_MS = 1000;
 
 	/* Constructors with subjects provided by the environment */
 	
@@ -97,6 +147,171 @@ public abstract class OmnipotentNatsStreamingToSparkConnector<T,R,V> extends Nat
         return (T)this;
     }
 
+    /**
+     * Lets the maximum number of in-flight (unacknowledged) messages adapt to the time needed to store them into Spark,
+     * in a way similar to the TCP congestion control. When the window changes by more than 25%, the subscriptions are replaced
+     * (the new ones join the queue group before the previous ones leave it, once the messages they are handling have been stored &amp; acknowledged).
+     * The current window is reported by the {@code receiver.[id].maxInFlight} Gauge of {@link NatsSparkMetrics}.
+     * <p>
+     * Requires the manual acknowledgement mode (see {@link #manualAcks(boolean)}), to be set before.
+     * 
+     * @param minInFlight the lower bound of the window
+     * @param maxInFlight the upper bound of the window
+     * @param targetLatency the maximum mean time to store a message, above which the window is reduced
+     * @return the connector itself
+     * @throws IllegalStateException if the manual acknowledgement mode is not set
+     */
+	@SuppressWarnings("unchecked")
+    public T adaptiveMaxInFlight(int minInFlight, int maxInFlight, Duration targetLatency) {
+		if (! getSubscriptionOptsBuilder().build().isManualAcks()) {
+			throw new IllegalStateException("The adaptive maxInFlight requires the manual acknowledgement mode (see manualAcks()).");
+		}
+		final int initialWindow = getSubscriptionOptsBuilder().build().getMaxInFlight();
+		inFlightController = new AdaptiveInFlightController(minInFlight, maxInFlight, targetLatency.toNanos(), initialWindow);
+        return (T)this;
+    }
+
+    /**
+     * Defines the NATS Streaming Dispatchers (each of them being a thread) delivering the messages of that receiver:
+     * one dedicated to that receiver ({@link DispatcherTopology#SHARED}, the default), one per Subject,
+     * or a pool of them, the Subjects being assigned to them by Consistent Hashing.
+     * The number of messages waiting to be stored by each Dispatcher is reported by the {@code receiver.[id].dispatchers.[name].pending} Gauges
+     * of {@link NatsSparkMetrics}.
+     * 
+     * @param topology the way the NATS Subjects are spread over Dispatchers
+     * @param poolSize the number of Dispatchers of the {@link DispatcherTopology#POOL} topology
+     * @return the connector itself
+     */
+	@SuppressWarnings("unchecked")
+    public T withDispatcherTopology(DispatcherTopology topology, int poolSize) {
+		if ((topology == DispatcherTopology.POOL) && (poolSize < 1)) {
+			throw new IllegalArgumentException("A pool of Dispatchers requires at least one Dispatcher: " + poolSize);
+		}
+		this.dispatcherTopology = topology;
+		this.dispatcherPoolSize = poolSize;
+		this.subscriptionOpts = null;
+        return (T)this;
+    }
+
+    /**
+     * @param topology the way the NATS Subjects are spread over Dispatchers
+     * @return the connector itself
+     * @see #withDispatcherTopology(DispatcherTopology, int)
+     */
+    public T withDispatcherTopology(DispatcherTopology topology) {
+		return withDispatcherTopology(topology, dispatcherPoolSize);
+    }
+
+    /**
+     * At startup, the receiver subscribes to its NATS Subjects concurrently. The time needed to get all the subscriptions
+     * is reported by the {@code receiver.[id].startup} Timer of {@link NatsSparkMetrics}.
+     * 
+     * @param subscriptionParallelism the maximum number of subscriptions requested at the same time (1 to subscribe in sequence)
+     * @return the connector itself
+     */
+	@SuppressWarnings("unchecked")
+    public T withSubscriptionParallelism(int subscriptionParallelism) {
+		this.subscriptionParallelism = subscriptionParallelism;
+        return (T)this;
+    }
+
+    /**
+     * The messages are stored into Spark by blocks (one per Spark Block Interval); after each block, the sequence of the last stored message
+     * of each channel is saved into the provided store. When restarted, the receiver resumes from the saved sequences
+     * (without relying on durable subscriptions). In the manual acknowledgement mode, the messages are acknowledged once their block is stored.
+     * <p>
+     * The saved sequences are specific to that receiver: when parallel receivers are used, their subjects should be sharded (see withSubjectSharding()).
+     * 
+     * @param offsetStore the store of the sequences
+     * @return the connector itself
+     */
+	@SuppressWarnings("unchecked")
+    public T withOffsetStore(OffsetStore offsetStore) {
+		this.offsetStore = offsetStore;
+        return (T)this;
+    }
+
+    /**
+     * Drops the redelivered messages that have already been received (the number of dropped messages being reported by the 
+     * {@code receiver.[id].duplicates} Counter of {@link NatsSparkMetrics}). The recent sequences of each channel are remembered
+     * by two rings of bits, so the memory used per channel is constant (windowSize / 4 bytes).
+     * <p>
+     * A duplicate is only acknowledged once its first delivery has been stored (and acknowledged): until then, it is dropped without
+     * acknowledgment, so the NATS Streaming Server keeps redelivering that sequence in case that first delivery is not stored.
+     * 
+     * @param windowSize the number of (most recent) sequences remembered per channel
+     * @return the connector itself
+     */
+	@SuppressWarnings("unchecked")
+    public T withDeduplication(int windowSize) {
+		this.deduplicationWindow = windowSize;
+        return (T)this;
+    }
+
+    /**
+     * Drops the redelivered messages that have already been received, within the last 65536 sequences of each channel.
+     * 
+     * @return the connector itself
+     * @see #withDeduplication(int)
+     */
+    public T withDeduplication() {
+		return withDeduplication(DEFAULT_DEDUPLICATION_WINDOW);
+    }
+
+    /**
+     * @param directory the (local) directory of the file storing the sequences
+     * @param name the name of the file, specific to that receiver
+     * @return the connector itself
+     * @see #withOffsetStore(OffsetStore)
+     */
+    public T withCheckpointing(String directory, String name) {
+		return withOffsetStore(new LocalFileOffsetStore(directory, name));
+    }
+
+    /**
+     * When the backlog of a channel (from the requested start position, or the saved sequence, to the last message of that channel)
+     * is large enough, replays it through several temporary subscriptions, each of them reading its own range of sequences
+     * (on its own Dispatcher), then keeps receiving the following messages through a single subscription starting right after that backlog.
+     * The messages of the backlog are therefore not stored in order. The time needed to replay the backlog of each channel is reported
+     * by the {@code receiver.[id].catchUp} Timer of {@link NatsSparkMetrics}.
+     * <p>
+     * The catch-up mode relies on the start position of the subscriptions: it is ignored (with a warning) by the receivers
+     * using durable subscriptions, whose position is kept by the NATS Streaming Server. It is also ignored by parallel receivers sharing a NATS Queue,
+     * since each of them would replay the whole backlog: their subjects have to be sharded (see withSubjectSharding()).
+     * 
+     * @param ranges the number of concurrent temporary subscriptions per channel (0 or 1 to disable the catch-up mode)
+     * @param minBacklog the minimum number of messages to replay through concurrent subscriptions
+     * @return the connector itself
+     */
+	@SuppressWarnings("unchecked")
+    public T withCatchUp(int ranges, long minBacklog) {
+		this.catchUpRanges = ranges;
+		this.catchUpMinBacklog = minBacklog;
+        return (T)this;
+    }
+
+    /**
+     * @param ranges the number of concurrent temporary subscriptions per channel (0 or 1 to disable the catch-up mode)
+     * @return the connector itself
+     * @see #withCatchUp(int, long)
+     */
+    public T withCatchUp(int ranges) {
+		return withCatchUp(ranges, DEFAULT_CATCH_UP_MIN_BACKLOG);
+    }
+
+    /**
+     * Hands the messages over to a pool of threads to decode &amp; store them, to keep the Dispatchers free.
+     * The messages of a given Subject are always handled by the same thread, so their order is kept.
+     * 
+     * @param workerThreads the number of threads (0 to decode &amp; store the messages by the Dispatchers themselves)
+     * @return the connector itself
+     */
+	@SuppressWarnings("unchecked")
+    public T withWorkers(int workerThreads) {
+		this.workerThreads = workerThreads;
+        return (T)this;
+    }
+
     /**
      * Sets the amount of time the subscription will wait for ACKs from the cluster.
      * 
@@ -288,6 +503,55 @@ public abstract class OmnipotentNatsStreamingToSparkConnector<T,R,V> extends Nat
 		return subscriptionOpts;
 	}
 
+	/**
+	 * @param subject, the NATS Subject to subscribe to
+	 * @return the options of the subscription to that subject, including its Dispatcher
+	 */
+	protected synchronized SubscriptionOptions getSubscriptionOptions(String subject) {
+		final long resumeSequence = getResumeSequence(subject);
+		if (resumeSequence > 0) {
+			logger.info("{} will resume '{}' from sequence {}.", this, subject, resumeSequence);
+		}
+		return getSubscriptionOptions(subject, resumeSequence);
+	}
+
+	/**
+	 * @param subject, the NATS Subject to subscribe to
+	 * @param startSequence, the first sequence to receive (0 to keep the requested start position)
+	 * @return the options of the subscription to that subject, including its Dispatcher
+	 */
+	protected synchronized SubscriptionOptions getSubscriptionOptions(String subject, long startSequence) {
+		SubscriptionOptions.Builder builder = getSubscriptionOptsBuilder();
+		if (startSequence > 0) {
+			builder = SerializationUtils.clone(builder).startAtSequence(startSequence);
+		}
+		return builder.dispatcher(getDispatcherName(subject)).build();
+	}
+
+	/**
+	 * @param subject, a NATS Subject
+	 * @return the sequence saved by the OffsetStore (if any) to resume from, or 0
+	 */
+	protected long getResumeSequence(String subject) {
+		return (checkpointer != null) ? checkpointer.getResumeSequence(subject) : 0;
+	}
+
+	/**
+	 * @param subject, a NATS Subject
+	 * @return the name of the NATS Streaming Dispatcher delivering the messages of that Subject
+	 */
+	protected String getDispatcherName(String subject) {
+		final String receiverDispatcher = DISPATCHER_NAME + "-" + streamId();
+		switch (dispatcherTopology) {
+		case PER_SUBJECT:
+			return receiverDispatcher + "-" + subject;
+		case POOL:
+			return receiverDispatcher + "-" + new ConsistentHashRing(dispatcherPoolSize).nodeOf(subject);
+		default:
+			return receiverDispatcher;
+		}
+	}
+
 	/**
 	 * @return the optsBuilder
 	 */
@@ -298,12 +562,40 @@ public abstract class OmnipotentNatsStreamingToSparkConnector<T,R,V> extends Nat
 		return subscriptionOptsBuilder;
 	}
 
+	@Override
+	protected <C extends NatsToSparkConnector<?,?,V>> C transferSettingsTo(C connector) {
+		super.transferSettingsTo(connector);
+		if (connector instanceof OmnipotentNatsStreamingToSparkConnector) {
+			final OmnipotentNatsStreamingToSparkConnector<?,?,V> streamingConnector = (OmnipotentNatsStreamingToSparkConnector<?,?,V>) connector;
+			streamingConnector.inFlightController = inFlightController;
+			streamingConnector.dispatcherTopology = dispatcherTopology;
+			streamingConnector.dispatcherPoolSize = dispatcherPoolSize;
+			streamingConnector.workerThreads = workerThreads;
+			streamingConnector.subscriptionParallelism = subscriptionParallelism;
+			streamingConnector.offsetStore = offsetStore;
+			streamingConnector.deduplicationWindow = deduplicationWindow;
+			streamingConnector.catchUpRanges = catchUpRanges;
+			streamingConnector.catchUpMinBacklog = catchUpMinBacklog;
+		}
+		return connector;
+	}
+
+	/**
+	 * NATS Streaming requires a distinct Client ID per connection.
+	 */
+	@Override
+	protected void prepareReplica(int index) {
+		if (index > 0) {
+			clientID = clientID + "_" + index;
+		}
+	}
+
 	/**
 	 * @return a NATS Streaming to Spark Connector where the NATS Messages are stored in Spark as Key (the NATS Subject) / Value (the NATS Payload)
 	 */
 	public NatsStreamingToKeyValueSparkConnectorImpl<V> storedAsKeyValue() {
-		return new NatsStreamingToKeyValueSparkConnectorImpl<V>(type, storageLevel(), subjects, properties, natsQueue, natsUrl, clusterID, clientID, 
-																subscriptionOpts, subscriptionOptsBuilder, dataDecoder, scalaDataDecoder);
+		return transferSettingsTo(new NatsStreamingToKeyValueSparkConnectorImpl<V>(type, storageLevel(), subjects, properties, natsQueue, natsUrl, clusterID, clientID, 
+																subscriptionOpts, subscriptionOptsBuilder, dataDecoder, scalaDataDecoder));
 	}
 
 	/** Create a socket connection and receive data until receiver is stopped 
@@ -315,77 +607,771 @@ public abstract class OmnipotentNatsStreamingToSparkConnector<T,R,V> extends Nat
 		if (natsUrl != null) {
 			optionsBuilder.natsUrl(natsUrl);
 		}
+		optionsBuilder.connectionLostHandler((lostConnection, e) -> {
+			disconnected();
+			restartWithBackoff("NATS Streaming Connection lost", e);
+		});
 
 		final Options options = optionsBuilder.build();
+		closeDurableConnection();
 		try {
 			connection = NatsStreaming.connect(clusterID, clientID, options);
 		} catch (IOException | InterruptedException e) {
 			logger.error("NatsStreaming.connect({}, {}, {}) PRODUCES {}", clusterID, clientID, ReflectionToStringBuilder.toString(options), e.getMessage());
 			throw(e);
 		}
+		if (! keepConnectionDurable()) {
+			ShutdownRegistry.register(connection, Phase.CONNECTION, StreamingConnection::close);
+		}
+
+		if (decompression) {
+			PayloadDictionaries.listen(connection.getNatsConnection(), dictionaryControlSubject);
+		}
 		
+		startCheckpointer();
+		final MessageHandler messageHandler = getRejectingMessageHandler(getMeasuredMessageHandler(getReassemblingMessageHandler(getFilteringMessageHandler(getDeduplicatingMessageHandler(getConflatingMessageHandler(getArenaMessageHandler(getMessageHandler())))))));
+		startWorkers();
+		catchUpSubscriptions = Collections.synchronizedSet(new HashSet<Subscription>());
+		final Collection<String> subjects;
 		try {
-			for (String subject: getSubjects()) {
-				Subscription sub;
-				final MessageHandler messageHandler = getMessageHandler();
-				final SubscriptionOptions subscriptionOptions = getSubscriptionOptions();
+			subjects = getShardSubjects();
+		} catch (IncompleteException e) {
+			logger.error("getSubjects() PRODUCES {}", e.getMessage());
+			throw(e);
+		}
+
+		if ((catchUpRanges > 1) && keepConnectionDurable()) {
+			logger.warn("{} relies on durable subscriptions: the catch-up mode is ignored.", this);
+		} else if ((catchUpRanges > 1) && ! isCatchUpEnabled()) {
+			logger.warn("{} shares its NATS Queue with {} other receivers: the catch-up mode is ignored (see withSubjectSharding()).", this, replicaCount - 1);
+		}
+
+		final long start = System.nanoTime();
+		subscribeInParallel(subjects, messageHandler);
+		final long startup = System.nanoTime() - start;
+		NatsSparkMetrics.timer(metricName("startup")).update(startup, TimeUnit.NANOSECONDS);
+		logger.info("{} subscribed to {} NATS Subject(s) in {} ms.", this, subjects.size(), TimeUnit.NANOSECONDS.toMillis(startup));
+
+		startInFlightAdjustment(messageHandler);
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that drops the redelivered messages already received, if the deduplication is enabled
+	 */
+	protected MessageHandler getDeduplicatingMessageHandler(MessageHandler messageHandler) {
+		if (deduplicationWindow <= 0) {
+			return messageHandler;
+		}
+
+		sequenceWindows = new ConcurrentHashMap<String, SequenceWindow>();
+		final ConcurrentHashMap<String, SequenceWindow> windows = sequenceWindows;
+		final Counter duplicates = NatsSparkMetrics.counter(metricName("duplicates"));
+		return m -> {
+			final SequenceWindow window = windows.computeIfAbsent(m.getSubject(), subject -> new SequenceWindow(deduplicationWindow));
+			if (window.markAndCheckDuplicate(m.getSequence()) && m.isRedelivered()) {
+				duplicates.inc();
+				if (window.isAcknowledged(m.getSequence())) {
+					// Already stored: the previous acknowledgment has been lost
+					acknowledge(m);
+				}
+				// Otherwise, the first delivery is still in flight: it will acknowledge that sequence once stored
+				if (logger.isTraceEnabled()) {
+					logger.trace("Duplicate dropped by {}: '{}' #{}", this, m.getSubject(), m.getSequence());
+				}
+				return;
+			}
+			messageHandler.onMessage(m);
+		};
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that leaves unacknowledged the messages whose compression dictionary is not available, if the decompression is enabled
+	 */
+	protected MessageHandler getRejectingMessageHandler(MessageHandler messageHandler) {
+		if (! decompression) {
+			return messageHandler;
+		}
+		return m -> {
+			try {
+				messageHandler.onMessage(m);
+			} catch (UnknownDictionaryException e) {
+				reject(m, e);
+			}
+		};
+	}
+
+	/**
+	 * Leaves unacknowledged a message which cannot be decompressed, to be redelivered (with manual acks) once its dictionary is known.
+	 * @param message, the rejected message
+	 * @param e, the cause of the rejection
+	 */
+	protected void reject(Message message, UnknownDictionaryException e) {
+		final Map<String, SequenceWindow> windows = sequenceWindows;
+		if (windows != null) {
+			final SequenceWindow window = windows.get(message.getSubject());
+			if (window != null) {
+				window.unmark(message.getSequence());
+			}
+		}
+		NatsSparkMetrics.counter(metricName("rejected")).inc();
+		logger.warn("Message received by {} on '{}' (#{}) rejected: {}", this, message.getSubject(), message.getSequence(), e.getMessage());
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that rebuilds the chunked payloads before providing them (as a single message) to the provided handler, if enabled.
+	 * All the chunks are acknowledged with the rebuilt message: the chunks of a dropped partial payload are redelivered.
+	 */
+	protected MessageHandler getReassemblingMessageHandler(MessageHandler messageHandler) {
+		final PayloadReassembler<Message> reassembler = newPayloadReassembler();
+		if (reassembler == null) {
+			return messageHandler;
+		}
+		return m -> {
+			final byte[] data = m.getData();
+			if (! PayloadChunks.isChunk(data)) {
+				messageHandler.onMessage(m);
+				return;
+			}
+			final PayloadReassembler.Payload<Message> payload = reassembler.add(data, m);
+			if (payload != null) {
+				messageHandler.onMessage(new PayloadReassembler.StreamingMessage(payload.messages, payload.data));
+			}
+		};
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that drops (and acknowledges) the messages rejected by the filter, before their decoding, if a filter has been defined
+	 */
+	protected MessageHandler getFilteringMessageHandler(MessageHandler messageHandler) {
+		final MessageFilter filter = getMeasuredFilter();
+		if (filter == null) {
+			return messageHandler;
+		}
+		return m -> {
+			if (filter.accept(m.getSubject(), m.getData())) {
+				messageHandler.onMessage(m);
+			} else {
+				acknowledge(m);
+			}
+		};
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that only keeps the latest message of each Subject, stored once per Block Interval, if the conflation is enabled
+	 */
+	protected MessageHandler getConflatingMessageHandler(MessageHandler messageHandler) {
+		if (! conflation) {
+			return messageHandler;
+		}
+
+		conflator = new LatestValueConflator<Message>(NatsSparkMetrics.counter(metricName("conflated")));
+		conflatedMessageHandler = messageHandler;
+		final long interval = getBlockIntervalNanos();
+		getScheduler().scheduleWithFixedDelay(this::flushConflation, interval, interval, TimeUnit.NANOSECONDS);
+		logger.info("Only the latest message of each NATS Subject received by {} will be stored.", this);
+
+		final LatestValueConflator<Message> latest = conflator;
+		return m -> {
+			final Message replaced = latest.offer(m.getSubject(), m);
+			if (replaced != null) {
+				// Will never be stored
+				acknowledge(replaced);
+			}
+		};
+	}
+
+	protected void flushConflation() {
+		final LatestValueConflator<Message> latest = conflator;
+		if (latest != null) {
+			latest.flush(m -> {
 				try {
-					sub = connection.subscribe(subject, natsQueue, messageHandler, subscriptionOptions);
-					logger.info("{}.subscribe({}, {}, {}, {})", connection, subject, natsQueue, messageHandler, subscriptionOptions);
-				}  catch (IOException | InterruptedException | TimeoutException e) {
-					logger.error("{}.subscribe({}, {}, {}, {}) PRODUCES {}", connection, subject, natsQueue, messageHandler, subscriptionOptions, e.getMessage());
-					throw(e);
+					conflatedMessageHandler.onMessage(m);
+				} catch (UnknownDictionaryException e) {
+					reject(m, e);
+				} catch (Exception e) {
+					logger.error("Not able to store the latest message of '{}': {}", m.getSubject(), e.getMessage());
 				}
-				allSubscriptions.add(sub);
-				
-				logger.info("Listening on {}.", subject);
-				
-				Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
-					@Override
-					public void run() {
-						logger.debug("Caught CTRL-C, shutting down gracefully..." + this);
-						
-						try {
-							allSubscriptions.remove(sub);
-							if (keepConnectionDurable()) {
-								logger.info("Closing NATS Subscription at Shutdown " + sub);
-								sub.close();
-							} else {
-								logger.info("Unsubscribing NATS Connection at Shutdown " + sub);
-								sub.unsubscribe();
-							}							
-						} catch (IOException | IllegalStateException e) {
-							if (logger.isDebugEnabled()) {
-								logger.error("Exception while unsubscribing at Shutdown " + e.toString());
-							}
-						}
-						
-						try {
-							if ((! keepConnectionDurable()) && (connection != null)) {
-								logger.info("Closing NATS Connection at Shutdown " + connection);
-								connection.close();
-							}
-							connection = null;
-						} catch (IOException | TimeoutException | InterruptedException e) {
-							if (logger.isDebugEnabled()) {
-								logger.error("Exception while unsubscribing at Shutdown " + e.toString());
-							}
-						}
+			});
+		}
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that copies the raw payloads into the arena, stored (then acknowledged) once per Block Interval, if the arena is enabled
+	 */
+	protected MessageHandler getArenaMessageHandler(MessageHandler messageHandler) {
+		final boolean keepMessages = getSubscriptionOptions().isManualAcks() || (offsetStore != null);
+		final PayloadArena<Message> payloads = newPayloadArena(keepMessages);
+		if (payloads == null) {
+			return messageHandler;
+		}
+
+		arena = payloads;
+		final long interval = getBlockIntervalNanos();
+		getScheduler().scheduleWithFixedDelay(this::flushArena, interval, interval, TimeUnit.NANOSECONDS);
+		return m -> payloads.add(m.getSubject(), m.getData(), m);
+	}
+
+	protected void flushArena() {
+		final PayloadArena<Message> payloads = arena;
+		if (payloads == null) {
+			return;
+		}
+		final SequenceCheckpointer<R> blocks = checkpointer;
+		// The ceilings are read before the block, so they only cover messages already added
+		final Map<String, Long> limits = (blocks != null) ? blocks.getCeilings() : null;
+		try {
+			payloads.flush((block, messages) -> {
+				storeArenaBlock(block);
+				if (blocks != null) {
+					blocks.checkpoint(messages, limits);
+				} else {
+					for (Message message : messages) {
+						acknowledge(message);
 					}
+				}
+			});
+		} catch (Exception e) {
+			logger.error("Not able to store the arena block of {}: {}", this, e.getMessage());
+		}
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that measures the time taken by the provided one, if the maxInFlight is adaptive
+	 */
+	protected MessageHandler getMeasuredMessageHandler(MessageHandler messageHandler) {
+		if (inFlightController == null) {
+			return messageHandler;
+		}
+
+		appliedMaxInFlight = inFlightController.getWindow();
+		getSubscriptionOptsBuilder().maxInFlight(appliedMaxInFlight);
+		subscriptionOpts = null;
+		drainables = new ConcurrentHashMap<Subscription, DrainableMessageHandler>();
+
+		final AdaptiveInFlightController controller = inFlightController;
+		return m -> {
+			final long start = System.nanoTime();
+			messageHandler.onMessage(m);
+			controller.record(System.nanoTime() - start);
+		};
+	}
+
+	/**
+	 * Subscribes to the subjects concurrently (each subscription requiring a round trip to the NATS Streaming Server),
+	 * with at most subscriptionParallelism pending subscriptions.
+	 * Returns once all the subscriptions are confirmed; if one of them fails, or if the calling thread is interrupted,
+	 * the pending subscriptions are cancelled and the confirmed ones are closed.
+	 * @param subjects, the NATS Subjects to subscribe to
+	 * @param messageHandler, the handler of the messages
+	 */
+	protected void subscribeInParallel(Collection<String> subjects, MessageHandler messageHandler) throws IOException, InterruptedException, TimeoutException {
+		final int parallelism = Math.max(1, Math.min(subscriptionParallelism, subjects.size()));
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+			final Thread thread = new Thread(r, "NatsToSparkConnector-" + streamId() + "-subscribe");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final List<Future<Subscription>> futures = new ArrayList<Future<Subscription>>(subjects.size());
+			for (String subject: subjects) {
+				// Registered by the task itself, to be closed even if that future is cancelled once the subscription is confirmed
+				futures.add(executor.submit(() -> {
+					final Subscription sub = subscribe(subject, messageHandler);
+					allSubscriptions.add(registerAtShutdown(sub));
+					return sub;
 				}));
 			}
-		} catch (IncompleteException e) {
-			logger.error("getSubjects() PRODUCES {}", e.getMessage());
+
+			Exception failure = null;
+			for (Future<Subscription> future: futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+					}
+				} catch (InterruptedException e) {
+					failure = e;
+					break;
+				}
+			}
+			if (failure != null) {
+				cancelSubscriptions(futures, executor);
+				if (failure instanceof IOException) throw (IOException) failure;
+				if (failure instanceof TimeoutException) throw (TimeoutException) failure;
+				if (failure instanceof InterruptedException) throw (InterruptedException) failure;
+				throw new IOException(failure);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Cancels the pending subscriptions, waits for their tasks to end, then closes all the (regular &amp; catch up) subscriptions.
+	 * @param futures, the pending subscriptions
+	 * @param executor, the executor of those subscriptions
+	 */
+	protected void cancelSubscriptions(List<Future<Subscription>> futures, ExecutorService executor) {
+		for (Future<Subscription> future: futures) {
+			future.cancel(true);
+		}
+		executor.shutdownNow();
+		try {
+			if (! executor.awaitTermination(5, TimeUnit.SECONDS)) {
+				logger.warn("Some subscriptions of {} are still pending.", this);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeCatchUpSubscriptions();
+		synchronized (allSubscriptions) {
+			closeSubscriptions();
+		}
+	}
+
+	protected Subscription subscribe(String subject, MessageHandler messageHandler) throws IOException, InterruptedException, TimeoutException {
+		final DrainableMessageHandler drainable = (drainables != null) ? new DrainableMessageHandler(messageHandler) : null;
+		final MessageHandler subjectHandler = getDispatchingMessageHandler(subject, (drainable != null) ? drainable : messageHandler);
+		final long backlogEnd = isCatchUpEnabled() ? catchUp(subject, messageHandler) : 0;
+		final SubscriptionOptions subscriptionOptions = (backlogEnd > 0) ? getSubscriptionOptions(subject, backlogEnd + 1) : getSubscriptionOptions(subject);
+		try {
+			final Subscription sub = connection.subscribe(subject, natsQueue, subjectHandler, subscriptionOptions);
+			if (drainable != null) {
+				drainables.put(sub, drainable);
+			}
+			logger.info("{}.subscribe({}, {}, {}, {})", connection, subject, natsQueue, subjectHandler, subscriptionOptions);
+			logger.info("Listening on {}.", subject);
+			return sub;
+		}  catch (IOException | InterruptedException | TimeoutException e) {
+			logger.error("{}.subscribe({}, {}, {}, {}) PRODUCES {}", connection, subject, natsQueue, subjectHandler, subscriptionOptions, e.getMessage());
 			throw(e);
 		}
 	}
+
+	/**
+	 * @return true if the catch-up mode is requested, the subscriptions are not durable, and the subjects of that receiver are not shared with other (parallel) receivers
+	 */
+	protected boolean isCatchUpEnabled() {
+		return (catchUpRanges > 1) && (! keepConnectionDurable()) && (subjectSharding || (replicaCount <= 1));
+	}
+
+	/**
+	 * Replays the backlog of a channel through concurrent temporary subscriptions (see {@link #withCatchUp(int, long)}).
+	 * @param subject, the NATS Subject (channel) to replay
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return the last sequence of the replayed backlog, or 0 if that backlog is too small to be replayed concurrently
+	 */
+	protected long catchUp(String subject, MessageHandler messageHandler) throws IOException, InterruptedException, TimeoutException {
+		// The last message of a channel is delivered right away: none means that the channel is empty
+		final long last = probeSequence(subject, new SubscriptionOptions.Builder().startWithLastReceived().maxInFlight(1)
+																	.dispatcher(DISPATCHER_NAME + "-" + streamId() + "-probe").build());
+		if (last <= 0) {
+			logger.debug("{} has no backlog to replay on the empty '{}' channel.", this, subject);
+			return 0;
+		}
+		if (getResumeSequence(subject) > last) {
+			// Already received
+			return 0;
+		}
+		final long first = probeSequence(subject, getCatchUpOptionsBuilder(subject, "probe").maxInFlight(1).build());
+		if (first <= 0) {
+			logger.warn("{} did not receive the first message to replay on '{}' (up to #{}) within {} ms: the catch-up mode is skipped for that channel.",
+							this, subject, last, CATCH_UP_PROBE_TIMEOUT_MS);
+			return 0;
+		}
+		if (last - first + 1 < catchUpMinBacklog) {
+			return 0;
+		}
+
+		final CatchUpReplay replay = new CatchUpReplay(subject, first, last, catchUpRanges);
+		final SequenceCheckpointer<R> blocks = checkpointer;
+		if (blocks != null) {
+			blocks.setCeiling(subject, replay.getReplayedSequence());
+		}
+		logger.info("{} will replay {} through {} concurrent subscriptions.", this, replay, replay.getRanges());
+
+		final long start = System.nanoTime();
+		for (int i = 0; i < replay.getRanges(); i++) {
+			final int range = i;
+			final long to = replay.getTo(range);
+			final AtomicReference<Subscription> subscription = new AtomicReference<Subscription>();
+			final MessageHandler rangeHandler = m -> {
+				final long sequence = m.getSequence();
+				if (sequence <= to) {
+					messageHandler.onMessage(m);
+				}
+				if ((sequence >= to) && replay.complete(range)) {
+					onRangeReplayed(replay, start);
+					closeCatchUpSubscription(subscription.getAndSet(null));
+				}
+			};
+			final SubscriptionOptions options = getCatchUpOptionsBuilder(subject, String.valueOf(range)).startAtSequence(replay.getFrom(range)).build();
+			final Subscription sub = connection.subscribe(subject, rangeHandler, options);
+			catchUpSubscriptions.add(ShutdownRegistry.register(sub, Phase.SUBSCRIPTION, Subscription::unsubscribe));
+			subscription.set(sub);
+			if (replay.isCompleted(range)) {
+				closeCatchUpSubscription(subscription.getAndSet(null));
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * @param subject, the replayed NATS Subject
+	 * @param name, the name of that temporary subscription
+	 * @return the options of a temporary (not durable) subscription starting at the requested position (or at the saved sequence)
+	 */
+	protected synchronized SubscriptionOptions.Builder getCatchUpOptionsBuilder(String subject, String name) {
+		final SubscriptionOptions.Builder builder = SerializationUtils.clone(getSubscriptionOptsBuilder()).durableName(null)
+																	.dispatcher(DISPATCHER_NAME + "-" + streamId() + "-catchup-" + name);
+		final long resumeSequence = getResumeSequence(subject);
+		return (resumeSequence > 0) ? builder.startAtSequence(resumeSequence) : builder;
+	}
+
+	/**
+	 * @param subject, a NATS Subject (channel)
+	 * @param options, the options (including the start position) of the temporary subscription
+	 * @return the sequence of the first message delivered by that subscription, or 0 if none has been delivered within {@link #CATCH_UP_PROBE_TIMEOUT_MS}
+	 * @throws TimeoutException if the subscription itself has not been confirmed by the NATS Streaming Server
+	 */
+	protected long probeSequence(String subject, SubscriptionOptions options) throws IOException, InterruptedException, TimeoutException {
+		final CompletableFuture<Long> sequence = new CompletableFuture<Long>();
+		final Subscription probe = connection.subscribe(subject, m -> sequence.complete(m.getSequence()), options);
+		try {
+			return sequence.get(CATCH_UP_PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// Empty channel, or too slow delivery: to be told apart by the caller
+			return 0;
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			probe.unsubscribe();
+		}
+	}
+
+	protected void onRangeReplayed(CatchUpReplay replay, long start) {
+		final SequenceCheckpointer<R> blocks = checkpointer;
+		if (replay.isComplete()) {
+			if (blocks != null) {
+				blocks.clearCeiling(replay.getChannel());
+			}
+			final long duration = System.nanoTime() - start;
+			NatsSparkMetrics.timer(metricName("catchUp")).update(duration, TimeUnit.NANOSECONDS);
+			logger.info("{} replayed {} in {} ms.", this, replay, TimeUnit.NANOSECONDS.toMillis(duration));
+		} else if (blocks != null) {
+			blocks.setCeiling(replay.getChannel(), replay.getReplayedSequence());
+		}
+	}
+
+	/**
+	 * Closes a temporary subscription outside of its Dispatcher.
+	 * @param sub, the subscription to close (can be null)
+	 */
+	protected void closeCatchUpSubscription(Subscription sub) {
+		if ((sub == null) || stopping) {
+			// When stopping, the temporary subscriptions are closed by onStop()
+			return;
+		}
+		final Runnable close = () -> {
+			catchUpSubscriptions.remove(sub);
+			ShutdownRegistry.unregister(sub);
+			try {
+				sub.unsubscribe();
+			} catch (IOException | IllegalStateException e) {
+				logger.debug("Exception while unsubscribing {}: {}", sub, e.toString());
+			}
+		};
+		try {
+			getScheduler().execute(close);
+		} catch (RejectedExecutionException e) {
+			logger.debug("{} closed while stopping {}", sub, this);
+		}
+	}
+
+	/**
+	 * @param sub, a subscription to close (or to unsubscribe if not durable) at shutdown
+	 * @return the subscription
+	 */
+	protected Subscription registerAtShutdown(Subscription sub) {
+		return ShutdownRegistry.register(sub, Phase.SUBSCRIPTION, keepConnectionDurable() ? Subscription::close : Subscription::unsubscribe);
+	}
+
+	protected void startWorkers() {
+		dispatcherDepths = new ConcurrentHashMap<String, AtomicInteger>();
+		if (workerThreads <= 0) {
+			return;
+		}
+		workers = new ExecutorService[workerThreads];
+		for (int i = 0; i < workerThreads; i++) {
+			final String name = "NatsToSparkConnector-" + streamId() + "-worker-" + i;
+			workers[i] = Executors.newSingleThreadExecutor(r -> {
+				final Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		logger.info("Messages received by {} will be stored by {} worker thread(s).", this, workerThreads);
+	}
+
+	/**
+	 * @param subject, the NATS Subject of the subscription
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler counting the messages pending per Dispatcher, and handing them over to a worker (if any)
+	 */
+	protected MessageHandler getDispatchingMessageHandler(String subject, MessageHandler messageHandler) {
+		final String dispatcherName = getDispatcherName(subject);
+		final AtomicInteger depth = dispatcherDepths.computeIfAbsent(dispatcherName, name -> {
+			final AtomicInteger counter = new AtomicInteger();
+			NatsSparkMetrics.gauge((Gauge<Integer>) counter::get, metricName("dispatchers", name, "pending"));
+			return counter;
+		});
+
+		final ExecutorService worker = (workers != null) ? workers[new ConsistentHashRing(workers.length).nodeOf(subject)] : null;
+		if (worker == null) {
+			return m -> {
+				depth.incrementAndGet();
+				try {
+					messageHandler.onMessage(m);
+				} finally {
+					depth.decrementAndGet();
+				}
+			};
+		}
+		return m -> {
+			depth.incrementAndGet();
+			try {
+				worker.execute(() -> {
+					try {
+						messageHandler.onMessage(m);
+					} finally {
+						depth.decrementAndGet();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				depth.decrementAndGet();
+				logger.debug("Message received on {} while stopping {}", subject, this);
+			}
+		};
+	}
+
+	protected void startInFlightAdjustment(MessageHandler messageHandler) {
+		if (inFlightController == null) {
+			return;
+		}
+
+		NatsSparkMetrics.gauge((Gauge<Integer>) () -> appliedMaxInFlight, metricName("maxInFlight"));
+		getScheduler().scheduleWithFixedDelay(() -> {
+			final int window = inFlightController.adjust();
+			if (Math.abs(window - appliedMaxInFlight) * 4 >= appliedMaxInFlight) {
+				resubscribe(messageHandler, window);
+			}
+		}, IN_FLIGHT_ADJUSTMENT_PERIOD_MS, IN_FLIGHT_ADJUSTMENT_PERIOD_MS, TimeUnit.MILLISECONDS);
+	}
+
+	protected void startCheckpointer() throws IOException {
+		if (offsetStore == null) {
+			return;
+		}
+		checkpointer = new SequenceCheckpointer<R>(offsetStore, this::storeBlock, this::acknowledge);
+		final SequenceCheckpointer<R> blocks = checkpointer;
+		final long interval = getBlockIntervalNanos();
+		getScheduler().scheduleWithFixedDelay(() -> {
+			try {
+				blocks.flush();
+			} catch (Exception e) {
+				logger.error("Not able to store a block of {}: {}", this, e.getMessage());
+			}
+		}, interval, interval, TimeUnit.NANOSECONDS);
+		logger.info("The sequences stored by {} will be saved into {}.", this, offsetStore);
+	}
+
+	/**
+	 * Stores a block of data into Spark, returning once it has been stored.
+	 * @param block, the data to store
+	 */
+	protected void storeBlock(List<R> block) {
+		store(block.iterator());
+	}
+
+	/**
+	 * Stores the data into Spark, directly or as part of a block (when an OffsetStore is defined),
+	 * then acknowledges the message (in the manual acknowledgement mode).
+	 * @param data, the decoded message
+	 * @param message, the NATS Streaming message
+	 */
+	protected void storeMessage(R data, Message message) {
+		final SequenceCheckpointer<R> blocks = checkpointer;
+		if (blocks != null) {
+			blocks.add(data, message);
+		} else {
+			store(data);
+			acknowledge(message);
+		}
+	}
+
+	/**
+	 * To be called once the message has been stored into Spark.
+	 * In the manual acknowledgement mode, the message is then acknowledged.
+	 * @param message, the stored message
+	 */
+	protected void acknowledge(Message message) {
+		if (sequenceWindows != null) {
+			final SequenceWindow window = sequenceWindows.get(message.getSubject());
+			if (window != null) {
+				window.markAcknowledged(message.getSequence());
+			}
+		}
+		if (getSubscriptionOptions().isManualAcks()) {
+			try {
+				message.ack();
+			} catch (IOException | IllegalStateException e) {
+				logger.warn("Not able to acknowledge {}: {}", message, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Replaces the subscriptions by new ones, sharing the same queue group, with a new maxInFlight.
+	 * The new subscriptions are created before the previous ones are drained &amp; closed, so the queue group (and its position) is kept.
+	 * @param messageHandler, the handler of the messages
+	 * @param maxInFlight, the new maximum number of in-flight messages
+	 */
+	protected void resubscribe(MessageHandler messageHandler, int maxInFlight) {
+		logger.info("The maxInFlight of {} will move from {} to {}.", this, appliedMaxInFlight, maxInFlight);
+		synchronized (allSubscriptions) {
+			getSubscriptionOptsBuilder().maxInFlight(maxInFlight);
+			final List<Subscription> replaced = new ArrayList<Subscription>();
+			for (Subscription previous : new ArrayList<Subscription>(allSubscriptions)) {
+				try {
+					final String subject = previous.getSubject();
+					final DrainableMessageHandler drainable = new DrainableMessageHandler(messageHandler);
+					final Subscription sub = connection.subscribe(subject, natsQueue, getDispatchingMessageHandler(subject, drainable), getSubscriptionOptions(subject));
+					drainables.put(sub, drainable);
+					allSubscriptions.add(registerAtShutdown(sub));
+					allSubscriptions.remove(previous);
+					ShutdownRegistry.unregister(previous);
+					replaced.add(previous);
+				} catch (IOException | InterruptedException | TimeoutException | IllegalStateException e) {
+					logger.warn("Not able to replace {} with maxInFlight={}: {}", previous, maxInFlight, e.getMessage());
+				}
+			}
+			subscriptionOpts = null;
+			appliedMaxInFlight = maxInFlight;
+			drain(replaced);
+		}
+	}
+
+	/**
+	 * Closes the replaced subscriptions once the messages they are handling have been stored &amp; acknowledged.
+	 * The messages delivered to them in the meantime are left unacknowledged, to be redelivered to the new subscriptions of the queue group.
+	 * @param subscriptions, the replaced subscriptions
+	 */
+	protected void drain(List<Subscription> subscriptions) {
+		try {
+			for (Subscription sub : subscriptions) {
+				final DrainableMessageHandler drainable = drainables.remove(sub);
+				if ((drainable != null) && ! drainable.drain(DRAIN_TIMEOUT_MS)) {
+					logger.warn("{} is still handling some messages after {} ms: they will be redelivered.", sub, DRAIN_TIMEOUT_MS);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flushPendingMessages();
+		for (Subscription sub : subscriptions) {
+			try {
+				sub.close();
+			} catch (IOException | IllegalStateException e) {
+				logger.debug("Exception while closing {}: {}", sub, e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Stores &amp; acknowledges the messages kept by the conflation, the arena or the checkpointer (if any).
+	 */
+	protected void flushPendingMessages() {
+		flushConflation();
+		flushArena();
+		final SequenceCheckpointer<R> blocks = checkpointer;
+		if (blocks != null) {
+			try {
+				blocks.flush();
+			} catch (Exception e) {
+				logger.error("Not able to store a block of {}: {}", this, e.getMessage());
+			}
+		}
+	}
 	
 	@Override
 	public void onStop() {
+		stopping = true;
+		stopScheduler();
+		if (workers != null) {
+			for (ExecutorService worker : workers) {
+				worker.shutdown();
+			}
+			try {
+				for (ExecutorService worker : workers) {
+					worker.awaitTermination(1, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			workers = null;
+		}
+		if (conflator != null) {
+			flushConflation();
+			conflator = null;
+		}
+		if (arena != null) {
+			flushArena();
+			arena = null;
+		}
+		if (checkpointer != null) {
+			try {
+				checkpointer.flush();
+			} catch (Exception e) {
+				logger.warn("The last block of {} has not been stored: {}", this, e.getMessage());
+			}
+			checkpointer = null;
+		}
+		closeCatchUpSubscriptions();
+		synchronized (allSubscriptions) {
+			closeSubscriptions();
+		}
+	}
+
+	protected void closeCatchUpSubscriptions() {
+		if (catchUpSubscriptions != null) {
+			synchronized (catchUpSubscriptions) {
+				for (Subscription sub : catchUpSubscriptions) {
+					ShutdownRegistry.unregister(sub);
+					try {
+						sub.unsubscribe();
+					} catch (IOException | IllegalStateException e) {
+						logger.debug("Exception while unsubscribing {}: {}", sub, e.toString());
+					}
+				}
+				catchUpSubscriptions.clear();
+			}
+		}
+	}
+
+	protected void closeSubscriptions() {
 		try {			
 			Iterator<Subscription> setIterator = allSubscriptions.iterator();
 			while (setIterator.hasNext()) {
 				final Subscription sub = setIterator.next();
+				ShutdownRegistry.unregister(sub);
 				try {
 					if (keepConnectionDurable()) {
 						logger.info("Closing NATS Subscription to keep it DURABLE: " + sub);
@@ -404,6 +1390,7 @@ public abstract class OmnipotentNatsStreamingToSparkConnector<T,R,V> extends Nat
 
 			if ((! keepConnectionDurable()) && (connection != null)) {				
 				logger.info("Closing NATS Connection to keep it DURABLE: " + connection);
+				ShutdownRegistry.unregister(connection);
 				connection.close();
 				connection = null;
 			}
@@ -414,6 +1401,27 @@ public abstract class OmnipotentNatsStreamingToSparkConnector<T,R,V> extends Nat
 		}
 	}
 
+	/**
+	 * The connection of durable subscriptions is left open when the receiver stops (see {@link #closeSubscriptions()}):
+	 * it has to be closed before reconnecting with the same clientID, which would otherwise be rejected by the NATS Streaming Server.
+	 */
+	protected void closeDurableConnection() {
+		final StreamingConnection previous = connection;
+		if (previous == null) {
+			return;
+		}
+		connection = null;
+		logger.info("Closing the previous NATS Streaming Connection of {} before reconnecting as '{}'.", this, clientID);
+		ShutdownRegistry.unregister(previous);
+		try {
+			previous.close();
+		} catch (IOException | TimeoutException | IllegalStateException e) {
+			logger.debug("Exception while closing {}: {}", previous, e.toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	protected boolean keepConnectionDurable() {
 		final String durableName = getSubscriptionOptsBuilder().build().getDurableName();
 		return (durableName != null && !durableName.isEmpty());
@@ -10,17 +10,34 @@ package com.logimethods.connector.nats.to_spark;
 import static io.nats.client.Options.PROP_URL;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.spark.storage.StorageLevel;
 
+import com.codahale.metrics.Gauge;
+import com.logimethods.connector.nats_spark.ConsistentHashRing;
 import com.logimethods.connector.nats_spark.IncompleteException;
+import com.logimethods.connector.nats_spark.NatsSparkMetrics;
+import com.logimethods.connector.nats_spark.PayloadChunks;
+import com.logimethods.connector.nats_spark.PayloadDictionaries;
+import com.logimethods.connector.nats_spark.ShutdownRegistry;
+import com.logimethods.connector.nats_spark.ShutdownRegistry.Phase;
+import com.logimethods.connector.nats_spark.UnknownDictionaryException;
 
 import io.nats.client.Connection;
+import io.nats.client.ConnectionListener;
 import io.nats.client.Dispatcher;
+import io.nats.client.Message;
 import io.nats.client.MessageHandler;
 import io.nats.client.Nats;
 import io.nats.client.Options;
@@ -61,13 +78,142 @@ public abstract class OmnipotentStandardNatsToSparkConnector<T,R,V> extends Nats
 		super(type, storageLevel, subjects, properties, queue, natsUrl);
 	}
 
+	/**
+	 * Stores the NATS Messages through a bounded buffer which applies the provided policy when Spark cannot keep up.
+	 * The number of dropped messages is reported by the {@code receiver.[id].shed} Counter of {@link NatsSparkMetrics}.
+	 * @param policy, the policy to apply when more than maxPending messages are waiting to be stored
+	 * @param maxPending, the maximum number of pending messages
+	 * @return the connector itself
+	 */
+	public T withOverloadPolicy(OverloadPolicy policy, int maxPending) {
+		return withOverloadPolicy(policy, maxPending, 1);
+	}
+
+	/**
+	 * Stores the NATS Messages through a bounded buffer which applies the provided policy when Spark cannot keep up.
+	 * The number of dropped messages is reported by the {@code receiver.[id].shed} Counter of {@link NatsSparkMetrics}.
+	 * @param policy, the policy to apply when more than maxPending messages are waiting to be stored
+	 * @param maxPending, the maximum number of pending messages
+	 * @param sampling, the N of the 1-in-N {@link OverloadPolicy#SAMPLE} policy
+	 * @return the connector itself
+	 * @throws IllegalArgumentException if maxPending is not positive
+	 */
+	@SuppressWarnings("unchecked")
+	public T withOverloadPolicy(OverloadPolicy policy, int maxPending, int sampling) {
+		if ((policy != null) && (maxPending <= 0)) {
+			throw new IllegalArgumentException("The maximum number of pending messages must be positive: " + maxPending);
+		}
+		this.overloadPolicy = policy;
+		this.maxPending = maxPending;
+		this.sampling = sampling;
+		return (T)this;
+	}
+
+	/**
+	 * @param topology, the way the NATS Subjects are spread over NATS Dispatchers (each of them being a thread)
+	 * @param poolSize, the number of Dispatchers of the {@link DispatcherTopology#POOL} topology
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withDispatcherTopology(DispatcherTopology topology, int poolSize) {
+		if ((topology == DispatcherTopology.POOL) && (poolSize < 1)) {
+			throw new IllegalArgumentException("A pool of Dispatchers requires at least one Dispatcher: " + poolSize);
+		}
+		this.dispatcherTopology = topology;
+		this.dispatcherPoolSize = poolSize;
+		return (T)this;
+	}
+
+	/**
+	 * @param topology, the way the NATS Subjects are spread over NATS Dispatchers (each of them being a thread)
+	 * @return the connector itself
+	 */
+	public T withDispatcherTopology(DispatcherTopology topology) {
+		return withDispatcherTopology(topology, dispatcherPoolSize);
+	}
+
+	/**
+	 * Sets the limits of the messages waiting to be handled by each NATS Dispatcher,
+	 * above which the messages are dropped by the NATS Client (see {@link io.nats.client.Consumer#setPendingLimits(long, long)}).
+	 * @param maxMessages, the maximum number of pending messages per Dispatcher (0 or less to keep the default of the NATS Client)
+	 * @param maxBytes, the maximum number of pending bytes per Dispatcher (0 or less to keep the default of the NATS Client)
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withDispatcherPendingLimits(long maxMessages, long maxBytes) {
+		this.dispatcherPendingMessages = maxMessages;
+		this.dispatcherPendingBytes = maxBytes;
+		return (T)this;
+	}
+
+	/**
+	 * Defines what to do when the NATS Client keeps dropping messages because the receiver cannot keep up
+	 * (by default, the overload is reported as a receiver error). The dropped messages are counted by the {@code receiver.[id].dropped} Counter,
+	 * the slow consumer events by {@code receiver.[id].slowConsumer} and the pending messages &amp; bytes by the {@code receiver.[id].pending.messages}
+	 * &amp; {@code receiver.[id].pending.bytes} Gauges of {@link NatsSparkMetrics}.
+	 * @param action, the action to take on sustained overload
+	 * @param pollInterval, the time between two checks of the number of dropped messages
+	 * @param sustainedPolls, the number of consecutive checks with dropped messages that defines a sustained overload
+	 * @return the connector itself
+	 */
+	@SuppressWarnings("unchecked")
+	public T withSlowConsumerDetection(SlowConsumerAction action, Duration pollInterval, int sustainedPolls) {
+		this.slowConsumerAction = action;
+		this.slowConsumerPollInterval = pollInterval;
+		this.slowConsumerSustainedPolls = sustainedPolls;
+		return (T)this;
+	}
+
+	@Override
+	protected <C extends NatsToSparkConnector<?,?,V>> C transferSettingsTo(C connector) {
+		super.transferSettingsTo(connector);
+		if (connector instanceof OmnipotentStandardNatsToSparkConnector) {
+			final OmnipotentStandardNatsToSparkConnector<?,?,V> standardConnector = (OmnipotentStandardNatsToSparkConnector<?,?,V>) connector;
+			standardConnector.overloadPolicy = overloadPolicy;
+			standardConnector.maxPending = maxPending;
+			standardConnector.sampling = sampling;
+			standardConnector.dispatcherTopology = dispatcherTopology;
+			standardConnector.dispatcherPoolSize = dispatcherPoolSize;
+			standardConnector.dispatcherPendingMessages = dispatcherPendingMessages;
+			standardConnector.dispatcherPendingBytes = dispatcherPendingBytes;
+			standardConnector.slowConsumerAction = slowConsumerAction;
+			standardConnector.slowConsumerPollInterval = slowConsumerPollInterval;
+			standardConnector.slowConsumerSustainedPolls = slowConsumerSustainedPolls;
+		}
+		return connector;
+	}
+
 	/**
 	 */
 	protected StandardNatsToKeyValueSparkConnectorImpl<V> storedAsKeyValue() {
-		return new StandardNatsToKeyValueSparkConnectorImpl<V>(type, storageLevel(), subjects, properties, natsQueue, natsUrl, dataDecoder, scalaDataDecoder);
+		return transferSettingsTo(new StandardNatsToKeyValueSparkConnectorImpl<V>(type, storageLevel(), subjects, properties, natsQueue, natsUrl, dataDecoder, scalaDataDecoder));
 	}
 
 	protected Properties enrichedProperties;
+	protected OverloadPolicy overloadPolicy;
+	protected int maxPending;
+	protected int sampling = 1;
+	protected transient LoadShedder<Message> loadShedder;
+	protected transient LatestValueConflator<Message> conflator;
+	protected transient MessageHandler conflatedMessageHandler;
+	protected transient PayloadArena<Message> arena;
+	protected DispatcherTopology dispatcherTopology = DispatcherTopology.PER_SUBJECT;
+	protected int dispatcherPoolSize = Runtime.getRuntime().availableProcessors();
+	protected long dispatcherPendingMessages = 0;
+	protected long dispatcherPendingBytes = 0;
+	protected SlowConsumerAction slowConsumerAction = SlowConsumerAction.WARN;
+	protected Duration slowConsumerPollInterval = Duration.ofSeconds(5);
+	protected int slowConsumerSustainedPolls = 3;
+	protected transient SlowConsumerMonitor slowConsumerMonitor;
+	protected transient List<Connection> natsConnections;
+	protected transient List<Dispatcher> natsDispatchers;
+	protected transient MessageHandler activeMessageHandler;
+	protected transient Collection<String> activeSubjects;
+
+	/**
+	 * The maximum number of NATS Connections added to the regular one by the {@link SlowConsumerAction#EXTRA_RECEIVER} action.
+	 */
+	protected static final int MAX_EXTRA_CONNECTIONS = 4;
 
 	/** Create a socket connection and receive data until receiver is stopped 
 	 * @throws IncompleteException 
@@ -79,48 +225,377 @@ public abstract class OmnipotentStandardNatsToSparkConnector<T,R,V> extends Nats
 	protected void receive() throws IncompleteException, IOException, TimeoutException, IllegalStateException, IllegalArgumentException, InterruptedException {
 
 		// Make connection and initialize streams			  
-		Connection connection;
-		final Options options = new Options.Builder(getEnrichedProperties()).build();
+		slowConsumerMonitor = new SlowConsumerMonitor(toString(), slowConsumerSustainedPolls, 
+										NatsSparkMetrics.counter(metricName("dropped")), 
+										NatsSparkMetrics.counter(metricName("slowConsumer")),
+										this::onSustainedOverload,
+										this::onConnectionEvent);
+		natsConnections = new CopyOnWriteArrayList<Connection>();
+		natsDispatchers = new CopyOnWriteArrayList<Dispatcher>();
+		final Connection connection = connect();
+
+		if (decompression) {
+			PayloadDictionaries.listen(connection, dictionaryControlSubject);
+		}
+
+		final MessageHandler messageHandler = getRejectingMessageHandler(getReassemblingMessageHandler(getFilteringMessageHandler(getConflatingMessageHandler(getLoadSheddingMessageHandler(getArenaMessageHandler(getMessageHandler()))))));
+		activeMessageHandler = messageHandler;
+		activeSubjects = getShardSubjects();
+		subscribe(connection, messageHandler, activeSubjects);
+		startSlowConsumerDetection();
+	}
+
+	/**
+	 * @return a new NATS Connection, watched by the SlowConsumerMonitor
+	 * @throws IncompleteException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected Connection connect() throws IncompleteException, IOException, InterruptedException {
+		final Options options = new Options.Builder(getEnrichedProperties())
+										.errorListener(slowConsumerMonitor)
+										.connectionListener(slowConsumerMonitor)
+										.build();
+		final Connection connection;
 		try {
 			connection = Nats.connect(options);
 		} catch (Exception e) {
 			logger.error("Nats.connect({}, {}, {}) PRODUCES {}", ReflectionToStringBuilder.toString(options), e.getMessage());
 			throw(e);
 		}
+		natsConnections.add(ShutdownRegistry.register(connection, Phase.CONNECTION, Connection::close));
 		logger.info("A NATS from '{}' to Spark Connection has been created for '{}', sharing Queue '{}'.", connection.getConnectedUrl(), this, natsQueue);
+		return connection;
+	}
+
+	protected void startSlowConsumerDetection() {
+		final SlowConsumerMonitor monitor = slowConsumerMonitor;
+		NatsSparkMetrics.gauge((Gauge<Long>) monitor::getPendingMessages, metricName("pending", "messages"));
+		NatsSparkMetrics.gauge((Gauge<Long>) monitor::getPendingBytes, metricName("pending", "bytes"));
+		if ((slowConsumerPollInterval != null) && (! slowConsumerPollInterval.isZero())) {
+			final long interval = slowConsumerPollInterval.toMillis();
+			getScheduler().scheduleWithFixedDelay(monitor::poll, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
 
-		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
-			@Override
-			public void run() {
-				logger.debug("Caught CTRL-C, shutting down gracefully..." + connection);
+	/**
+	 * Called by the SlowConsumerMonitor on each event of the NATS Connection(s).
+	 * The NATS Client reconnects by itself after a disconnection, but the receiver needs to be restarted once the connection is closed.
+	 * The events of the connections which are not used by that receiver anymore (closed on purpose, or by a previous start) are ignored.
+	 * @param connection, the NATS Connection concerned
+	 * @param type, the type of event
+	 */
+	protected void onConnectionEvent(Connection connection, ConnectionListener.Events type) {
+		final List<Connection> connections = natsConnections;
+		if ((connections == null) || ! connections.contains(connection)) {
+			logger.debug("{} event of a former NATS Connection of {} ignored.", type, this);
+			return;
+		}
+		switch (type) {
+		case DISCONNECTED:
+			disconnected();
+			break;
+		case RECONNECTED:
+			recovered();
+			break;
+		case CLOSED:
+			restartWithBackoff("NATS Connection closed", null);
+			break;
+		default:
+		}
+	}
+
+	/**
+	 * Called by the SlowConsumerMonitor when messages keep being dropped.
+	 * @param overload, the description of the overload
+	 */
+	protected void onSustainedOverload(String overload) {
+		switch (slowConsumerAction) {
+		case RESTART:
+			restart("Slow consumer: " + overload);
+			break;
+		case EXTRA_RECEIVER:
+			// The first NATS Connection is the regular one
+			if (natsConnections.size() - 1 < MAX_EXTRA_CONNECTIONS) {
+				Connection extraConnection = null;
 				try {
-					Thread.sleep(500); // To allow the `dispatcher.unsubscribe(subject);` to be call
-					if (connection != null ) connection.close();
-				} catch (InterruptedException e) {
-					logger.debug(e.getMessage());
+					extraConnection = connect();
+					subscribe(extraConnection, activeMessageHandler, activeSubjects);
+					logger.info("An extra NATS Connection has been added to {} ({} in total).", this, natsConnections.size());
+					break;
+				} catch (Exception e) {
+					logger.error("Not able to add an extra NATS Connection to {}: {}", this, e.getMessage());
+					if (extraConnection != null) {
+						natsConnections.remove(extraConnection);
+						ShutdownRegistry.unregister(extraConnection);
+						try {
+							extraConnection.close();
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+						}
+					}
 				}
 			}
-		}));
+			reportError("Slow consumer: " + overload, null);
+			break;
+		default:
+			reportError("Slow consumer: " + overload, null);
+		}
+	}
+
+	/**
+	 * Subscribes to the subjects through Dispatchers created according to the {@link DispatcherTopology}.
+	 * @param connection, the NATS Connection
+	 * @param messageHandler, the handler of the messages
+	 * @param subjects, the NATS Subjects to subscribe to
+	 * @return the Dispatchers, with their Subjects
+	 */
+	protected Map<Dispatcher, List<String>> subscribe(Connection connection, MessageHandler messageHandler, Collection<String> subjects) {
+		final int dispatcherCount;
+		switch (dispatcherTopology) {
+		case SHARED:
+			dispatcherCount = 1;
+			break;
+		case POOL:
+			dispatcherCount = Math.min(dispatcherPoolSize, subjects.size());
+			break;
+		default:
+			dispatcherCount = subjects.size();
+		}
+		final Dispatcher[] pool = new Dispatcher[Math.max(1, dispatcherCount)];
+		final ConsistentHashRing ring = (dispatcherTopology == DispatcherTopology.POOL) ? new ConsistentHashRing(pool.length) : null;
 
-		for (String subject: getSubjects()) {
-			final Dispatcher dispatcher = connection.createDispatcher(getMessageHandler()).subscribe(subject, natsQueue);
+		final Map<Dispatcher, List<String>> dispatchers = new LinkedHashMap<Dispatcher, List<String>>();
+		int i = 0;
+		for (String subject: subjects) {
+			final int index = (dispatcherTopology == DispatcherTopology.SHARED) ? 0 
+								: (ring != null) ? ring.nodeOf(subject) 
+								: i++;
+			if (pool[index] == null) {
+				pool[index] = connection.createDispatcher(messageHandler);
+				if ((dispatcherPendingMessages > 0) || (dispatcherPendingBytes > 0)) {
+					pool[index].setPendingLimits(
+							(dispatcherPendingMessages > 0) ? dispatcherPendingMessages : pool[index].getPendingMessageLimit(),
+							(dispatcherPendingBytes > 0) ? dispatcherPendingBytes : pool[index].getPendingByteLimit());
+				}
+				dispatchers.put(pool[index], new ArrayList<String>());
+			}
+			pool[index].subscribe(subject, natsQueue);
+			if (slowConsumerMonitor != null) {
+				slowConsumerMonitor.register(pool[index]);
+			}
+			dispatchers.get(pool[index]).add(subject);
 			logger.info("Listening on {}.", subject);
-			
-			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
-				@Override
-				public void run() {
+		}
+		for (Map.Entry<Dispatcher, List<String>> entry: dispatchers.entrySet()) {
+			final List<String> dispatcherSubjects = entry.getValue();
+			ShutdownRegistry.register(entry.getKey(), Phase.DISPATCHER, dispatcher -> {
+				for (String subject: dispatcherSubjects) {
+					dispatcher.unsubscribe(subject);
+				}
+			});
+			if (natsDispatchers != null) {
+				natsDispatchers.add(entry.getKey());
+			}
+		}
+		logger.info("{} NATS Subject(s) spread over {} Dispatcher(s) ({}).", subjects.size(), dispatchers.size(), dispatcherTopology);
+		return dispatchers;
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that buffers the messages before calling the provided one, if an OverloadPolicy has been defined
+	 */
+	protected MessageHandler getLoadSheddingMessageHandler(MessageHandler messageHandler) {
+		if (overloadPolicy == null) {
+			return messageHandler;
+		}
+
+		loadShedder = new LoadShedder<Message>(overloadPolicy, maxPending, sampling,
+				m -> {
 					try {
-						logger.debug("Caught CTRL-C, shutting down gracefully..." + dispatcher);
-						dispatcher.unsubscribe(subject);
-						connection.closeDispatcher(dispatcher);
-					} catch (IllegalStateException e) {
-						if (logger.isDebugEnabled()) {
-							logger.error("Exception while unsubscribing " + e.toString());
-						}
+						messageHandler.onMessage(m);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (UnknownDictionaryException e) {
+						reject(m, e);
 					}
+				},
+				NatsSparkMetrics.counter(metricName("shed")));
+		final LoadShedder<Message> shedder = loadShedder;
+		NatsSparkMetrics.gauge((Gauge<Integer>) () -> shedder.size(), metricName("pending"));
+		shedder.start("NatsToSparkConnector-" + streamId() + "-store");
+		logger.info("Messages received by {} will be buffered with the {} policy (max {} pending messages).", this, overloadPolicy, maxPending);
+
+		return m -> shedder.offer(m.getSubject(), m);
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that drops the messages whose compression dictionary is not available, if the decompression is enabled
+	 */
+	protected MessageHandler getRejectingMessageHandler(MessageHandler messageHandler) {
+		if (! decompression) {
+			return messageHandler;
+		}
+		return m -> {
+			try {
+				messageHandler.onMessage(m);
+			} catch (UnknownDictionaryException e) {
+				reject(m, e);
+			}
+		};
+	}
+
+	/**
+	 * Drops a message which cannot be decompressed (a NATS message is never redelivered).
+	 * @param message, the rejected message
+	 * @param e, the cause of the rejection
+	 */
+	protected void reject(Message message, UnknownDictionaryException e) {
+		NatsSparkMetrics.counter(metricName("rejected")).inc();
+		logger.warn("Message received by {} on '{}' rejected: {}", this, message.getSubject(), e.getMessage());
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that rebuilds the chunked payloads before providing them (as a single message) to the provided handler, if enabled
+	 */
+	protected MessageHandler getReassemblingMessageHandler(MessageHandler messageHandler) {
+		final PayloadReassembler<Message> reassembler = newPayloadReassembler();
+		if (reassembler == null) {
+			return messageHandler;
+		}
+		return m -> {
+			final byte[] data = m.getData();
+			if (! PayloadChunks.isChunk(data)) {
+				messageHandler.onMessage(m);
+				return;
+			}
+			// Nothing to acknowledge: the messages of the chunks are not kept
+			final PayloadReassembler.Payload<Message> payload = reassembler.add(data, null);
+			if (payload != null) {
+				messageHandler.onMessage(new PayloadReassembler.StandardMessage(m, payload.data));
+			}
+		};
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that drops the messages rejected by the filter (before their decoding), if a filter has been defined
+	 */
+	protected MessageHandler getFilteringMessageHandler(MessageHandler messageHandler) {
+		final MessageFilter filter = getMeasuredFilter();
+		if (filter == null) {
+			return messageHandler;
+		}
+		return m -> {
+			if (filter.accept(m.getSubject(), m.getData())) {
+				messageHandler.onMessage(m);
+			}
+		};
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that only keeps the latest message of each Subject, stored once per Block Interval, if the conflation is enabled
+	 */
+	protected MessageHandler getConflatingMessageHandler(MessageHandler messageHandler) {
+		if (! conflation) {
+			return messageHandler;
+		}
+
+		conflator = new LatestValueConflator<Message>(NatsSparkMetrics.counter(metricName("conflated")));
+		conflatedMessageHandler = messageHandler;
+		final long interval = getBlockIntervalNanos();
+		getScheduler().scheduleWithFixedDelay(this::flushConflation, interval, interval, TimeUnit.NANOSECONDS);
+		logger.info("Only the latest message of each NATS Subject received by {} will be stored.", this);
+
+		final LatestValueConflator<Message> latest = conflator;
+		return m -> latest.offer(m.getSubject(), m);
+	}
+
+	protected void flushConflation() {
+		final LatestValueConflator<Message> latest = conflator;
+		if (latest != null) {
+			latest.flush(m -> {
+				try {
+					conflatedMessageHandler.onMessage(m);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (UnknownDictionaryException e) {
+					reject(m, e);
+				} catch (Exception e) {
+					logger.error("Not able to store the latest message of '{}': {}", m.getSubject(), e.getMessage());
 				}
-			}));
+			});
+		}
+	}
+
+	/**
+	 * @param messageHandler, the handler that decodes &amp; stores the messages
+	 * @return a handler that copies the raw payloads into the arena, stored once per Block Interval, if the arena is enabled
+	 */
+	protected MessageHandler getArenaMessageHandler(MessageHandler messageHandler) {
+		final PayloadArena<Message> payloads = newPayloadArena(false);
+		if (payloads == null) {
+			return messageHandler;
+		}
+
+		arena = payloads;
+		final long interval = getBlockIntervalNanos();
+		getScheduler().scheduleWithFixedDelay(this::flushArena, interval, interval, TimeUnit.NANOSECONDS);
+		return m -> payloads.add(m.getSubject(), m.getData(), null);
+	}
+
+	protected void flushArena() {
+		final PayloadArena<Message> payloads = arena;
+		if (payloads != null) {
+			try {
+				payloads.flush((block, messages) -> storeArenaBlock(block));
+			} catch (Exception e) {
+				logger.error("Not able to store the arena block of {}: {}", this, e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void onStop() {
+		stopping = true;
+		stopScheduler();
+		if (conflator != null) {
+			flushConflation();
+			conflator = null;
+		}
+		if (loadShedder != null) {
+			loadShedder.stop();
+			loadShedder = null;
+		}
+		if (natsDispatchers != null) {
+			for (Dispatcher natsDispatcher : natsDispatchers) {
+				ShutdownRegistry.unregister(natsDispatcher);
+			}
+			natsDispatchers = null;
+		}
+		if (slowConsumerMonitor != null) {
+			slowConsumerMonitor.detach();
+		}
+		if (natsConnections != null) {
+			for (Connection natsConnection : natsConnections) {
+				ShutdownRegistry.unregister(natsConnection);
+				try {
+					natsConnection.close();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			natsConnections = null;
+		}
+		if (arena != null) {
+			flushArena();
+			arena = null;
 		}
+		super.onStop();
 	}
 
 	protected Properties getEnrichedProperties() throws IncompleteException {
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+/**
+ * The policies applied by a receiver when the NATS Messages come faster than Spark allows them to be stored.
+ *
+ * @see OmnipotentStandardNatsToSparkConnector#withOverloadPolicy(OverloadPolicy, int)
+ */
+public enum OverloadPolicy {
+	/**
+	 * The oldest pending messages are dropped to make room for the new ones.
+	 */
+	DROP_OLDEST,
+	/**
+	 * The new messages are dropped until there is room for them.
+	 */
+	DROP_NEWEST,
+	/**
+	 * Only one message out of N is kept (in place of the oldest pending one) until there is room for all of them.
+	 */
+	SAMPLE,
+	/**
+	 * Only the latest pending message of each NATS Subject is kept.
+	 */
+	LATEST_PER_SUBJECT
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.apache.spark.HashPartitioner;
+
+import scala.Tuple2;
+import scala.collection.mutable.ArrayBuffer;
+
+/**
+ * Routes the Key/Value records into one block per partition (according to a {@link HashPartitioner} on their keys),
+ * each of them being stored into Spark with its partition index as metadata (see {@link KeyPartitionedInputDStream}).
+ *
+ * @param <V> the type of the values
+ * @param <M> the type of the NATS Messages to acknowledge once their block has been stored
+ */
+class PartitionedBlocks<V, M> {
+
+	protected final HashPartitioner partitioner;
+	protected final BiConsumer<ArrayBuffer<Tuple2<String, V>>, Integer> storeBlock;
+	protected final Consumer<M> onStored;
+
+	protected final Object flushLock = new Object();
+	protected List<ArrayBuffer<Tuple2<String, V>>> buffers;
+	protected List<M> messages = new ArrayList<M>();
+	protected int size = 0;
+
+	/**
+	 * @param partitions, the number of partitions
+	 * @param storeBlock, stores a block of records into Spark, with the index of its partition
+	 * @param onStored, called for each message of the stored blocks (to acknowledge it, for example)
+	 */
+	PartitionedBlocks(int partitions, BiConsumer<ArrayBuffer<Tuple2<String, V>>, Integer> storeBlock, Consumer<M> onStored) {
+		this.partitioner = new HashPartitioner(partitions);
+		this.storeBlock = storeBlock;
+		this.onStored = onStored;
+		this.buffers = newBuffers();
+	}
+
+	/**
+	 * @param key, the key of a record (its NATS Subject)
+	 * @return the partition of that key, as computed by Spark
+	 */
+	int partitionOf(String key) {
+		return partitioner.getPartition(key);
+	}
+
+	/**
+	 * @param record, the record to store
+	 * @param message, the NATS Message of that record (can be null)
+	 */
+	synchronized void add(Tuple2<String, V> record, M message) {
+		buffers.get(partitionOf(record._1)).$plus$eq(record);
+		size++;
+		if (message != null) {
+			messages.add(message);
+		}
+	}
+
+	/**
+	 * @param records, the records to store
+	 * @param recordMessages, the NATS Messages of those records
+	 */
+	synchronized void addAll(List<Tuple2<String, V>> records, List<M> recordMessages) {
+		for (Tuple2<String, V> record : records) {
+			buffers.get(partitionOf(record._1)).$plus$eq(record);
+		}
+		size += records.size();
+		messages.addAll(recordMessages);
+	}
+
+	/**
+	 * Stores the pending records, one block per (non empty) partition.
+	 */
+	void flush() {
+		synchronized (flushLock) {
+			final List<ArrayBuffer<Tuple2<String, V>>> blocks;
+			final List<M> blockMessages;
+			synchronized (this) {
+				if (size == 0) {
+					return;
+				}
+				blocks = buffers;
+				blockMessages = messages;
+				buffers = newBuffers();
+				messages = new ArrayList<M>();
+				size = 0;
+			}
+
+			for (int partition = 0; partition < blocks.size(); partition++) {
+				if (! blocks.get(partition).isEmpty()) {
+					storeBlock.accept(blocks.get(partition), partition);
+				}
+			}
+			for (M message : blockMessages) {
+				onStored.accept(message);
+			}
+		}
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	protected List<ArrayBuffer<Tuple2<String, V>>> newBuffers() {
+		final int partitions = partitioner.numPartitions();
+		final List<ArrayBuffer<Tuple2<String, V>>> newBuffers = new ArrayList<ArrayBuffer<Tuple2<String, V>>>(partitions);
+		for (int i = 0; i < partitions; i++) {
+			newBuffers.add(new ArrayBuffer<Tuple2<String, V>>());
+		}
+		return newBuffers;
+	}
+}
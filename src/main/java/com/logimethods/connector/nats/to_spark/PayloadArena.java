@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.codahale.metrics.Histogram;
+
+/**
+ * Accumulates the raw payloads of the received messages into (heap) slabs of bytes, until they are flushed as a single {@link ArenaBlock}
+ * (usually, once per Spark Block Interval).
+ * <p>
+ * The payloads are written back to back, a payload overlapping the end of a slab being continued at the beginning of the next one:
+ * the slabs are all full, except the last one, and they are handed as such to the block, without being copied again.
+ * Adding a message only allocates a new slab once the previous one is full: its length &amp; Subject are recorded into arrays
+ * reused from one block to the next.
+ *
+ * @param <M> the type of the NATS Messages kept to be acknowledged once their block has been stored
+ */
+class PayloadArena<M> {
+
+	protected final int slabSize;
+	protected final boolean keepMessages;
+	protected final Histogram blockSizes;
+
+	protected final List<byte[]> slabs = new ArrayList<byte[]>();
+	protected int[] lengths = new int[1024];
+	protected int[] subjectIds = new int[1024];
+	protected int count = 0;
+	protected int bytes = 0;
+	protected final Map<String, Integer> subjectIndex = new HashMap<String, Integer>();
+	protected final List<String> subjects = new ArrayList<String>();
+	protected List<M> messages = new ArrayList<M>();
+
+	/**
+	 * @param slabSize, the size (in bytes) of the slabs
+	 * @param keepMessages, whether the messages have to be provided on flush (to be acknowledged)
+	 * @param blockSizes, records the size (in bytes) of each block
+	 */
+	PayloadArena(int slabSize, boolean keepMessages, Histogram blockSizes) {
+		this.slabSize = slabSize;
+		this.keepMessages = keepMessages;
+		this.blockSizes = blockSizes;
+	}
+
+	/**
+	 * @param subject, the NATS Subject of the message
+	 * @param payload, the raw payload of the message
+	 * @param message, the NATS Message
+	 */
+	synchronized void add(String subject, byte[] payload, M message) {
+		final int length = (payload != null) ? payload.length : 0;
+		if ((bytes + length) < 0) {
+			throw new IllegalStateException("The block of " + this + " cannot exceed 2 GB");
+		}
+		int copied = 0;
+		while (copied < length) {
+			final int slabIndex = bytes / slabSize;
+			if (slabIndex == slabs.size()) {
+				slabs.add(new byte[slabSize]);
+			}
+			final int position = bytes % slabSize;
+			final int size = Math.min(length - copied, slabSize - position);
+			System.arraycopy(payload, copied, slabs.get(slabIndex), position, size);
+			copied += size;
+			bytes += size;
+		}
+
+		if (count == lengths.length) {
+			lengths = Arrays.copyOf(lengths, count * 2);
+			subjectIds = Arrays.copyOf(subjectIds, count * 2);
+		}
+		Integer id = subjectIndex.get(subject);
+		if (id == null) {
+			id = subjects.size();
+			subjectIndex.put(subject, id);
+			subjects.add(subject);
+		}
+		lengths[count] = length;
+		subjectIds[count] = id;
+		count++;
+		if (keepMessages) {
+			messages.add(message);
+		}
+	}
+
+	/**
+	 * Provides the pending messages, as a single block (holding the slabs), to the sink.
+	 * @param sink, stores the block (then acknowledges the messages, if any)
+	 */
+	void flush(BiConsumer<ArenaBlock, List<M>> sink) {
+		final ArenaBlock block;
+		final List<M> blockMessages;
+		final int blockBytes;
+		synchronized (this) {
+			if (count == 0) {
+				return;
+			}
+			final int[] offsets = new int[count + 1];
+			for (int i = 0; i < count; i++) {
+				offsets[i + 1] = offsets[i] + lengths[i];
+			}
+			block = new ArenaBlock(slabs.toArray(new byte[slabs.size()][]), slabSize, offsets, Arrays.copyOf(subjectIds, count),
+									subjects.toArray(new String[subjects.size()]));
+			blockBytes = bytes;
+
+			slabs.clear();
+			count = 0;
+			bytes = 0;
+			subjectIndex.clear();
+			subjects.clear();
+			blockMessages = messages;
+			messages = new ArrayList<M>(keepMessages ? blockMessages.size() : 0);
+		}
+		blockSizes.update(blockBytes);
+		sink.accept(block, blockMessages);
+	}
+
+	/**
+	 * @return the number of pending messages
+	 */
+	synchronized int size() {
+		return count;
+	}
+}
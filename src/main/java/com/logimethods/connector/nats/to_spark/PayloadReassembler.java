@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.logimethods.connector.nats_spark.PayloadChunks;
+
+import io.nats.client.Connection;
+import io.nats.client.Subscription;
+
+/**
+ * Rebuilds the payloads split into chunks by a publisher (see {@link PayloadChunks}), before they are decoded.
+ * <p>
+ * The payload is allocated once, when its first chunk is received, and each chunk is copied straight at its offset.
+ * The partial payloads are bounded in memory (the oldest ones are dropped to make room for a new one)
+ * and dropped when they are not completed within the timeout.
+ * <p>
+ * The messages of the chunks are kept with their payload, to be acknowledged together once that payload has been stored:
+ * the chunks of a dropped payload are never acknowledged, so they are redelivered by a NATS Streaming Server.
+ *
+ * @param <M> the type of the NATS Messages of the chunks
+ */
+class PayloadReassembler<M> {
+
+	static final Logger logger = LoggerFactory.getLogger(PayloadReassembler.class);
+
+	protected final long maxBytes;
+	protected final long timeoutNanos;
+	protected final Counter reassembledCounter;
+	protected final Counter expiredCounter;
+
+	protected final LinkedHashMap<Long, Payload<M>> partials = new LinkedHashMap<Long, Payload<M>>();
+	protected long pendingBytes = 0;
+
+	/**
+	 * A payload being rebuilt, with the messages of its chunks.
+	 * @param <M> the type of the NATS Messages of the chunks
+	 */
+	static class Payload<M> {
+		final byte[] data;
+		final boolean[] received;
+		final List<M> messages;
+		final long startNanos;
+		int remaining;
+
+		Payload(int length, int count, long startNanos) {
+			this.data = new byte[length];
+			this.received = new boolean[count];
+			this.messages = new ArrayList<M>(count);
+			this.remaining = count;
+			this.startNanos = startNanos;
+		}
+	}
+
+	/**
+	 * @param maxBytes, the maximum size (in bytes) of all the partial payloads
+	 * @param timeoutNanos, the time (in nanoseconds) after which a partial payload is dropped
+	 * @param reassembledCounter, counts the rebuilt payloads
+	 * @param expiredCounter, counts the dropped partial payloads
+	 */
+	PayloadReassembler(long maxBytes, long timeoutNanos, Counter reassembledCounter, Counter expiredCounter) {
+		this.maxBytes = maxBytes;
+		this.timeoutNanos = timeoutNanos;
+		this.reassembledCounter = reassembledCounter;
+		this.expiredCounter = expiredCounter;
+	}
+
+	/**
+	 * @param chunk, a chunk (see {@link PayloadChunks#isChunk(byte[])})
+	 * @param message, the NATS Message of that chunk, to be kept with the payload (or null)
+	 * @return the complete payload, with the messages of all its chunks, once its last chunk has been received, null otherwise
+	 */
+	synchronized Payload<M> add(byte[] chunk, M message) {
+		final long now = System.nanoTime();
+		expire(now);
+
+		final long id = PayloadChunks.getId(chunk);
+		Payload<M> partial = partials.get(id);
+		if (partial == null) {
+			final int length = PayloadChunks.getTotalLength(chunk);
+			if (length > maxBytes) {
+				logger.warn("A payload of {} bytes exceeds the reassembly buffer ({} bytes): it will be dropped.", length, maxBytes);
+				expiredCounter.inc();
+				return null;
+			}
+			final Iterator<Payload<M>> oldest = partials.values().iterator();
+			while (pendingBytes + length > maxBytes) {
+				drop(oldest, oldest.next());
+			}
+			partial = new Payload<M>(length, PayloadChunks.getCount(chunk), now);
+			partials.put(id, partial);
+			pendingBytes += length;
+		}
+
+		final int index = PayloadChunks.getIndex(chunk);
+		if ((index >= partial.received.length) || partial.received[index]) {
+			// Redelivered (or inconsistent) chunk
+			return null;
+		}
+		System.arraycopy(chunk, PayloadChunks.HEADER_SIZE, partial.data, PayloadChunks.getOffset(chunk), chunk.length - PayloadChunks.HEADER_SIZE);
+		partial.received[index] = true;
+		if (message != null) {
+			partial.messages.add(message);
+		}
+		if (--partial.remaining > 0) {
+			return null;
+		}
+
+		partials.remove(id);
+		pendingBytes -= partial.data.length;
+		reassembledCounter.inc();
+		return partial;
+	}
+
+	/**
+	 * Drops the partial payloads older than the timeout.
+	 * @return the number of dropped payloads
+	 */
+	synchronized int expire() {
+		return expire(System.nanoTime());
+	}
+
+	protected int expire(long now) {
+		int expired = 0;
+		// The partials are kept in their creation order
+		final Iterator<Payload<M>> iterator = partials.values().iterator();
+		while (iterator.hasNext()) {
+			final Payload<M> partial = iterator.next();
+			if (now - partial.startNanos <= timeoutNanos) {
+				break;
+			}
+			drop(iterator, partial);
+			expired++;
+		}
+		return expired;
+	}
+
+	protected void drop(Iterator<Payload<M>> iterator, Payload<M> partial) {
+		iterator.remove();
+		pendingBytes -= partial.data.length;
+		expiredCounter.inc();
+		logger.warn("A partial payload ({} chunks out of {}) has been dropped.", partial.received.length - partial.remaining, partial.received.length);
+	}
+
+	/**
+	 * @return the number of partial payloads
+	 */
+	synchronized int size() {
+		return partials.size();
+	}
+
+	/**
+	 * @return the size (in bytes) of the partial payloads
+	 */
+	synchronized long getPendingBytes() {
+		return pendingBytes;
+	}
+
+	/**
+	 * A NATS Message made of a rebuilt payload, taking its other attributes from its last chunk.
+	 */
+	static class StandardMessage implements io.nats.client.Message {
+		protected final io.nats.client.Message lastChunk;
+		protected final byte[] data;
+
+		StandardMessage(io.nats.client.Message lastChunk, byte[] data) {
+			this.lastChunk = lastChunk;
+			this.data = data;
+		}
+
+		@Override
+		public String getSubject() {
+			return lastChunk.getSubject();
+		}
+
+		@Override
+		public String getReplyTo() {
+			return lastChunk.getReplyTo();
+		}
+
+		@Override
+		public byte[] getData() {
+			return data;
+		}
+
+		@Override
+		public Subscription getSubscription() {
+			return lastChunk.getSubscription();
+		}
+
+		@Override
+		public String getSID() {
+			return lastChunk.getSID();
+		}
+
+		@Override
+		public Connection getConnection() {
+			return lastChunk.getConnection();
+		}
+	}
+
+	/**
+	 * A NATS Streaming Message made of a rebuilt payload, taking its other attributes (sequence, timestamp) from its last chunk,
+	 * and acknowledging all its chunks.
+	 */
+	static class StreamingMessage extends io.nats.streaming.Message {
+		protected final List<io.nats.streaming.Message> chunks;
+		protected final io.nats.streaming.Message lastChunk;
+		protected final byte[] data;
+
+		StreamingMessage(List<io.nats.streaming.Message> chunks, byte[] data) {
+			this.chunks = chunks;
+			this.lastChunk = chunks.get(chunks.size() - 1);
+			this.data = data;
+		}
+
+		@Override
+		public String getSubject() {
+			return lastChunk.getSubject();
+		}
+
+		@Override
+		public byte[] getData() {
+			return data;
+		}
+
+		@Override
+		public long getSequence() {
+			return lastChunk.getSequence();
+		}
+
+		@Override
+		public long getTimestamp() {
+			return lastChunk.getTimestamp();
+		}
+
+		@Override
+		public boolean isRedelivered() {
+			return lastChunk.isRedelivered();
+		}
+
+		@Override
+		public void ack() throws IOException {
+			IOException failure = null;
+			for (io.nats.streaming.Message chunk : chunks) {
+				try {
+					chunk.ack();
+				} catch (IOException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "StreamingMessage [lastChunk=" + lastChunk + ", chunks=" + chunks.size() + ", bytes=" + data.length + "]";
+		}
+	}
+}
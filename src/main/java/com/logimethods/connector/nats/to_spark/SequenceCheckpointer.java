@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.nats.streaming.Message;
+
+/**
+ * Groups the NATS Streaming messages into blocks, stored into Spark in one (blocking) call,
+ * after which the last stored sequence of each channel is saved into an {@link OffsetStore} (one write per block).
+ * <p>
+ * While a channel is replayed out of order (see {@link CatchUpReplay}), its saved sequence is capped by a ceiling,
+ * below which all the messages have been stored.
+ *
+ * @param <R> the type of the data stored into Spark
+ */
+class SequenceCheckpointer<R> {
+
+	static final Logger logger = LoggerFactory.getLogger(SequenceCheckpointer.class);
+
+	protected final OffsetStore offsetStore;
+	protected final Consumer<List<R>> storeBlock;
+	protected final Consumer<Message> onStored;
+	protected final ConcurrentHashMap<String, Long> storedSequences = new ConcurrentHashMap<String, Long>();
+	protected final ConcurrentHashMap<String, Long> ceilings = new ConcurrentHashMap<String, Long>();
+
+	protected final Object flushLock = new Object();
+	protected List<R> items = new ArrayList<R>();
+	protected List<Message> messages = new ArrayList<Message>();
+
+	/**
+	 * @param offsetStore, where the sequences are saved
+	 * @param storeBlock, stores a block of data into Spark (returning once it has been stored)
+	 * @param onStored, called for each message of a stored block (to acknowledge it, for example)
+	 * @throws IOException if the sequences cannot be loaded
+	 */
+	SequenceCheckpointer(OffsetStore offsetStore, Consumer<List<R>> storeBlock, Consumer<Message> onStored) throws IOException {
+		this.offsetStore = offsetStore;
+		this.storeBlock = storeBlock;
+		this.onStored = onStored;
+		this.storedSequences.putAll(offsetStore.load());
+	}
+
+	/**
+	 * @param channel, a NATS Streaming channel
+	 * @return the sequence to resume from, or 0 if no message of that channel has been stored yet
+	 */
+	long getResumeSequence(String channel) {
+		final Long sequence = storedSequences.get(channel);
+		return (sequence != null) ? sequence + 1 : 0;
+	}
+
+	/**
+	 * @param channel, a NATS Streaming channel
+	 * @param sequence, the highest sequence of that channel that can be saved (all the previous ones having been added)
+	 */
+	void setCeiling(String channel, long sequence) {
+		ceilings.put(channel, sequence);
+	}
+
+	/**
+	 * @param channel, a NATS Streaming channel whose messages are added in order again
+	 */
+	void clearCeiling(String channel) {
+		ceilings.remove(channel);
+	}
+
+	synchronized void add(R item, Message message) {
+		items.add(item);
+		messages.add(message);
+	}
+
+	/**
+	 * Adds data made of several messages (combined records, for example).
+	 * @param blockItems, the data to store
+	 * @param blockMessages, the messages of that data
+	 */
+	synchronized void addAll(List<R> blockItems, List<Message> blockMessages) {
+		items.addAll(blockItems);
+		messages.addAll(blockMessages);
+	}
+
+	/**
+	 * Stores the pending messages as one block, then saves their sequences.
+	 */
+	void flush() {
+		synchronized (flushLock) {
+			final List<R> block;
+			final List<Message> blockMessages;
+			final Map<String, Long> limits;
+			synchronized (this) {
+				if (items.isEmpty()) {
+					return;
+				}
+				block = items;
+				blockMessages = messages;
+				items = new ArrayList<R>();
+				messages = new ArrayList<Message>();
+				// The ceilings are read with the block, so they only cover messages already added
+				limits = new HashMap<String, Long>(ceilings);
+			}
+	
+			storeBlock.accept(block);
+			save(blockMessages, limits);
+		}
+	}
+
+	/**
+	 * @return a copy of the current ceilings, to be read before the messages they cover are taken out of their buffer
+	 */
+	Map<String, Long> getCeilings() {
+		return new HashMap<String, Long>(ceilings);
+	}
+
+	/**
+	 * Saves the sequences of messages that have been stored into Spark by another way (as an {@link ArenaBlock}, for example).
+	 * @param blockMessages, the stored messages
+	 * @param limits, the ceilings read before those messages were taken out of their buffer (see {@link #getCeilings()})
+	 */
+	void checkpoint(List<Message> blockMessages, Map<String, Long> limits) {
+		synchronized (flushLock) {
+			save(blockMessages, limits);
+		}
+	}
+
+	protected void save(List<Message> blockMessages, Map<String, Long> limits) {
+		for (Message message : blockMessages) {
+			storedSequences.merge(message.getSubject(), message.getSequence(), Math::max);
+			onStored.accept(message);
+		}
+		final Map<String, Long> sequences = new HashMap<String, Long>(storedSequences);
+		for (Map.Entry<String, Long> limit : limits.entrySet()) {
+			sequences.computeIfPresent(limit.getKey(), (channel, sequence) -> Math.min(sequence, limit.getValue()));
+		}
+		try {
+			offsetStore.save(sequences);
+		} catch (IOException e) {
+			logger.warn("Not able to save the sequences into {}: {}", offsetStore, e.getMessage());
+		}
+	}
+
+	synchronized int size() {
+		return items.size();
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which of the most recent sequences of a NATS Streaming channel have already been received (and acknowledged),
+ * through two rings of bits (one bit per sequence), so the memory used does not depend on the number of messages.
+ * <p>
+ * A sequence older than the window is considered as new (the messages might then be duplicated, but never lost).
+ */
+class SequenceWindow {
+
+	protected final long[] bits;
+	protected final long[] ackedBits;
+	protected final int size;
+	protected long highest = 0;
+
+	/**
+	 * @param size, the number of sequences remembered (rounded up to a multiple of 64)
+	 */
+	SequenceWindow(int size) {
+		this.bits = new long[Math.max(1, (size + 63) / 64)];
+		this.ackedBits = new long[bits.length];
+		this.size = bits.length * 64;
+	}
+
+	/**
+	 * Marks the sequence as received.
+	 * @param sequence, the sequence of a message
+	 * @return true if that sequence had already been received
+	 */
+	synchronized boolean markAndCheckDuplicate(long sequence) {
+		if (sequence > highest) {
+			final long gap = sequence - highest;
+			if (gap >= size) {
+				Arrays.fill(bits, 0L);
+				Arrays.fill(ackedBits, 0L);
+			} else {
+				for (long s = highest + 1; s < sequence; s++) {
+					clear(bits, s);
+					clear(ackedBits, s);
+				}
+			}
+			highest = sequence;
+			set(bits, sequence);
+			clear(ackedBits, sequence);
+			return false;
+		}
+		if (sequence <= highest - size) {
+			return false;
+		}
+		if (isSet(bits, sequence)) {
+			return true;
+		}
+		set(bits, sequence);
+		return false;
+	}
+
+	/**
+	 * Forgets a received sequence, whose message has been rejected before being stored: its redelivery will not be seen as a duplicate.
+	 * @param sequence, the sequence of a message
+	 */
+	synchronized void unmark(long sequence) {
+		if ((sequence <= highest) && (sequence > highest - size)) {
+			clear(bits, sequence);
+			clear(ackedBits, sequence);
+		}
+	}
+
+	/**
+	 * Marks the (received) sequence as acknowledged, once its message has been stored.
+	 * @param sequence, the sequence of a message
+	 */
+	synchronized void markAcknowledged(long sequence) {
+		if ((sequence <= highest) && (sequence > highest - size) && isSet(bits, sequence)) {
+			set(ackedBits, sequence);
+		}
+	}
+
+	/**
+	 * @param sequence, the sequence of a message
+	 * @return true if that sequence, still within the window, has already been acknowledged
+	 */
+	synchronized boolean isAcknowledged(long sequence) {
+		return (sequence <= highest) && (sequence > highest - size) && isSet(ackedBits, sequence);
+	}
+
+	protected void set(long[] ring, long sequence) {
+		final int index = (int) (sequence % size);
+		ring[index >>> 6] |= (1L << (index & 63));
+	}
+
+	protected void clear(long[] ring, long sequence) {
+		final int index = (int) (sequence % size);
+		ring[index >>> 6] &= ~(1L << (index & 63));
+	}
+
+	protected boolean isSet(long[] ring, long sequence) {
+		final int index = (int) (sequence % size);
+		return (ring[index >>> 6] & (1L << (index & 63))) != 0;
+	}
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+/**
+ * The actions taken by a standard NATS receiver when the NATS Client keeps dropping messages because the receiver cannot keep up.
+ *
+ * @see OmnipotentStandardNatsToSparkConnector#withSlowConsumerDetection(SlowConsumerAction, java.time.Duration, int)
+ */
+public enum SlowConsumerAction {
+	/**
+	 * The overload is logged and reported to Spark as a receiver error.
+	 */
+	WARN,
+	/**
+	 * The receiver is restarted by Spark.
+	 */
+	RESTART,
+	/**
+	 * An extra NATS Connection, subscribing to the same Subjects within the same Queue Group, is added to the receiver
+	 * (up to 4 extra Connections, the overload being then reported as a receiver error).
+	 */
+	EXTRA_RECEIVER
+}
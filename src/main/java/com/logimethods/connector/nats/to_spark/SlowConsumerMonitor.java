@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats.to_spark;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+
+import io.nats.client.Connection;
+import io.nats.client.ConnectionListener;
+import io.nats.client.ErrorListener;
+
+/**
+ * Watches the NATS Consumers (Dispatchers) of a standard NATS receiver, to detect the messages dropped by the NATS Client
+ * when the receiver cannot keep up.
+ * <p>
+ * It is both the {@link ErrorListener} and the {@link ConnectionListener} (forwarding the connection events) of the NATS Connection(s) of the receiver.
+ * The dropped messages are counted (through {@link #poll()}, to be called periodically), and the provided callback is called
+ * when messages have been dropped during a number of consecutive polls.
+ */
+class SlowConsumerMonitor implements ErrorListener, ConnectionListener {
+
+	static final Logger logger = LoggerFactory.getLogger(SlowConsumerMonitor.class);
+
+	protected final String name;
+	protected final int sustainedPolls;
+	protected final Counter droppedCounter;
+	protected final Counter slowConsumerCounter;
+	protected final Consumer<String> onSustainedOverload;
+	protected final BiConsumer<Connection, Events> onConnectionEvent;
+	protected volatile boolean detached = false;
+
+	protected final Map<io.nats.client.Consumer, Long> droppedCounts = new WeakHashMap<io.nats.client.Consumer, Long>();
+	protected int overloadedPolls = 0;
+
+	/**
+	 * @param name, the name of the monitored receiver
+	 * @param sustainedPolls, the number of consecutive polls with dropped messages that defines a sustained overload
+	 * @param droppedCounter, counts the dropped messages
+	 * @param slowConsumerCounter, counts the slow consumer events notified by the NATS Client
+	 * @param onSustainedOverload, called (with a description of the overload) on sustained overload
+	 * @param onConnectionEvent, called on each event of the NATS Connection(s), with the Connection concerned
+	 */
+	SlowConsumerMonitor(String name, int sustainedPolls, Counter droppedCounter, Counter slowConsumerCounter,
+						Consumer<String> onSustainedOverload, BiConsumer<Connection, Events> onConnectionEvent) {
+		this.name = name;
+		this.sustainedPolls = Math.max(1, sustainedPolls);
+		this.droppedCounter = droppedCounter;
+		this.slowConsumerCounter = slowConsumerCounter;
+		this.onSustainedOverload = onSustainedOverload;
+		this.onConnectionEvent = onConnectionEvent;
+	}
+
+	/**
+	 * @param consumer, a Dispatcher to watch
+	 */
+	synchronized void register(io.nats.client.Consumer consumer) {
+		droppedCounts.put(consumer, consumer.getDroppedCount());
+	}
+
+	/**
+	 * @return the number of messages dropped since the previous poll
+	 */
+	long poll() {
+		long dropped = 0;
+		String overload = null;
+		synchronized (this) {
+			for (Map.Entry<io.nats.client.Consumer, Long> entry : droppedCounts.entrySet()) {
+				final long count = entry.getKey().getDroppedCount();
+				dropped += Math.max(0, count - entry.getValue());
+				entry.setValue(count);
+			}
+			if (dropped > 0) {
+				droppedCounter.inc(dropped);
+				if (++overloadedPolls >= sustainedPolls) {
+					overload = name + " dropped " + dropped + " messages during the last poll, after " + (overloadedPolls - 1) + " consecutive overloaded poll(s)";
+					overloadedPolls = 0;
+				}
+			} else {
+				overloadedPolls = 0;
+			}
+		}
+		if (overload != null) {
+			logger.warn(overload);
+			onSustainedOverload.accept(overload);
+		}
+		return dropped;
+	}
+
+	/**
+	 * @return the number of messages waiting to be handled by the watched Dispatchers
+	 */
+	synchronized long getPendingMessages() {
+		long pending = 0;
+		for (io.nats.client.Consumer consumer : droppedCounts.keySet()) {
+			pending += consumer.getPendingMessageCount();
+		}
+		return pending;
+	}
+
+	/**
+	 * @return the number of bytes waiting to be handled by the watched Dispatchers
+	 */
+	synchronized long getPendingBytes() {
+		long pending = 0;
+		for (io.nats.client.Consumer consumer : droppedCounts.keySet()) {
+			pending += consumer.getPendingByteCount();
+		}
+		return pending;
+	}
+
+	@Override
+	public void errorOccurred(Connection conn, String error) {
+		logger.warn("NATS error on {}: {}", name, error);
+	}
+
+	@Override
+	public void exceptionOccurred(Connection conn, Exception exp) {
+		logger.warn("NATS exception on {}: {}", name, exp.toString());
+	}
+
+	@Override
+	public void slowConsumerDetected(Connection conn, io.nats.client.Consumer consumer) {
+		slowConsumerCounter.inc();
+		if (logger.isDebugEnabled()) {
+			logger.debug("Slow consumer detected on {}: {} pending messages, {} dropped", name, consumer.getPendingMessageCount(), consumer.getDroppedCount());
+		}
+	}
+
+	/**
+	 * Stops forwarding the connection events, to be called before closing the NATS Connection(s) on purpose:
+	 * their CLOSED events could otherwise be received once the receiver has been started again.
+	 */
+	void detach() {
+		detached = true;
+	}
+
+	@Override
+	public void connectionEvent(Connection conn, Events type) {
+		logger.info("NATS Connection of {}: {}", name, type);
+		if (! detached) {
+			onConnectionEvent.accept(conn, type);
+		}
+	}
+}
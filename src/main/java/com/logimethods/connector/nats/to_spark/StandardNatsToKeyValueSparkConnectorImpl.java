@@ -7,14 +7,23 @@
  *******************************************************************************/
 package com.logimethods.connector.nats.to_spark;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
 
 import org.apache.spark.storage.StorageLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.logimethods.connector.nats_spark.IncompleteException;
+import com.logimethods.connector.nats_spark.NatsSparkMetrics;
+
 import io.nats.client.Message;
 import io.nats.client.MessageHandler;
 import scala.Tuple2;
@@ -37,6 +46,11 @@ public class StandardNatsToKeyValueSparkConnectorImpl<V>
 	static final Logger logger = LoggerFactory.getLogger(StandardNatsToKeyValueSparkConnectorImpl.class);
 
 	protected Properties enrichedProperties;
+	protected BinaryOperator<V> combiner = null;
+	protected scala.Function2<V, V, V> scalaCombiner = null;
+	protected transient KeyCombiner<V, Message> keyCombiner;
+	protected int keyPartitions = 0;
+	protected transient PartitionedBlocks<V, Message> partitionedBlocks;
 	
 	protected StandardNatsToKeyValueSparkConnectorImpl(Class<V> type, StorageLevel storageLevel, Collection<String> subjects, Properties properties, 
 														String queue, String natsUrl, Function<byte[], V> dataDecoder, scala.Function1<byte[], V> scalaDataDecoder) {
@@ -45,6 +59,112 @@ public class StandardNatsToKeyValueSparkConnectorImpl<V>
 		this.scalaDataDecoder = scalaDataDecoder;
 	}
 
+	/**
+	 * Folds the values received on the same NATS Subject during each Spark Block Interval, to store a single record per Subject
+	 * (as a reduceByKey() would do, but before the data is stored into Spark).
+	 * The number of records saved that way is reported by the {@code receiver.[id].combined} Counter of {@link NatsSparkMetrics}.
+	 * 
+	 * @param combiner, an associative function folding two values of the same NATS Subject
+	 * @return the connector itself
+	 */
+	public StandardNatsToKeyValueSparkConnectorImpl<V> withCombiner(BinaryOperator<V> combiner) {
+		this.combiner = combiner;
+		return this;
+	}
+
+	/**
+	 * @param scalaCombiner, an associative function folding two values of the same NATS Subject
+	 * @return the connector itself
+	 * @see #withCombiner(BinaryOperator)
+	 */
+	public StandardNatsToKeyValueSparkConnectorImpl<V> withCombiner(scala.Function2<V, V, V> scalaCombiner) {
+		this.scalaCombiner = scalaCombiner;
+		return this;
+	}
+
+	/**
+	 * @param keyPartitions, the number of partitions the records are stored by (see asPartitionedStreamOfKeyValue())
+	 * @return the connector itself
+	 */
+	protected StandardNatsToKeyValueSparkConnectorImpl<V> withKeyPartitions(int keyPartitions) {
+		this.keyPartitions = keyPartitions;
+		return this;
+	}
+
+	@Override
+	protected void receive() throws IncompleteException, IOException, TimeoutException, IllegalStateException, IllegalArgumentException, InterruptedException {
+		startPartitionedBlocks();
+		startCombiner();
+		super.receive();
+	}
+
+	protected void startPartitionedBlocks() {
+		if (keyPartitions <= 0) {
+			return;
+		}
+
+		partitionedBlocks = new PartitionedBlocks<V, Message>(keyPartitions, this::store, m -> {}, () -> {});
+		final long interval = getBlockIntervalNanos();
+		getScheduler().scheduleWithFixedDelay(this::flushPartitionedBlocks, interval, interval, TimeUnit.NANOSECONDS);
+		logger.info("The records received by {} will be stored by blocks of {} partitions.", this, keyPartitions);
+	}
+
+	protected void flushPartitionedBlocks() {
+		final PartitionedBlocks<V, Message> blocks = partitionedBlocks;
+		if (blocks != null) {
+			try {
+				blocks.flush();
+			} catch (Exception e) {
+				logger.error("Not able to store the partitioned blocks of {}: {}", this, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @param records, the records to store, directly or into their partition block
+	 */
+	protected void storeRecords(List<Tuple2<String, V>> records) {
+		final PartitionedBlocks<V, Message> blocks = partitionedBlocks;
+		if (blocks != null) {
+			blocks.addAll(records, Collections.<Message>emptyList());
+		} else {
+			store(records.iterator());
+		}
+	}
+
+	protected void startCombiner() {
+		if ((combiner == null) && (scalaCombiner == null)) {
+			return;
+		}
+
+		final BinaryOperator<V> reducer = (combiner != null) ? combiner : scalaCombiner::apply;
+		keyCombiner = new KeyCombiner<V, Message>(reducer, false, NatsSparkMetrics.counter(metricName("combined")));
+		final long interval = getBlockIntervalNanos();
+		getScheduler().scheduleWithFixedDelay(this::flushCombiner, interval, interval, TimeUnit.NANOSECONDS);
+		logger.info("The values received by {} will be combined per NATS Subject.", this);
+	}
+
+	protected void flushCombiner() {
+		final KeyCombiner<V, Message> combination = keyCombiner;
+		if (combination != null) {
+			try {
+				combination.flush((records, messages) -> storeRecords(records));
+			} catch (Exception e) {
+				logger.error("Not able to store the combined records of {}: {}", this, e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void onStop() {
+		// Stored before the receiver, and its partition blocks, are stopped
+		flushCombiner();
+		flushPartitionedBlocks();
+		super.onStop();
+		keyCombiner = null;
+		partitionedBlocks = null;
+	}
+
 	protected MessageHandler getMessageHandler() {
 		return new MessageHandler() {
 			@Override
@@ -54,8 +174,16 @@ public class StandardNatsToKeyValueSparkConnectorImpl<V>
 				if (logger.isTraceEnabled()) {
 					logger.trace("Received by {} on Subject '{}': {}.", StandardNatsToKeyValueSparkConnectorImpl.this, m.getSubject(), s);
 				}
-										
-				store(s);
+
+				final KeyCombiner<V, Message> combination = keyCombiner;
+				final PartitionedBlocks<V, Message> blocks = partitionedBlocks;
+				if (combination != null) {
+					combination.add(s._1, s._2, m);
+				} else if (blocks != null) {
+					blocks.add(s, null);
+				} else {
+					store(s);
+				}
 			}
 		};
 	}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A (immutable) Consistent Hashing Ring, assigning keys (like NATS Subjects) to a fixed number of nodes.
+ * <p>
+ * Each node owns a number of virtual points on the ring; a key belongs to the owner of the first point following its hash.
+ * The hash does not depend on the JVM, so all the Spark Executors compute the same assignments,
+ * and changing the number of nodes only moves about 1/n of the keys.
+ *
+ * @author agent
+ */
+public class ConsistentHashRing implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	protected final int nodes;
+	protected final long[] points;
+	protected final int[] owners;
+
+	/**
+	 * @param nodes, the number of nodes of that ring
+	 */
+	public ConsistentHashRing(int nodes) {
+		this(nodes, DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param nodes, the number of nodes of that ring
+	 * @param virtualNodes, the number of points per node (the more points, the more even the distribution)
+	 */
+	public ConsistentHashRing(int nodes, int virtualNodes) {
+		if ((nodes < 1) || (virtualNodes < 1)) {
+			throw new IllegalArgumentException("A ConsistentHashRing requires at least one node & one virtual node: " + nodes + ", " + virtualNodes);
+		}
+		this.nodes = nodes;
+
+		final int size = nodes * virtualNodes;
+		final long[] entries = new long[size];
+		final long[][] pairs = new long[size][];
+		int i = 0;
+		for (int node = 0; node < nodes; node++) {
+			for (int v = 0; v < virtualNodes; v++) {
+				pairs[i++] = new long[] { hash("node-" + node + "#" + v), node };
+			}
+		}
+		Arrays.sort(pairs, (a, b) -> (a[0] != b[0]) ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+		this.owners = new int[size];
+		for (i = 0; i < size; i++) {
+			entries[i] = pairs[i][0];
+			owners[i] = (int) pairs[i][1];
+		}
+		this.points = entries;
+	}
+
+	/**
+	 * @param key, the key (a NATS Subject, for example)
+	 * @return the node owning that key, between 0 and nodes - 1
+	 */
+	public int nodeOf(String key) {
+		if (nodes == 1) {
+			return 0;
+		}
+		int index = Arrays.binarySearch(points, hash(key));
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return owners[(index == points.length) ? 0 : index];
+	}
+
+	/**
+	 * @return the number of nodes of that ring
+	 */
+	public int getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * A 64 bits FNV-1a hash of the UTF-8 encoding of the key, followed by the MurmurHash3 finalizer.
+	 * @param key, the key to hash
+	 * @return the position of that key on the ring
+	 */
+	public static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h ^= (b & 0xff);
+			h *= 0x100000001b3L;
+		}
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return "ConsistentHashRing [nodes=" + nodes + ", points=" + points.length + "]";
+	}
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import org.apache.spark.SparkEnv;
+import org.apache.spark.metrics.MetricsSystem;
+import org.apache.spark.metrics.source.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+
+/**
+ * The (per JVM) metrics of the NATS / Spark Connectors.
+ * <p>
+ * Those metrics are kept into a Dropwizard {@link MetricRegistry} (provided by the Spark runtime), which is registered
+ * as a {@code nats-connector-spark} Source of the Spark Metrics System as soon as a Spark Environment is available,
+ * and registered again each time a metric is added or removed (Spark only keeps the metrics known at registration).
+ *
+ * @author agent
+ */
+public class NatsSparkMetrics {
+
+	static final Logger logger = LoggerFactory.getLogger(NatsSparkMetrics.class);
+
+	public static final String SOURCE_NAME = "nats-connector-spark";
+
+	protected static final MetricRegistry registry = new MetricRegistry();
+
+	/**
+	 * The Spark Metrics System into which the metrics are registered (if any).
+	 */
+	protected static volatile MetricsSystem metricsSystem;
+	protected static Source source;
+	protected static volatile boolean sparkUnavailable = false;
+
+	static {
+		registry.addListener(new SparkSourceUpdater());
+	}
+
+	/**
+	 * @return the registry of all the metrics of the NATS / Spark Connectors
+	 */
+	public static MetricRegistry getRegistry() {
+		registerIntoSpark();
+		return registry;
+	}
+
+	public static Counter counter(String name, String... names) {
+		return getRegistry().counter(MetricRegistry.name(name, names));
+	}
+
+	public static Meter meter(String name, String... names) {
+		return getRegistry().meter(MetricRegistry.name(name, names));
+	}
+
+	public static Timer timer(String name, String... names) {
+		return getRegistry().timer(MetricRegistry.name(name, names));
+	}
+
+	public static Histogram histogram(String name, String... names) {
+		return getRegistry().histogram(MetricRegistry.name(name, names));
+	}
+
+	/**
+	 * Registers the gauge, replacing the one previously registered with the same name (by a restarted receiver, for example).
+	 */
+	public static <X> Gauge<X> gauge(Gauge<X> gauge, String name, String... names) {
+		final String fullName = MetricRegistry.name(name, names);
+		synchronized (registry) {
+			getRegistry().remove(fullName);
+			return getRegistry().register(fullName, gauge);
+		}
+	}
+
+	/**
+	 * Registers the Source into the Metrics System of the current Spark Environment (again, if that Environment has been replaced).
+	 */
+	protected static void registerIntoSpark() {
+		if (sparkUnavailable) {
+			return;
+		}
+		try {
+			final SparkEnv env = SparkEnv.get();
+			final MetricsSystem system = (env != null) ? env.metricsSystem() : null;
+			if ((system == null) || (system == metricsSystem)) {
+				return;
+			}
+			synchronized (registry) {
+				if (system != metricsSystem) {
+					if (source == null) {
+						source = new NatsSparkSource();
+					}
+					system.registerSource(source);
+					metricsSystem = system;
+				}
+			}
+		} catch (Throwable e) {
+			logger.debug("The NATS metrics cannot be registered into the Spark Metrics System: {}", e.getMessage());
+			sparkUnavailable = true;
+		}
+	}
+
+	/**
+	 * Spark copies the metrics of a Source when it is registered: the Source is then registered again each time a metric is added or removed.
+	 */
+	protected static void refreshSparkSource() {
+		final MetricsSystem system = metricsSystem;
+		if (system == null) {
+			return;
+		}
+		synchronized (registry) {
+			try {
+				system.removeSource(source);
+				system.registerSource(source);
+			} catch (Exception e) {
+				logger.debug("The NATS metrics cannot be updated into the Spark Metrics System: {}", e.getMessage());
+			}
+		}
+	}
+
+	static class NatsSparkSource implements Source {
+		@Override
+		public String sourceName() {
+			return SOURCE_NAME;
+		}
+
+		@Override
+		public MetricRegistry metricRegistry() {
+			return registry;
+		}
+	}
+
+	static class SparkSourceUpdater extends MetricRegistryListener.Base {
+		@Override
+		public void onGaugeAdded(String name, Gauge<?> gauge) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onGaugeRemoved(String name) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onCounterAdded(String name, Counter counter) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onCounterRemoved(String name) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onHistogramAdded(String name, Histogram histogram) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onHistogramRemoved(String name) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onMeterAdded(String name, Meter meter) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onMeterRemoved(String name) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onTimerAdded(String name, Timer timer) {
+			refreshSparkSource();
+		}
+
+		@Override
+		public void onTimerRemoved(String name) {
+			refreshSparkSource();
+		}
+	}
+}
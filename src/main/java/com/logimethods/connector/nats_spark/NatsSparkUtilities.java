@@ -54,6 +54,42 @@ public class NatsSparkUtilities {
 		return transformIntoAList(subjectsArray);
 	}
 	
+	/**
+	 * @param pattern, a NATS Subject, which could contain wildcards ('*' for one token, '&gt;' for all the remaining tokens)
+	 * @param subject, a NATS Subject (without wildcard)
+	 * @return true if the Subject matches the pattern
+	 */
+	public static boolean matchesSubject(String pattern, String subject) {
+		// Walks through the tokens of both Subjects, without allocating them
+		int patternStart = 0;
+		int subjectStart = 0;
+		while (patternStart <= pattern.length()) {
+			int patternEnd = pattern.indexOf('.', patternStart);
+			if (patternEnd < 0) {
+				patternEnd = pattern.length();
+			}
+			final int tokenLength = patternEnd - patternStart;
+			final boolean wildcard = (tokenLength == 1) && (pattern.charAt(patternStart) == '*');
+			if ((tokenLength == 1) && (pattern.charAt(patternStart) == '>')) {
+				return subjectStart < subject.length();
+			}
+			if (subjectStart > subject.length()) {
+				return false;
+			}
+			int subjectEnd = subject.indexOf('.', subjectStart);
+			if (subjectEnd < 0) {
+				subjectEnd = subject.length();
+			}
+			if ((! wildcard) &&
+					((subjectEnd - subjectStart != tokenLength) || (! subject.regionMatches(subjectStart, pattern, patternStart, tokenLength)))) {
+				return false;
+			}
+			patternStart = patternEnd + 1;
+			subjectStart = subjectEnd + 1;
+		}
+		return subjectStart > subject.length();
+	}
+
 	/**
 	 * @param obj, any kind of Object
 	 * @return an array of bytes encoding that object (only for the number types) 
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A collection of Static Methods used to split the payloads exceeding the NATS maximum payload size into chunks,
+ * and to read the header of those chunks.
+ * <p>
+ * A chunk starts with a small header: a {@link #MAGIC} byte, the (8 bytes) id of the payload, then the (4 bytes) index of the chunk,
+ * the number of chunks, the offset of the chunk within the payload and the length of the payload.
+ * Each chunk is filled straight from the source payload, which is never copied as a whole.
+ * <p>
+ * The chunks of a payload are published in order, on the same NATS Subject, by the same connection.
+ * They have to be received by the same receiver to be reassembled (no NATS Queue shared with other receivers, for example).
+ *
+ * @author agent
+ */
+public class PayloadChunks {
+
+	/**
+	 * The first byte of a chunk (never found into UTF-8 encoded Strings, and distinct from {@link PayloadCompression#MAGIC}).
+	 */
+	public static final byte MAGIC = (byte) 0xFD;
+
+	public static final int HEADER_SIZE = 25;
+
+	/**
+	 * The default maximum size (in bytes, header included) of a chunk, well below the default NATS maximum payload size (1 MB).
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+
+	/**
+	 * Publishes a chunk.
+	 */
+	@FunctionalInterface
+	public interface ChunkPublisher {
+		void publish(byte[] chunk) throws Exception;
+	}
+
+	/**
+	 * @param payload, the payload to split
+	 * @param chunkSize, the maximum size (in bytes, header included) of each chunk
+	 * @param publisher, publishes each chunk, in order
+	 * @return the number of published chunks
+	 * @throws Exception if a chunk cannot be published
+	 */
+	public static int publish(byte[] payload, int chunkSize, ChunkPublisher publisher) throws Exception {
+		if (chunkSize <= HEADER_SIZE) {
+			throw new IllegalArgumentException("The size of the chunks should be larger than their header: " + chunkSize);
+		}
+		final int sliceSize = chunkSize - HEADER_SIZE;
+		final int count = (payload.length + sliceSize - 1) / sliceSize;
+		final long id = ThreadLocalRandom.current().nextLong();
+		for (int index = 0; index < count; index++) {
+			final int offset = index * sliceSize;
+			final int length = Math.min(sliceSize, payload.length - offset);
+			final byte[] chunk = new byte[HEADER_SIZE + length];
+			chunk[0] = MAGIC;
+			writeLong(chunk, 1, id);
+			PayloadCompression.writeInt(chunk, 9, index);
+			PayloadCompression.writeInt(chunk, 13, count);
+			PayloadCompression.writeInt(chunk, 17, offset);
+			PayloadCompression.writeInt(chunk, 21, payload.length);
+			System.arraycopy(payload, offset, chunk, HEADER_SIZE, length);
+			publisher.publish(chunk);
+		}
+		return count;
+	}
+
+	/**
+	 * @param payload, a payload
+	 * @return true if that payload starts with a chunk header consistent with its size (see {@link #publish(byte[], int, ChunkPublisher)})
+	 */
+	public static boolean isChunk(byte[] payload) {
+		if ((payload == null) || (payload.length <= HEADER_SIZE) || (payload[0] != MAGIC)) {
+			return false;
+		}
+		final int index = getIndex(payload);
+		final int count = getCount(payload);
+		final int offset = getOffset(payload);
+		final int total = getTotalLength(payload);
+		final int length = payload.length - HEADER_SIZE;
+		if ((index < 0) || (index >= count) || (count > total) || (offset < 0) || (offset > total - length)) {
+			return false;
+		}
+		if (index < count - 1) {
+			// All the chunks but the last one are full
+			return (offset == (long) index * length) && (count == chunkCount(total, length));
+		}
+		// The last chunk ends the payload
+		if (offset + length != total) {
+			return false;
+		}
+		if (index == 0) {
+			return true;
+		}
+		final int sliceSize = offset / index;
+		return (offset == (long) index * sliceSize) && (sliceSize >= length) && (count == chunkCount(total, sliceSize));
+	}
+
+	protected static long chunkCount(int total, int sliceSize) {
+		return ((long) total + sliceSize - 1) / sliceSize;
+	}
+
+	public static long getId(byte[] chunk) {
+		return readLong(chunk, 1);
+	}
+
+	public static int getIndex(byte[] chunk) {
+		return PayloadCompression.readInt(chunk, 9);
+	}
+
+	public static int getCount(byte[] chunk) {
+		return PayloadCompression.readInt(chunk, 13);
+	}
+
+	public static int getOffset(byte[] chunk) {
+		return PayloadCompression.readInt(chunk, 17);
+	}
+
+	public static int getTotalLength(byte[] chunk) {
+		return PayloadCompression.readInt(chunk, 21);
+	}
+
+	protected static void writeLong(byte[] bytes, int offset, long value) {
+		PayloadCompression.writeInt(bytes, offset, (int) (value >>> 32));
+		PayloadCompression.writeInt(bytes, offset + 4, (int) value);
+	}
+
+	protected static long readLong(byte[] bytes, int offset) {
+		return ((long) PayloadCompression.readInt(bytes, offset) << 32) | (PayloadCompression.readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+	}
+}
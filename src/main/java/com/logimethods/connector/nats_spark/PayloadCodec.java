@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.github.luben.zstd.Zstd;
+
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * The compression codecs that can be applied to the NATS Message Payloads.
+ * <p>
+ * The codec used to compress a payload is identified by its {@link #getId()} byte, which is written in the header of that payload
+ * (see {@link PayloadCompression}). Snappy, LZ4 &amp; Zstandard are provided by the Spark runtime, no extra dependency is needed.
+ *
+ * @author agent
+ */
+public enum PayloadCodec {
+
+	NONE((byte) 0) {
+		@Override
+		protected int maxCompressedLength(int length) {
+			return length;
+		}
+
+		@Override
+		protected int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+			System.arraycopy(src, srcOffset, dest, destOffset, srcLength);
+			return srcLength;
+		}
+
+		@Override
+		protected void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength) {
+			System.arraycopy(src, srcOffset, dest, destOffset, destLength);
+		}
+	},
+
+	SNAPPY((byte) 1) {
+		@Override
+		protected int maxCompressedLength(int length) {
+			return org.xerial.snappy.Snappy.maxCompressedLength(length);
+		}
+
+		@Override
+		protected int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) throws IOException {
+			return org.xerial.snappy.Snappy.compress(src, srcOffset, srcLength, dest, destOffset);
+		}
+
+		@Override
+		protected void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength) throws IOException {
+			final int length = org.xerial.snappy.Snappy.uncompress(src, srcOffset, srcLength, dest, destOffset);
+			if (length != destLength) {
+				throw new IOException("Snappy produced " + length + " bytes instead of " + destLength);
+			}
+		}
+	},
+
+	LZ4((byte) 2) {
+		@Override
+		protected int maxCompressedLength(int length) {
+			return LZ4_FACTORY.fastCompressor().maxCompressedLength(length);
+		}
+
+		@Override
+		protected int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+			return LZ4_FACTORY.fastCompressor().compress(src, srcOffset, srcLength, dest, destOffset, dest.length - destOffset);
+		}
+
+		/**
+		 * The safe decompressor checks its input, which may not have been produced by a compressing publisher.
+		 */
+		@Override
+		protected void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength) throws IOException {
+			final int length = LZ4_FACTORY.safeDecompressor().decompress(src, srcOffset, srcLength, dest, destOffset, destLength);
+			if (length != destLength) {
+				throw new IOException("LZ4 produced " + length + " bytes instead of " + destLength);
+			}
+		}
+	},
+
+	ZSTD((byte) 3) {
+		@Override
+		protected int maxCompressedLength(int length) {
+			return (int) Zstd.compressBound(length);
+		}
+
+		/**
+		 * Zstandard is called through direct Buffers (reused per Thread) to avoid copying the frame out of the payload.
+		 */
+		@Override
+		protected int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) throws IOException {
+			final ByteBuffer srcBuffer = directBuffer(ZSTD_SRC_BUFFER, srcLength);
+			srcBuffer.put(src, srcOffset, srcLength);
+			final ByteBuffer destBuffer = directBuffer(ZSTD_DEST_BUFFER, maxCompressedLength(srcLength));
+			final long size = Zstd.compressDirectByteBuffer(destBuffer, 0, destBuffer.capacity(), srcBuffer, 0, srcLength, ZSTD_LEVEL);
+			if (Zstd.isError(size)) {
+				throw new IOException("Zstd compression failed: " + Zstd.getErrorName(size));
+			}
+			destBuffer.get(dest, destOffset, (int) size);
+			return (int) size;
+		}
+
+		@Override
+		protected void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength) throws IOException {
+			final ByteBuffer srcBuffer = directBuffer(ZSTD_SRC_BUFFER, srcLength);
+			srcBuffer.put(src, srcOffset, srcLength);
+			final ByteBuffer destBuffer = directBuffer(ZSTD_DEST_BUFFER, destLength);
+			final long size = Zstd.decompressDirectByteBuffer(destBuffer, 0, destLength, srcBuffer, 0, srcLength);
+			if (Zstd.isError(size) || (size != destLength)) {
+				throw new IOException("Zstd decompression failed: " + (Zstd.isError(size) ? Zstd.getErrorName(size) : size + " bytes"));
+			}
+			destBuffer.get(dest, destOffset, destLength);
+		}
+	};
+
+	protected static final int ZSTD_LEVEL = 3;
+
+	private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
+	private static final ThreadLocal<ByteBuffer> ZSTD_SRC_BUFFER = new ThreadLocal<ByteBuffer>();
+	private static final ThreadLocal<ByteBuffer> ZSTD_DEST_BUFFER = new ThreadLocal<ByteBuffer>();
+
+	private final byte id;
+
+	private PayloadCodec(byte id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the byte identifying that codec into the header of the compressed payloads
+	 */
+	public byte getId() {
+		return id;
+	}
+
+	/**
+	 * @param id, the byte identifying a codec
+	 * @return the matching codec, or null if that id is unknown
+	 */
+	public static PayloadCodec fromId(byte id) {
+		for (PayloadCodec codec : values()) {
+			if (codec.id == id) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	protected abstract int maxCompressedLength(int length);
+
+	/**
+	 * @return the number of bytes written into dest
+	 */
+	protected abstract int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) throws IOException;
+
+	protected abstract void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength) throws IOException;
+
+	/**
+	 * @return a cleared direct Buffer, owned by the current Thread, of at least the requested capacity
+	 */
+	protected static ByteBuffer directBuffer(ThreadLocal<ByteBuffer> threadLocal, int capacity) {
+		ByteBuffer buffer = threadLocal.get();
+		if ((buffer == null) || (buffer.capacity() < capacity)) {
+			buffer = ByteBuffer.allocateDirect(Math.max(capacity, PayloadCompression.INITIAL_BUFFER_SIZE));
+			threadLocal.set(buffer);
+		}
+		buffer.clear();
+		return buffer;
+	}
+}
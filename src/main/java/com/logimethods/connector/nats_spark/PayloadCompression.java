@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A collection of Static Methods used to compress &amp; decompress the NATS Message Payloads.
+ * <p>
+ * A compressed payload starts with a small header: a {@link #MAGIC} byte, the {@link PayloadCodec#getId()} byte
+ * and the (4 bytes) length of the uncompressed payload. Payloads without that header are left untouched by {@link #decompress(byte[])},
+ * so compressed and uncompressed producers can share the same NATS Subjects.
+ * <p>
+ * The payloads compressed with a {@link PayloadDictionary} are decompressed through the dictionaries registered into {@link PayloadDictionaries}.
+ * <p>
+ * The working buffers are reused per Thread.
+ *
+ * @author agent
+ */
+public class PayloadCompression {
+
+	static final Logger logger = LoggerFactory.getLogger(PayloadCompression.class);
+
+	/**
+	 * The first byte of a compressed payload (never found into UTF-8 encoded Strings).
+	 */
+	public static final byte MAGIC = (byte) 0xFE;
+
+	public static final int HEADER_SIZE = 6;
+
+	/**
+	 * The payloads smaller than that number of bytes are not compressed by default.
+	 */
+	public static final int DEFAULT_THRESHOLD = 64;
+
+	protected static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+	protected static final int MAX_UNCOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+	private static final ThreadLocal<byte[]> COMPRESSION_BUFFER = new ThreadLocal<byte[]>();
+
+	/**
+	 * @param codec, the codec to use (NONE or null to keep the payload as it is)
+	 * @param payload, the payload to compress
+	 * @param threshold, the minimal size (in bytes) of a payload to be compressed
+	 * @return the compressed payload, prefixed by its header, or the original payload when the compression does not reduce its size
+	 */
+	public static byte[] compress(PayloadCodec codec, byte[] payload, int threshold) {
+		if ((codec == null) || (codec == PayloadCodec.NONE) || (payload == null) || (payload.length < threshold)) {
+			return payload;
+		}
+
+		final byte[] buffer = getCompressionBuffer(HEADER_SIZE + codec.maxCompressedLength(payload.length));
+		final int size;
+		try {
+			size = codec.compress(payload, 0, payload.length, buffer, HEADER_SIZE);
+		} catch (IOException e) {
+			logger.warn("{} compression failed, the payload will be sent uncompressed: {}", codec, e.getMessage());
+			return payload;
+		}
+		if (HEADER_SIZE + size >= payload.length) {
+			return payload;
+		}
+
+		buffer[0] = MAGIC;
+		buffer[1] = codec.getId();
+		writeInt(buffer, 2, payload.length);
+		return Arrays.copyOf(buffer, HEADER_SIZE + size);
+	}
+
+	/**
+	 * @param payload, a payload, compressed or not
+	 * @return the uncompressed payload (the unknown dictionaries are requested without waiting for them)
+	 * @throws UnknownDictionaryException when the payload has been compressed with a dictionary which is not registered yet
+	 */
+	public static byte[] decompress(byte[] payload) {
+		return decompress(payload, Duration.ZERO);
+	}
+
+	/**
+	 * @param payload, a payload, compressed or not
+	 * @param dictionaryWait, the maximum time to wait for an unknown dictionary (see {@link PayloadDictionaries#get(int, Duration)})
+	 * @return the uncompressed payload
+	 * @throws UnknownDictionaryException when the payload has been compressed with a dictionary which is not available within that time
+	 */
+	public static byte[] decompress(byte[] payload, Duration dictionaryWait) {
+		if (! isCompressed(payload)) {
+			return payload;
+		}
+
+		if (payload[1] == PayloadDictionary.CODEC_ID) {
+			return PayloadDictionaries.decompress(payload, dictionaryWait);
+		}
+
+		final PayloadCodec codec = PayloadCodec.fromId(payload[1]);
+		final int length = readInt(payload, 2);
+		// NONE is never written by compress(): such a header is part of an uncompressed payload
+		if ((codec == null) || (codec == PayloadCodec.NONE) || (length < 0) || (length > MAX_UNCOMPRESSED_SIZE)) {
+			return payload;
+		}
+
+		final byte[] uncompressed = new byte[length];
+		try {
+			codec.decompress(payload, HEADER_SIZE, payload.length - HEADER_SIZE, uncompressed, 0, length);
+		} catch (Exception e) {
+			// That payload has not been produced by a compressing publisher, even if it starts like one.
+			logger.debug("{} decompression failed, the payload will be kept as it is: {}", codec, e.getMessage());
+			return payload;
+		}
+		return uncompressed;
+	}
+
+	/**
+	 * @param payload, a payload
+	 * @return true if that payload starts with a compression header
+	 */
+	public static boolean isCompressed(byte[] payload) {
+		return (payload != null) && (payload.length > HEADER_SIZE) && (payload[0] == MAGIC);
+	}
+
+	protected static byte[] getCompressionBuffer(int capacity) {
+		byte[] buffer = COMPRESSION_BUFFER.get();
+		if ((buffer == null) || (buffer.length < capacity)) {
+			buffer = new byte[Math.max(capacity, INITIAL_BUFFER_SIZE)];
+			COMPRESSION_BUFFER.set(buffer);
+		}
+		return buffer;
+	}
+
+	protected static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset]     = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	protected static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24)
+				| ((bytes[offset + 1] & 0xFF) << 16)
+				| ((bytes[offset + 2] & 0xFF) << 8)
+				| (bytes[offset + 3] & 0xFF);
+	}
+}
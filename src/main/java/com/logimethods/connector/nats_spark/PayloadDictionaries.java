@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logimethods.connector.nats_spark.ShutdownRegistry.Phase;
+
+import io.nats.client.Connection;
+import io.nats.client.Dispatcher;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.Options;
+
+/**
+ * The (per JVM) registry of the {@link PayloadDictionary} instances, cached by version.
+ * <p>
+ * The dictionaries are exchanged through a NATS control Subject ({@link #DEFAULT_CONTROL_SUBJECT} by default):
+ * <ul>
+ * <li>the publishers announce their dictionary on that Subject and answer the requests sent to {@code [control subject].get},</li>
+ * <li>the receivers register the announced dictionaries and request the ones they don't know yet.</li>
+ * </ul>
+ * The unknown dictionaries are requested asynchronously, through any open NATS Connection listening to a control Subject on that JVM.
+ * A payload whose dictionary is still unknown once the wait is over is rejected (see {@link UnknownDictionaryException}), never decoded as it is.
+ *
+ * @author agent
+ */
+public class PayloadDictionaries {
+
+	static final Logger logger = LoggerFactory.getLogger(PayloadDictionaries.class);
+
+	public static final String DEFAULT_CONTROL_SUBJECT = "_NATS_SPARK.dictionaries";
+
+	/**
+	 * The maximum time a receiver (or a Spark task) waits for a dictionary requested to the publishers.
+	 */
+	public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(2);
+
+	protected static final String REQUEST_SUFFIX = ".get";
+
+	protected static final long MISSING_RETRY_DELAY = 10000;
+
+	protected static final ConcurrentHashMap<Integer, PayloadDictionary> dictionaries = new ConcurrentHashMap<Integer, PayloadDictionary>();
+	protected static final ConcurrentHashMap<Integer, PendingRequest> requests = new ConcurrentHashMap<Integer, PendingRequest>();
+
+	/**
+	 * The listening Connections, with the Subject of their requests.
+	 */
+	protected static final ConcurrentHashMap<Connection, String> listeners = new ConcurrentHashMap<Connection, String>();
+	protected static long lastConnectionAttempt = 0;
+
+	protected static class PendingRequest {
+		final long time;
+		final CompletableFuture<PayloadDictionary> dictionary = new CompletableFuture<PayloadDictionary>();
+		volatile CompletableFuture<Message> reply;
+
+		PendingRequest(long time) {
+			this.time = time;
+		}
+	}
+
+	/**
+	 * @param dictionary, the dictionary to register
+	 * @return the dictionary registered with the same version (the provided one if that version was not known yet)
+	 */
+	public static PayloadDictionary register(PayloadDictionary dictionary) {
+		final PayloadDictionary previous = dictionaries.putIfAbsent(dictionary.getVersion(), dictionary);
+		final PayloadDictionary registered = (previous != null) ? previous : dictionary;
+		final PendingRequest pending = requests.remove(dictionary.getVersion());
+		if (pending != null) {
+			pending.dictionary.complete(registered);
+		}
+		if (previous == null) {
+			logger.info("{} registered", dictionary);
+		}
+		return registered;
+	}
+
+	/**
+	 * @param version, the version of the requested dictionary
+	 * @return the registered dictionary, or null (the unknown dictionary is then requested to the publishers, without waiting for it)
+	 */
+	public static PayloadDictionary get(int version) {
+		return get(version, Duration.ZERO);
+	}
+
+	/**
+	 * @param version, the version of the requested dictionary
+	 * @param wait, the maximum time to wait for an unknown dictionary, requested to the publishers through the control Subject
+	 * (counted from the sending of the request: a request left unanswered is not waited for again, until it is sent again)
+	 * @return the registered dictionary, or the one provided by a publisher within that time, or null
+	 */
+	public static PayloadDictionary get(int version, Duration wait) {
+		final PayloadDictionary dictionary = dictionaries.get(version);
+		if (dictionary != null) {
+			return dictionary;
+		}
+		final PendingRequest requested = request(version);
+		if ((requested == null) || wait.isZero()) {
+			return null;
+		}
+		final long remaining = wait.toMillis() - (System.currentTimeMillis() - requested.time);
+		try {
+			return requested.dictionary.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | ExecutionException | CancellationException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * @param payload, a payload, compressed with a dictionary or not
+	 * @return the uncompressed payload
+	 * @throws UnknownDictionaryException when the dictionary of that payload is not registered yet (it is then requested to the publishers)
+	 */
+	public static byte[] decompress(byte[] payload) {
+		return decompress(payload, Duration.ZERO);
+	}
+
+	/**
+	 * @param payload, a payload, compressed with a dictionary or not
+	 * @param wait, the maximum time to wait for an unknown dictionary (see {@link #get(int, Duration)})
+	 * @return the uncompressed payload
+	 * @throws UnknownDictionaryException when the dictionary of that payload is not available within that time, or does not match that payload
+	 */
+	public static byte[] decompress(byte[] payload, Duration wait) {
+		final Integer version = PayloadDictionary.extractVersion(payload);
+		if (version == null) {
+			return payload;
+		}
+		final PayloadDictionary dictionary = get(version, wait);
+		if (dictionary == null) {
+			throw new UnknownDictionaryException(version, "Unknown dictionary " + version);
+		}
+		try {
+			return dictionary.decompress(payload);
+		} catch (Exception e) {
+			throw new UnknownDictionaryException(version, dictionary + " decompression failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Publishes the dictionary on the control Subject and answers the requests for it, as long as the connection is open.
+	 * @param connection, the NATS connection used by the publisher
+	 * @param controlSubject, the control Subject
+	 * @param dictionary, the dictionary used by the publisher
+	 */
+	public static void announce(Connection connection, String controlSubject, PayloadDictionary dictionary) {
+		final byte[] bytes = dictionary.toBytes();
+		final Dispatcher dispatcher = connection.createDispatcher(m -> {
+			if ((m.getReplyTo() != null) && (m.getData() != null) && (m.getData().length == 4)
+					&& (PayloadCompression.readInt(m.getData(), 0) == dictionary.getVersion())) {
+				connection.publish(m.getReplyTo(), bytes);
+			}
+		});
+		dispatcher.subscribe(controlSubject + REQUEST_SUFFIX);
+		connection.publish(controlSubject, bytes);
+		logger.debug("{} announced on '{}'", dictionary, controlSubject);
+	}
+
+	/**
+	 * Registers the dictionaries announced on the control Subject and uses that connection (while it is open) to request the unknown ones.
+	 * A connection is only subscribed once, whatever the number of calls. The messages which are not dictionaries are ignored.
+	 * @param connection, the NATS connection used by the receiver
+	 * @param controlSubject, the control Subject
+	 */
+	public static void listen(Connection connection, String controlSubject) {
+		if (listeners.putIfAbsent(connection, controlSubject + REQUEST_SUFFIX) != null) {
+			return;
+		}
+		connection.createDispatcher(m -> {
+			try {
+				register(PayloadDictionary.fromBytes(m.getData()));
+			} catch (Exception e) {
+				logger.warn("Message ignored on '{}': {}", controlSubject, e.getMessage());
+			}
+		}).subscribe(controlSubject);
+	}
+
+	/**
+	 * Opens a NATS Connection (shared by that JVM, and closed at shutdown) listening to the control Subject,
+	 * unless an open one is already listening (for example, the one of a receiver running on that Spark Executor).
+	 * @param natsURL, the NATS URL (can be null if provided by the properties)
+	 * @param properties, the properties of the NATS Connection (can be null)
+	 * @param controlSubject, the control Subject
+	 */
+	public static void listen(String natsURL, Properties properties, String controlSubject) {
+		if (getOpenListener() != null) {
+			return;
+		}
+		synchronized (listeners) {
+			final long now = System.currentTimeMillis();
+			if ((getOpenListener() != null) || (now - lastConnectionAttempt < MISSING_RETRY_DELAY)) {
+				return;
+			}
+			lastConnectionAttempt = now;
+			final Options.Builder builder = (properties != null) ? new Options.Builder(properties) : new Options.Builder();
+			if (natsURL != null) {
+				builder.server(natsURL);
+			}
+			try {
+				listen(ShutdownRegistry.register(Nats.connect(builder.build()), Phase.CONNECTION, Connection::close), controlSubject);
+				logger.info("The compression dictionaries will be requested on '{}'.", controlSubject);
+			} catch (IOException e) {
+				logger.warn("Not able to connect to NATS to request the compression dictionaries: {}", e.getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return a listening Connection which is currently connected (the closed ones being forgotten), with the Subject of its requests, or null
+	 */
+	protected static Map.Entry<Connection, String> getOpenListener() {
+		final Iterator<Map.Entry<Connection, String>> iterator = listeners.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<Connection, String> listener = iterator.next();
+			final Connection.Status status = listener.getKey().getStatus();
+			if (status == Connection.Status.CONNECTED) {
+				return listener;
+			}
+			if (status == Connection.Status.CLOSED) {
+				iterator.remove();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Requests a dictionary to the publishers, without blocking: a dictionary which is already requested, or which has not been provided recently,
+	 * is not requested again before {@link #MISSING_RETRY_DELAY} ms.
+	 * @param version, the version of the requested dictionary
+	 * @return the pending request of that (future) dictionary, or null if there is no open listening Connection
+	 */
+	protected static PendingRequest request(int version) {
+		final long now = System.currentTimeMillis();
+		final PendingRequest pending = requests.get(version);
+		if ((pending != null) && (now - pending.time < MISSING_RETRY_DELAY)) {
+			return pending;
+		}
+		final Map.Entry<Connection, String> listener = getOpenListener();
+		if (listener == null) {
+			return null;
+		}
+
+		final PendingRequest request = new PendingRequest(now);
+		final boolean requested = (pending == null) ? (requests.putIfAbsent(version, request) == null) : requests.replace(version, pending, request);
+		if (! requested) {
+			// Requested by another thread in the meantime
+			return requests.get(version);
+		}
+		if ((pending != null) && (pending.reply != null)) {
+			pending.reply.cancel(true);
+		}
+
+		final byte[] data = new byte[4];
+		PayloadCompression.writeInt(data, 0, version);
+		try {
+			request.reply = listener.getKey().request(listener.getValue(), data);
+		} catch (IllegalStateException e) {
+			// Closed in the meantime
+			requests.remove(version, request);
+			return null;
+		}
+		request.reply.whenComplete((reply, e) -> {
+			if (reply == null) {
+				request.dictionary.completeExceptionally((e != null) ? e : new IllegalStateException("No reply"));
+				return;
+			}
+			try {
+				register(PayloadDictionary.fromBytes(reply.getData()));
+			} catch (Exception ex) {
+				logger.warn("Not able to read the dictionary {} provided on '{}': {}", version, listener.getValue(), ex.getMessage());
+				request.dictionary.completeExceptionally(ex);
+			}
+		});
+		return request;
+	}
+}
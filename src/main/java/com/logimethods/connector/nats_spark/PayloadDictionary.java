@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.spark.api.java.JavaRDD;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+/**
+ * A versioned Zstandard Dictionary, trained from a sample of payloads, to efficiently compress small &amp; repetitive NATS Messages.
+ * <p>
+ * A dictionary is loaded once per JVM (see {@link PayloadDictionaries}): once deserialized, the instance already registered with the same version is used.
+ * <pre>
+ * final PayloadDictionary dictionary = PayloadDictionary.train(1, rdd.map(str -&gt; str.getBytes()), 10000, 64 * 1024);
+ * SparkToNatsConnectorPool.newPool().withNatsURL(NATS_URL).withSubjects("subject").withCompression(dictionary).publishToNats(stream);
+ * </pre>
+ *
+ * @author agent
+ */
+public class PayloadDictionary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The codec id written into the header of the payloads compressed with a dictionary.
+	 */
+	public static final byte CODEC_ID = (byte) 0x10;
+
+	/**
+	 * The header of a payload compressed with a dictionary: magic byte, codec id, dictionary version, uncompressed length.
+	 */
+	public static final int HEADER_SIZE = 10;
+
+	/**
+	 * The first bytes of the dictionaries produced by Zstandard (its magic number, in little-endian order).
+	 */
+	protected static final byte[] ZSTD_DICTIONARY_MAGIC = {(byte) 0x37, (byte) 0xA4, (byte) 0x30, (byte) 0xEC};
+
+	public static final int DEFAULT_SAMPLE_SIZE = 10000;
+	public static final int DEFAULT_DICTIONARY_SIZE = 64 * 1024;
+
+	protected final int version;
+	protected final byte[] content;
+	protected transient ZstdDictCompress compressionDictionary;
+	protected transient ZstdDictDecompress decompressionDictionary;
+
+	/**
+	 * @param version, the version (unique id) of that dictionary
+	 * @param content, the content of that dictionary, as produced by Zstandard
+	 */
+	public PayloadDictionary(int version, byte[] content) {
+		this.version = version;
+		this.content = content;
+	}
+
+	/**
+	 * @param version, the version (unique id) of the dictionary to create
+	 * @param payloads, the payloads to sample from
+	 * @param sampleSize, the (maximum) number of payloads to sample
+	 * @param dictionarySize, the (maximum) size of the dictionary, in bytes
+	 * @return a dictionary trained from a sample of the provided payloads, registered into that JVM
+	 */
+	public static PayloadDictionary train(int version, JavaRDD<byte[]> payloads, int sampleSize, int dictionarySize) {
+		final List<byte[]> samples = payloads.takeSample(false, sampleSize);
+		return train(version, samples, dictionarySize);
+	}
+
+	/**
+	 * @param version, the version (unique id) of the dictionary to create
+	 * @param samples, the payloads to train from
+	 * @param dictionarySize, the (maximum) size of the dictionary, in bytes
+	 * @return a dictionary trained from the provided samples, registered into that JVM
+	 */
+	public static PayloadDictionary train(int version, List<byte[]> samples, int dictionarySize) {
+		final byte[] buffer = new byte[dictionarySize];
+		final long size = Zstd.trainFromBuffer(samples.toArray(new byte[samples.size()][]), buffer);
+		if (Zstd.isError(size)) {
+			throw new IllegalArgumentException("Not able to train a dictionary from " + samples.size() + " samples: " + Zstd.getErrorName(size));
+		}
+		return PayloadDictionaries.register(new PayloadDictionary(version, Arrays.copyOf(buffer, (int) size)));
+	}
+
+	/**
+	 * @return the version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the content
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * @param payload, the payload to compress
+	 * @param threshold, the minimal size (in bytes) of a payload to be compressed
+	 * @return the compressed payload, prefixed by its header, or the original payload when the compression does not reduce its size
+	 */
+	public byte[] compress(byte[] payload, int threshold) {
+		if ((payload == null) || (payload.length < threshold)) {
+			return payload;
+		}
+
+		final byte[] buffer = PayloadCompression.getCompressionBuffer((int) Zstd.compressBound(payload.length));
+		final long size = Zstd.compress(buffer, payload, getCompressionDictionary());
+		if (Zstd.isError(size) || (HEADER_SIZE + size >= payload.length)) {
+			return payload;
+		}
+
+		final byte[] compressed = new byte[HEADER_SIZE + (int) size];
+		compressed[0] = PayloadCompression.MAGIC;
+		compressed[1] = CODEC_ID;
+		PayloadCompression.writeInt(compressed, 2, version);
+		PayloadCompression.writeInt(compressed, 6, payload.length);
+		System.arraycopy(buffer, 0, compressed, HEADER_SIZE, (int) size);
+		return compressed;
+	}
+
+	/**
+	 * @param payload, a payload compressed with that dictionary
+	 * @return the uncompressed payload
+	 * @throws IOException when the payload cannot be decompressed with that dictionary
+	 */
+	public byte[] decompress(byte[] payload) throws IOException {
+		final int length = PayloadCompression.readInt(payload, 6);
+		if ((length < 0) || (length > PayloadCompression.MAX_UNCOMPRESSED_SIZE)) {
+			throw new IOException("Unexpected uncompressed length: " + length);
+		}
+		final byte[] uncompressed = new byte[length];
+		final long size = Zstd.decompress(uncompressed, Arrays.copyOfRange(payload, HEADER_SIZE, payload.length), getDecompressionDictionary());
+		if (Zstd.isError(size) || (size != length)) {
+			throw new IOException("Zstd decompression failed with dictionary " + version + ": " + (Zstd.isError(size) ? Zstd.getErrorName(size) : size + " bytes"));
+		}
+		return uncompressed;
+	}
+
+	/**
+	 * @param payload, a payload
+	 * @return the version of the dictionary used to compress that payload, or null if it has not been compressed with a dictionary
+	 */
+	public static Integer extractVersion(byte[] payload) {
+		if ((payload != null) && (payload.length > HEADER_SIZE) && (payload[0] == PayloadCompression.MAGIC) && (payload[1] == CODEC_ID)) {
+			return PayloadCompression.readInt(payload, 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return that dictionary as a NATS payload (the version followed by the content)
+	 */
+	public byte[] toBytes() {
+		final byte[] bytes = new byte[4 + content.length];
+		PayloadCompression.writeInt(bytes, 0, version);
+		System.arraycopy(content, 0, bytes, 4, content.length);
+		return bytes;
+	}
+
+	/**
+	 * @param bytes, a dictionary serialized by {@link #toBytes()}
+	 * @return the dictionary
+	 * @throws IllegalArgumentException when those bytes are not a serialized dictionary
+	 */
+	public static PayloadDictionary fromBytes(byte[] bytes) {
+		if (! isDictionary(bytes)) {
+			throw new IllegalArgumentException("Not a serialized dictionary (" + ((bytes != null) ? bytes.length : 0) + " bytes)");
+		}
+		return new PayloadDictionary(PayloadCompression.readInt(bytes, 0), Arrays.copyOfRange(bytes, 4, bytes.length));
+	}
+
+	/**
+	 * @param bytes, a NATS payload
+	 * @return true if that payload is a serialized dictionary (a version, followed by a Zstandard dictionary)
+	 */
+	public static boolean isDictionary(byte[] bytes) {
+		if ((bytes == null) || (bytes.length <= 4 + ZSTD_DICTIONARY_MAGIC.length)) {
+			return false;
+		}
+		for (int i = 0; i < ZSTD_DICTIONARY_MAGIC.length; i++) {
+			if (bytes[4 + i] != ZSTD_DICTIONARY_MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected synchronized ZstdDictCompress getCompressionDictionary() {
+		if (compressionDictionary == null) {
+			compressionDictionary = new ZstdDictCompress(content, PayloadCodec.ZSTD_LEVEL);
+		}
+		return compressionDictionary;
+	}
+
+	protected synchronized ZstdDictDecompress getDecompressionDictionary() {
+		if (decompressionDictionary == null) {
+			decompressionDictionary = new ZstdDictDecompress(content);
+		}
+		return decompressionDictionary;
+	}
+
+	/**
+	 * @return the instance of that dictionary already loaded into that JVM, if any
+	 */
+	protected Object readResolve() throws ObjectStreamException {
+		return PayloadDictionaries.register(this);
+	}
+
+	@Override
+	public String toString() {
+		return "PayloadDictionary [version=" + version + ", size=" + content.length + "]";
+	}
+}
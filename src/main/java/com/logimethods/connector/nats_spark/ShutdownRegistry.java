@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The (per JVM) registry of the live NATS resources (Subscriptions, Dispatchers, Connections) to close when the JVM shuts down.
+ * <p>
+ * A single shutdown hook is registered, whatever the number of resources. The resources are only weakly referenced
+ * (a resource that is not used anymore can be garbage collected, even if it has not been unregistered)
+ * and are closed phase by phase: the Subscriptions first, then the Dispatchers, then the Connections.
+ * <p>
+ * To avoid keeping the resources alive, the Closers should not refer to them: the resource to close is provided as a parameter.
+ *
+ * @author agent
+ */
+public class ShutdownRegistry {
+
+	static final Logger logger = LoggerFactory.getLogger(ShutdownRegistry.class);
+
+	/**
+	 * The phases of the shutdown, in their order of execution.
+	 */
+	public enum Phase {
+		SUBSCRIPTION, DISPATCHER, CONNECTION
+	}
+
+	/**
+	 * Closes a resource.
+	 * @param <R> the type of the resource
+	 */
+	@FunctionalInterface
+	public interface Closer<R> {
+		void close(R resource) throws Exception;
+	}
+
+	protected static final ShutdownRegistry jvmRegistry = new ShutdownRegistry(true);
+
+	protected final Map<Object, Registration> resources = new WeakHashMap<Object, Registration>();
+	protected final boolean withShutdownHook;
+	protected boolean hookInstalled = false;
+
+	protected static class Registration {
+		final Phase phase;
+		final Closer<Object> closer;
+
+		Registration(Phase phase, Closer<Object> closer) {
+			this.phase = phase;
+			this.closer = closer;
+		}
+	}
+
+	/**
+	 * @param withShutdownHook, true to close the resources when the JVM shuts down (only for the registry of the JVM), false to close them explicitly (see close())
+	 */
+	ShutdownRegistry(boolean withShutdownHook) {
+		this.withShutdownHook = withShutdownHook;
+	}
+
+	/**
+	 * @param resource, the resource to close at shutdown
+	 * @param phase, the phase during which that resource will be closed
+	 * @param closer, closes the resource (without keeping any reference to it)
+	 * @return the resource itself
+	 */
+	public static <R> R register(R resource, Phase phase, Closer<? super R> closer) {
+		return jvmRegistry.add(resource, phase, closer);
+	}
+
+	/**
+	 * To be called when the resource has been closed (or will be closed) by its owner.
+	 * @param resource, the resource not to close at shutdown anymore
+	 */
+	public static void unregister(Object resource) {
+		jvmRegistry.remove(resource);
+	}
+
+	/**
+	 * @return the number of registered resources (some of them might be already garbage collected)
+	 */
+	public static int size() {
+		return jvmRegistry.count();
+	}
+
+	@SuppressWarnings("unchecked")
+	<R> R add(R resource, Phase phase, Closer<? super R> closer) {
+		synchronized (resources) {
+			if (withShutdownHook && ! hookInstalled) {
+				Runtime.getRuntime().addShutdownHook(new Thread(this::close, "NatsSparkShutdown"));
+				hookInstalled = true;
+			}
+			resources.put(resource, new Registration(phase, (Closer<Object>) closer));
+		}
+		return resource;
+	}
+
+	void remove(Object resource) {
+		if (resource == null) {
+			return;
+		}
+		synchronized (resources) {
+			resources.remove(resource);
+		}
+	}
+
+	int count() {
+		synchronized (resources) {
+			return resources.size();
+		}
+	}
+
+	/**
+	 * Closes all the registered resources, phase by phase.
+	 */
+	void close() {
+		logger.debug("Caught CTRL-C, shutting down gracefully...");
+		final List<Map.Entry<Object, Registration>> entries;
+		synchronized (resources) {
+			entries = new ArrayList<Map.Entry<Object, Registration>>(resources.entrySet());
+			resources.clear();
+		}
+		for (Phase phase : Phase.values()) {
+			for (Map.Entry<Object, Registration> entry : entries) {
+				final Object resource = entry.getKey();
+				final Registration registration = entry.getValue();
+				if ((resource != null) && (registration.phase == phase)) {
+					try {
+						logger.info("Closing {} at Shutdown", resource);
+						registration.closer.close(resource);
+					} catch (Exception e) {
+						if (logger.isDebugEnabled()) {
+							logger.error("Exception while closing {} at Shutdown: {}", resource, e.toString());
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free Token Bucket, to be shared between threads.
+ * <p>
+ * The bucket is implemented as a Generic Cell Rate Algorithm: a single (atomically updated) "theoretical arrival time"
+ * is moved forward by each acquisition, and refilled implicitly by the clock. Up to one second of permits can be acquired as a burst.
+ *
+ * @author agent
+ */
+public class TokenBucket {
+
+	protected static final long NANOS_PER_SECOND = 1000000000L;
+
+	protected final double permitsPerSecond;
+	protected final double nanosPerPermit;
+	protected final long burstNanos;
+	protected final AtomicLong theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+
+	/**
+	 * @param permitsPerSecond, the sustained rate of that bucket
+	 */
+	public TokenBucket(double permitsPerSecond) {
+		this(permitsPerSecond, 1.0);
+	}
+
+	/**
+	 * @param permitsPerSecond, the sustained rate of that bucket
+	 * @param burstSeconds, the number of seconds of permits that can be acquired without waiting
+	 */
+	public TokenBucket(double permitsPerSecond, double burstSeconds) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("The rate of a TokenBucket needs to be positive: " + permitsPerSecond);
+		}
+		this.permitsPerSecond = permitsPerSecond;
+		this.nanosPerPermit = NANOS_PER_SECOND / permitsPerSecond;
+		this.burstNanos = (long) (burstSeconds * NANOS_PER_SECOND);
+	}
+
+	/**
+	 * Reserves the permits, then waits (if needed) until they are available.
+	 * @param permits, the number of permits to acquire
+	 * @return the time waited, in nanoseconds
+	 */
+	public long acquire(long permits) {
+		final long wait = reserve(permits);
+		if (wait > 0) {
+			final long deadline = System.nanoTime() + wait;
+			long remaining = wait;
+			while (remaining > 0) {
+				LockSupport.parkNanos(remaining);
+				remaining = deadline - System.nanoTime();
+			}
+		}
+		return wait;
+	}
+
+	/**
+	 * @param permits, the number of permits to acquire
+	 * @return true if the permits have been acquired without waiting
+	 */
+	public boolean tryAcquire(long permits) {
+		final long cost = (long) (permits * nanosPerPermit);
+		while (true) {
+			final long now = System.nanoTime();
+			final long tat = theoreticalArrivalTime.get();
+			final long next = Math.max(tat, now) + cost;
+			if (next - now > burstNanos) {
+				return false;
+			}
+			if (theoreticalArrivalTime.compareAndSet(tat, next)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @param permits, the number of permits to reserve
+	 * @return the time to wait, in nanoseconds, before using those permits
+	 */
+	protected long reserve(long permits) {
+		final long cost = (long) (permits * nanosPerPermit);
+		while (true) {
+			final long now = System.nanoTime();
+			final long tat = theoreticalArrivalTime.get();
+			final long next = Math.max(tat, now) + cost;
+			if (theoreticalArrivalTime.compareAndSet(tat, next)) {
+				return Math.max(0, next - now - burstNanos);
+			}
+		}
+	}
+
+	/**
+	 * @return the rate
+	 */
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	@Override
+	public String toString() {
+		return "TokenBucket [permitsPerSecond=" + permitsPerSecond + ", burstNanos=" + burstNanos + "]";
+	}
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.nats_spark;
+
+/**
+ * An Exception thrown when a payload compressed with a {@link PayloadDictionary} cannot be decompressed,
+ * its dictionary being unknown (or not matching that payload): such a payload should be rejected, never decoded as it is.
+ *
+ * @author agent
+ */
+public class UnknownDictionaryException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final int version;
+
+	/**
+	 * @param version, the version of the dictionary used to compress the payload
+	 * @param message, the description of the failure
+	 */
+	public UnknownDictionaryException(int version, String message) {
+		super(message);
+		this.version = version;
+	}
+
+	/**
+	 * @param version, the version of the dictionary used to compress the payload
+	 * @param message, the description of the failure
+	 * @param cause, the cause of the failure
+	 */
+	public UnknownDictionaryException(int version, String message, Throwable cause) {
+		super(message, cause);
+		this.version = version;
+	}
+
+	/**
+	 * @return the version of the dictionary used to compress the payload
+	 */
+	public int getVersion() {
+		return version;
+	}
+}
@@ -18,6 +18,11 @@ import org.slf4j.Logger;
 
 import com.logimethods.connector.nats_spark.IncompleteException;
 import com.logimethods.connector.nats_spark.NatsSparkUtilities;
+import com.logimethods.connector.nats_spark.PayloadChunks;
+import com.logimethods.connector.nats_spark.PayloadCodec;
+import com.logimethods.connector.nats_spark.PayloadCompression;
+import com.logimethods.connector.nats_spark.PayloadDictionaries;
+import com.logimethods.connector.nats_spark.PayloadDictionary;
 
 import static com.logimethods.connector.nats_spark.Constants.*;
 
@@ -28,6 +33,12 @@ abstract class AbstractSparkToNatsConnector<T> implements Serializable {
 	 */
 	private static final long serialVersionUID = 1L;
 	protected transient Integer connectionSignature;
+	protected PayloadCodec payloadCodec = PayloadCodec.NONE;
+	protected int compressionThreshold = PayloadCompression.DEFAULT_THRESHOLD;
+	protected PayloadDictionary payloadDictionary;
+	protected String dictionaryControlSubject = PayloadDictionaries.DEFAULT_CONTROL_SUBJECT;
+	protected ArrayList<PublishingRateLimit> rateLimits = new ArrayList<PublishingRateLimit>();
+	protected int chunkSize = 0;
 
 	/**
 	 * 
@@ -130,6 +141,118 @@ abstract class AbstractSparkToNatsConnector<T> implements Serializable {
 		return (T)this;
 	}
 
+	/**
+	 * @param codec, the codec used to compress the payloads of the NATS Messages
+	 * @return the connector itself
+	 * @see PayloadCompression
+	 */
+	public T withCompression(PayloadCodec codec) {
+		return withCompression(codec, PayloadCompression.DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param codec, the codec used to compress the payloads of the NATS Messages
+	 * @param threshold, the minimal size (in bytes) of the payloads to compress
+	 * @return the connector itself
+	 * @see PayloadCompression
+	 */
+	@SuppressWarnings("unchecked")
+	public T withCompression(PayloadCodec codec, int threshold) {
+		this.payloadCodec = codec;
+		this.compressionThreshold = threshold;
+		return (T)this;
+	}
+
+	/**
+	 * @param dictionary, the (Zstandard) dictionary used to compress the payloads of the NATS Messages, 
+	 * announced on the {@link PayloadDictionaries#DEFAULT_CONTROL_SUBJECT} control Subject
+	 * @return the connector itself
+	 * @see PayloadDictionary#train(int, org.apache.spark.api.java.JavaRDD, int, int)
+	 */
+	public T withCompression(PayloadDictionary dictionary) {
+		return withCompression(dictionary, PayloadDictionaries.DEFAULT_CONTROL_SUBJECT);
+	}
+
+	/**
+	 * @param dictionary, the (Zstandard) dictionary used to compress the payloads of the NATS Messages
+	 * @param controlSubject, the NATS Subject on which that dictionary will be announced to the receivers
+	 * @return the connector itself
+	 * @see PayloadDictionary#train(int, org.apache.spark.api.java.JavaRDD, int, int)
+	 */
+	@SuppressWarnings("unchecked")
+	public T withCompression(PayloadDictionary dictionary, String controlSubject) {
+		this.payloadDictionary = dictionary;
+		this.dictionaryControlSubject = controlSubject;
+		this.compressionThreshold = 0;
+		return (T)this;
+	}
+
+	/**
+	 * Limits the rate at which each Spark Executor publishes to NATS (all Subjects included).
+	 * @param messagesPerSecond, the maximum number of messages per second (0 for no limit)
+	 * @param bytesPerSecond, the maximum number of payload bytes per second (0 for no limit)
+	 * @return the connector itself
+	 * @see PublishingRateLimit
+	 */
+	@SuppressWarnings("unchecked")
+	public T withRateLimit(double messagesPerSecond, double bytesPerSecond) {
+		rateLimits.add(new PublishingRateLimit(null, messagesPerSecond, bytesPerSecond));
+		return (T)this;
+	}
+
+	/**
+	 * Limits the rate at which each Spark Executor publishes to the NATS Subjects matching the provided pattern.
+	 * @param subjectPattern, the NATS Subjects (wildcards allowed) concerned by that limit
+	 * @param messagesPerSecond, the maximum number of messages per second (0 for no limit)
+	 * @param bytesPerSecond, the maximum number of payload bytes per second (0 for no limit)
+	 * @return the connector itself
+	 * @see PublishingRateLimit
+	 */
+	@SuppressWarnings("unchecked")
+	public T withSubjectRateLimit(String subjectPattern, double messagesPerSecond, double bytesPerSecond) {
+		rateLimits.add(new PublishingRateLimit(subjectPattern, messagesPerSecond, bytesPerSecond));
+		return (T)this;
+	}
+
+	/**
+	 * Splits the payloads larger than {@link PayloadChunks#DEFAULT_CHUNK_SIZE} into chunks,
+	 * to be rebuilt by the receivers (see {@code NatsToSparkConnector.withChunkReassembly()}).
+	 * @return the connector itself
+	 * @see PayloadChunks
+	 */
+	public T withChunking() {
+		return withChunking(PayloadChunks.DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Splits the payloads larger than the provided size into chunks,
+	 * to be rebuilt by the receivers (see {@code NatsToSparkConnector.withChunkReassembly()}).
+	 * @param chunkSize, the maximum size (in bytes, header included) of the NATS payloads, below the NATS {@code max_payload}
+	 * @return the connector itself
+	 * @see PayloadChunks
+	 */
+	@SuppressWarnings("unchecked")
+	public T withChunking(int chunkSize) {
+		if (chunkSize <= PayloadChunks.HEADER_SIZE) {
+			throw new IllegalArgumentException("The size of the chunks should be larger than their header: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		return (T)this;
+	}
+
+	/**
+	 * Transfers the publishing settings (that are not part of the Connection Signature) to the provided connector.
+	 * @param connector, the connector to set
+	 */
+	protected void transferSettingsTo(AbstractSparkToNatsConnector<?> connector) {
+		connector.payloadCodec = payloadCodec;
+		connector.compressionThreshold = compressionThreshold;
+		connector.payloadDictionary = payloadDictionary;
+		connector.dictionaryControlSubject = dictionaryControlSubject;
+		connector.rateLimits = rateLimits;
+		connector.chunkSize = chunkSize;
+	}
+
 	protected Collection<String> getDefinedSubjects() throws IncompleteException {
 		if ((getSubjects() ==  null) || (getSubjects().size() == 0)) {
 			final String subjectsStr = getProperties() != null ? 
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.spark.to_nats;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.streaming.api.java.JavaDStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logimethods.connector.nats_spark.NatsSparkMetrics;
+import com.logimethods.connector.nats_spark.NatsSparkUtilities;
+import com.logimethods.connector.nats_spark.ShutdownRegistry;
+import com.logimethods.connector.nats_spark.ShutdownRegistry.Phase;
+
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.Options;
+
+/**
+ * Enriches the records of a Spark RDD (or DStream) by sending each of them as a NATS request, and provides the responses, in the order of the records:
+ * <pre>JavaRDD&lt;String&gt; instruments =
+    NatsRequestor
+        .newRequestor()
+        .withNatsURL(NATS_SERVER_URL)
+        .withSubject("reference.instrument")
+        .withMaxInFlight(128)
+        .withRequestTimeout(Duration.ofSeconds(2))
+        .request(symbols, String.class);</pre>
+ * <p>
+ * Within each partition, up to {@code maxInFlight} requests are pipelined over a NATS Connection shared by all the tasks of the Spark Executor.
+ * The time between each request and its response is reported by the {@code requestor.[subject].latency} Timer of {@link NatsSparkMetrics},
+ * and the requests without response by the {@code requestor.[subject].timeouts} Counter.
+ * <p>
+ * The encoders &amp; decoders are part of the Spark closures: they have to be Serializable.
+ *
+ * @author agent
+ */
+public class NatsRequestor implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	static final Logger logger = LoggerFactory.getLogger(NatsRequestor.class);
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+	public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(5);
+
+	protected static final Map<String, Connection> connections = new HashMap<String, Connection>();
+
+	protected String natsURL;
+	protected Properties properties;
+	protected String subject;
+	protected int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+	protected Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+	protected boolean failOnTimeout = true;
+
+	protected NatsRequestor() {
+		super();
+	}
+
+	/**
+	 * @return a new NATS Requestor
+	 */
+	public static NatsRequestor newRequestor() {
+		return new NatsRequestor();
+	}
+
+	/**
+	 * @param natsURL, the NATS URL to set
+	 * @return the requestor itself
+	 */
+	public NatsRequestor withNatsURL(String natsURL) {
+		this.natsURL = natsURL;
+		return this;
+	}
+
+	/**
+	 * @param properties, the properties of the NATS Connection
+	 * @return the requestor itself
+	 */
+	public NatsRequestor withProperties(Properties properties) {
+		this.properties = properties;
+		return this;
+	}
+
+	/**
+	 * @param subject, the NATS Subject of the requests
+	 * @return the requestor itself
+	 */
+	public NatsRequestor withSubject(String subject) {
+		this.subject = subject;
+		return this;
+	}
+
+	/**
+	 * @param maxInFlight, the maximum number of requests waiting for their response, per Spark partition
+	 * @return the requestor itself
+	 */
+	public NatsRequestor withMaxInFlight(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least one request should be in flight: " + maxInFlight);
+		}
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	/**
+	 * @param requestTimeout, the time given to each request to get its response
+	 * @return the requestor itself
+	 */
+	public NatsRequestor withRequestTimeout(Duration requestTimeout) {
+		this.requestTimeout = requestTimeout;
+		return this;
+	}
+
+	/**
+	 * @param failOnTimeout, true (by default) to fail the Spark task when a request times out, false to provide a null response instead
+	 * @return the requestor itself
+	 */
+	public NatsRequestor withFailOnTimeout(boolean failOnTimeout) {
+		this.failOnTimeout = failOnTimeout;
+		return this;
+	}
+
+	/**
+	 * @param rdd, the records to send as requests (encoded by {@link NatsSparkUtilities#encodeData(Object)})
+	 * @param type, the type of the responses (decoded by {@link NatsSparkUtilities#decodeData(Class, byte[])})
+	 * @return the responses, in the order of the records
+	 */
+	public <I, O> JavaRDD<O> request(JavaRDD<I> rdd, Class<O> type) {
+		return rdd.mapPartitions(getRequestFunction(NatsRequestor.<I>getDefaultEncoder(), getDefaultDecoder(type)));
+	}
+
+	/**
+	 * @param rdd, the records to send as requests
+	 * @param encoder, the (Serializable) function used to encode the records into the payload of the requests
+	 * @param decoder, the (Serializable) function used to decode the payload of the responses
+	 * @return the responses, in the order of the records
+	 */
+	public <I, O> JavaRDD<O> request(JavaRDD<I> rdd, Function<I, byte[]> encoder, Function<byte[], O> decoder) {
+		return rdd.mapPartitions(getRequestFunction(encoder, decoder));
+	}
+
+	/**
+	 * @param stream, the records to send as requests (encoded by {@link NatsSparkUtilities#encodeData(Object)})
+	 * @param type, the type of the responses (decoded by {@link NatsSparkUtilities#decodeData(Class, byte[])})
+	 * @return the responses, in the order of the records
+	 */
+	public <I, O> JavaDStream<O> request(JavaDStream<I> stream, Class<O> type) {
+		return stream.mapPartitions(getRequestFunction(NatsRequestor.<I>getDefaultEncoder(), getDefaultDecoder(type)));
+	}
+
+	/**
+	 * @param stream, the records to send as requests
+	 * @param encoder, the (Serializable) function used to encode the records into the payload of the requests
+	 * @param decoder, the (Serializable) function used to decode the payload of the responses
+	 * @return the responses, in the order of the records
+	 */
+	public <I, O> JavaDStream<O> request(JavaDStream<I> stream, Function<I, byte[]> encoder, Function<byte[], O> decoder) {
+		return stream.mapPartitions(getRequestFunction(encoder, decoder));
+	}
+
+	protected <I, O> FlatMapFunction<Iterator<I>, O> getRequestFunction(Function<I, byte[]> encoder, Function<byte[], O> decoder) {
+		if (subject == null) {
+			throw new IllegalArgumentException("A NatsRequestor needs a NATS Subject.");
+		}
+		return records -> requests(records, encoder, decoder);
+	}
+
+	protected static <I> Function<I, byte[]> getDefaultEncoder() {
+		return (Function<I, byte[]> & Serializable) NatsSparkUtilities::encodeData;
+	}
+
+	protected static <O> Function<byte[], O> getDefaultDecoder(Class<O> type) {
+		return (Function<byte[], O> & Serializable) bytes -> NatsSparkUtilities.decodeData(type, bytes);
+	}
+
+	/**
+	 * @param records, the records of a Spark partition
+	 * @param encoder, encodes the records into the payload of the requests
+	 * @param decoder, decodes the payload of the responses
+	 * @return the responses, read as the requests are pipelined
+	 * @throws Exception if the NATS Connection cannot be established
+	 */
+	protected <I, O> Iterator<O> requests(Iterator<I> records, Function<I, byte[]> encoder, Function<byte[], O> decoder) throws Exception {
+		final Connection connection = getConnection();
+		return new PipelinedRequests<I, O>(records, encoder, decoder,
+										payload -> connection.request(subject, payload).thenApply(Message::getData),
+										maxInFlight, requestTimeout.toNanos(), failOnTimeout,
+										NatsSparkMetrics.timer("requestor", subject, "latency"),
+										NatsSparkMetrics.counter("requestor", subject, "timeouts"));
+	}
+
+	/**
+	 * @return the NATS Connection shared by the requestors of that JVM using the same URL (or Properties)
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected Connection getConnection() throws IOException, InterruptedException {
+		final String key = (properties != null) ? properties.toString() : String.valueOf(natsURL);
+		synchronized (connections) {
+			Connection connection = connections.get(key);
+			if ((connection == null) || (connection.getStatus() == Connection.Status.CLOSED)) {
+				final Options options = (properties != null) ? new Options.Builder(properties).build()
+									: (natsURL != null) ? new Options.Builder().server(natsURL).build()
+									: new Options.Builder().build();
+				connection = ShutdownRegistry.register(Nats.connect(options), Phase.CONNECTION, Connection::close);
+				connections.put(key, connection);
+				logger.info("A NATS Connection to '{}' will be shared by the requestors of that JVM.", connection.getConnectedUrl());
+			}
+			return connection;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "NatsRequestor [subject=" + subject + ", maxInFlight=" + maxInFlight + ", requestTimeout=" + requestTimeout
+				+ (natsURL != null ? ", natsURL=" + natsURL : "") + "]";
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.spark.to_nats;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+
+/**
+ * The responses to the requests made of the records of a Spark partition, in the order of those records.
+ * <p>
+ * Up to {@code maxInFlight} requests are sent ahead of the response being read, so the round trips overlap.
+ * Each request has its own deadline, starting when it is sent.
+ *
+ * @param <I> the type of the records
+ * @param <O> the type of the responses
+ */
+class PipelinedRequests<I, O> implements Iterator<O> {
+
+	protected final Iterator<I> records;
+	protected final Function<I, byte[]> encoder;
+	protected final Function<byte[], O> decoder;
+	protected final Function<byte[], CompletableFuture<byte[]>> sender;
+	protected final int maxInFlight;
+	protected final long timeoutNanos;
+	protected final boolean failOnTimeout;
+	protected final Timer latencyTimer;
+	protected final Counter timeoutCounter;
+
+	protected final ArrayDeque<Pending> window;
+
+	protected static class Pending {
+		final CompletableFuture<byte[]> response;
+		final long startNanos;
+
+		Pending(CompletableFuture<byte[]> response, long startNanos) {
+			this.response = response;
+			this.startNanos = startNanos;
+		}
+	}
+
+	/**
+	 * @param records, the records of the partition
+	 * @param encoder, encodes a record into the payload of its request
+	 * @param decoder, decodes the payload of a response
+	 * @param sender, sends a request, returning its (future) response
+	 * @param maxInFlight, the maximum number of requests waiting for their response
+	 * @param timeoutNanos, the time (in nanoseconds) given to each request
+	 * @param failOnTimeout, true to fail the partition when a request times out, false to provide a null response
+	 * @param latencyTimer, records the time between each request and its response
+	 * @param timeoutCounter, counts the requests that timed out
+	 */
+	PipelinedRequests(Iterator<I> records, Function<I, byte[]> encoder, Function<byte[], O> decoder,
+					Function<byte[], CompletableFuture<byte[]>> sender, int maxInFlight, long timeoutNanos, boolean failOnTimeout,
+					Timer latencyTimer, Counter timeoutCounter) {
+		this.records = records;
+		this.encoder = encoder;
+		this.decoder = decoder;
+		this.sender = sender;
+		this.maxInFlight = Math.max(1, maxInFlight);
+		this.timeoutNanos = timeoutNanos;
+		this.failOnTimeout = failOnTimeout;
+		this.latencyTimer = latencyTimer;
+		this.timeoutCounter = timeoutCounter;
+		this.window = new ArrayDeque<Pending>(this.maxInFlight);
+	}
+
+	@Override
+	public boolean hasNext() {
+		fill();
+		return ! window.isEmpty();
+	}
+
+	@Override
+	public O next() {
+		fill();
+		final Pending head = window.poll();
+		if (head == null) {
+			throw new NoSuchElementException();
+		}
+		final byte[] payload = await(head);
+		// The next request is sent before the response is decoded
+		fill();
+		return (payload != null) ? decoder.apply(payload) : null;
+	}
+
+	/**
+	 * @return the number of requests waiting for their response
+	 */
+	int inFlight() {
+		return window.size();
+	}
+
+	protected void fill() {
+		while ((window.size() < maxInFlight) && records.hasNext()) {
+			final byte[] request = encoder.apply(records.next());
+			final long start = System.nanoTime();
+			final CompletableFuture<byte[]> response = sender.apply(request);
+			response.thenRun(() -> latencyTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+			window.add(new Pending(response, start));
+		}
+	}
+
+	protected byte[] await(Pending pending) {
+		final long remaining = pending.startNanos + timeoutNanos - System.nanoTime();
+		try {
+			return pending.response.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			pending.response.cancel(true);
+			timeoutCounter.inc();
+			if (failOnTimeout) {
+				throw new IllegalStateException("No response received within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+			}
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a response", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("The request failed: " + e.getCause(), e.getCause());
+		}
+	}
+}
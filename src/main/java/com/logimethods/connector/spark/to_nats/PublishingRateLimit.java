@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2026 Logimethods
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License (MIT)
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *******************************************************************************/
+package com.logimethods.connector.spark.to_nats;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Timer;
+import com.logimethods.connector.nats_spark.NatsSparkMetrics;
+import com.logimethods.connector.nats_spark.NatsSparkUtilities;
+import com.logimethods.connector.nats_spark.TokenBucket;
+
+/**
+ * A limit of the rate (in messages and/or bytes per second) at which a Spark Executor publishes to NATS.
+ * <p>
+ * The Token Buckets are shared by all the connectors of a JVM defining the same limit: the limit applies per Executor, not per connector.
+ * The time spent waiting for those buckets is reported by the {@code publisher.throttled} Timer of {@link NatsSparkMetrics}.
+ *
+ * @author agent
+ */
+public class PublishingRateLimit implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	protected static final String METRIC_NAME = "publisher.throttled";
+
+	protected static final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+	protected final String subjectPattern;
+	protected final double messagesPerSecond;
+	protected final double bytesPerSecond;
+	protected transient TokenBucket messagesBucket;
+	protected transient TokenBucket bytesBucket;
+	protected transient Timer throttledTimer;
+
+	/**
+	 * @param subjectPattern, the NATS Subjects (wildcards allowed) concerned by that limit, or null for all of them
+	 * @param messagesPerSecond, the maximum number of messages per second (0 for no limit)
+	 * @param bytesPerSecond, the maximum number of payload bytes per second (0 for no limit)
+	 */
+	public PublishingRateLimit(String subjectPattern, double messagesPerSecond, double bytesPerSecond) {
+		this.subjectPattern = subjectPattern;
+		this.messagesPerSecond = messagesPerSecond;
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * @param subject, the NATS Subject of the message to publish
+	 * @return true if that limit applies to that Subject
+	 */
+	public boolean appliesTo(String subject) {
+		return (subjectPattern == null) || NatsSparkUtilities.matchesSubject(subjectPattern, subject);
+	}
+
+	/**
+	 * Waits until the message can be published.
+	 * @param payloadSize, the size of the message to publish
+	 * @return the time waited, in nanoseconds
+	 */
+	public long throttle(int payloadSize) {
+		if (throttledTimer == null) {
+			throttledTimer = (subjectPattern == null) ? NatsSparkMetrics.timer(METRIC_NAME) : NatsSparkMetrics.timer(METRIC_NAME, subjectPattern);
+		}
+		long waited = 0;
+		final TokenBucket messages = getMessagesBucket();
+		if (messages != null) {
+			waited += messages.acquire(1);
+		}
+		final TokenBucket bytes = getBytesBucket();
+		if ((bytes != null) && (payloadSize > 0)) {
+			waited += bytes.acquire(payloadSize);
+		}
+		if (waited > 0) {
+			throttledTimer.update(waited, TimeUnit.NANOSECONDS);
+		}
+		return waited;
+	}
+
+	protected TokenBucket getMessagesBucket() {
+		if ((messagesBucket == null) && (messagesPerSecond > 0)) {
+			messagesBucket = buckets.computeIfAbsent(subjectPattern + "|msgs|" + messagesPerSecond, key -> new TokenBucket(messagesPerSecond));
+		}
+		return messagesBucket;
+	}
+
+	protected TokenBucket getBytesBucket() {
+		if ((bytesBucket == null) && (bytesPerSecond > 0)) {
+			bytesBucket = buckets.computeIfAbsent(subjectPattern + "|bytes|" + bytesPerSecond, key -> new TokenBucket(bytesPerSecond));
+		}
+		return bytesBucket;
+	}
+
+	@Override
+	public String toString() {
+		return "PublishingRateLimit [" + (subjectPattern != null ? "subjectPattern=" + subjectPattern + ", " : "")
+				+ "messagesPerSecond=" + messagesPerSecond + ", bytesPerSecond=" + bytesPerSecond + "]";
+	}
+}
@@ -25,6 +25,10 @@ import org.apache.spark.api.java.function.VoidFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.logimethods.connector.nats_spark.PayloadChunks;
+import com.logimethods.connector.nats_spark.PayloadCompression;
+import com.logimethods.connector.nats_spark.PayloadDictionaries;
+
 import static com.logimethods.connector.nats_spark.NatsSparkUtilities.*;
 
 import scala.Tuple2;
@@ -247,6 +251,17 @@ public abstract class SparkToNatsConnector<T> extends AbstractSparkToNatsConnect
 
 	protected abstract void publishToNats(byte[] str) throws Exception;
 
+	/**
+	 * @param payload, the payload provided by the data encoder
+	 * @return the payload to send to NATS, compressed if a codec has been defined
+	 */
+	protected byte[] compressPayload(byte[] payload) {
+		if (payloadDictionary != null) {
+			return payloadDictionary.compress(payload, compressionThreshold);
+		}
+		return PayloadCompression.compress(payloadCodec, payload, compressionThreshold);
+	}
+
 	protected abstract void publishToNats(String subject, byte[] payload) throws Exception;
 
 	protected static String combineSubjects(String preSubject, String postSubject) {
@@ -380,6 +395,50 @@ public abstract class SparkToNatsConnector<T> extends AbstractSparkToNatsConnect
 		}
 	}
 
+	/**
+	 * Waits until the rate limits (if any) allow the message to be published.
+	 * @param subject, the NATS Subject of the message
+	 * @param payload, the payload of the message
+	 */
+	protected void throttle(String subject, byte[] payload) {
+		for (PublishingRateLimit rateLimit : rateLimits) {
+			if (rateLimit.appliesTo(subject)) {
+				rateLimit.throttle(payload.length);
+			}
+		}
+	}
+
+	/**
+	 * Publishes the payload, split into chunks when it exceeds the chunk size (see {@link #withChunking(int)}),
+	 * after the rate limits (if any) allow each of those messages to be published.
+	 * @param subject, the NATS Subject of the message
+	 * @param payload, the (compressed) payload of the message
+	 * @param publisher, publishes a payload on that Subject
+	 * @throws Exception if the message cannot be published
+	 */
+	protected void publishPayload(String subject, byte[] payload, PayloadChunks.ChunkPublisher publisher) throws Exception {
+		if ((chunkSize <= 0) || (payload.length <= chunkSize)) {
+			throttle(subject, payload);
+			publisher.publish(payload);
+			return;
+		}
+		final int chunks = PayloadChunks.publish(payload, chunkSize, chunk -> {
+			throttle(subject, chunk);
+			publisher.publish(chunk);
+		});
+		logger.debug("A payload of {} bytes has been published to '{}' as {} chunks.", payload.length, subject, chunks);
+	}
+
+	/**
+	 * Announces the dictionary (if any) used to compress the payloads, through the provided (new) connection.
+	 * @param natsConnection, the NATS connection used by that connector
+	 */
+	protected void announceDictionary(io.nats.client.Connection natsConnection) {
+		if (payloadDictionary != null) {
+			PayloadDictionaries.announce(natsConnection, dictionaryControlSubject, payloadDictionary);
+		}
+	}
+
 	protected abstract void closeConnection();
 	
 	protected abstract void removeFromPool();
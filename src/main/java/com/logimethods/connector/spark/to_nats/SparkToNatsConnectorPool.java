@@ -107,11 +107,13 @@ public abstract class SparkToNatsConnectorPool<T> extends AbstractSparkToNatsCon
 			if ((connectorsPool != null) && (connectorsPool.size() > 0)) {
 				logger.debug("ConnectorsPool for {} of size {}", localConnectionSignature, connectorsPool.size());
 				final SparkToNatsConnector<?> connector = connectorsPool.pollFirst();
+				transferSettingsTo(connector);
 				return connector;
 			} 
 		}			
 		SparkToNatsConnector<?> newConnector = newSparkToNatsConnector();
 		newConnector.setConnectionSignature(localConnectionSignature);
+		transferSettingsTo(newConnector);
 		logger.debug("New SparkToNatsConnector<?> {} created with ConnectionSignature {}", newConnector, localConnectionSignature);
 		return newConnector;
 	}
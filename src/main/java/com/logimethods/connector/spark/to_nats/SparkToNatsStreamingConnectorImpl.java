@@ -19,6 +19,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.logimethods.connector.nats_spark.NatsSparkUtilities;
+import com.logimethods.connector.nats_spark.ShutdownRegistry;
+import com.logimethods.connector.nats_spark.ShutdownRegistry.Phase;
 
 import io.nats.streaming.AckHandler;
 import io.nats.streaming.NatsStreaming;
@@ -80,27 +82,29 @@ class SparkToNatsStreamingConnectorImpl extends SparkToNatsConnector<SparkToNats
 	}
 
 	@Override
-	protected void publishToNats(byte[] payload) throws Exception {
+	protected void publishToNats(byte[] data) throws Exception {
 		resetClosingTimeout();
+		final byte[] payload = compressPayload(data);
 				
 		final StreamingConnection localConnection = getConnection();
 		for (String subject : getDefinedSubjects()) {
-			localConnection.publish(subject, payload);
+			publishPayload(subject, payload, chunk -> localConnection.publish(subject, chunk));
 	
 			logger.trace("Publish '{}' from Spark to NATS STREAMING ({})", payload, subject);
 		}
 	}
 
 	@Override
-	protected void publishToNats(String postSubject, byte[] payload) throws Exception {
+	protected void publishToNats(String postSubject, byte[] data) throws Exception {
 		resetClosingTimeout();
+		final byte[] payload = compressPayload(data);
 		
 		logger.debug("Received '{}' from Spark with '{}' Subject", payload, postSubject);
 		
 		final StreamingConnection localConnection = getConnection();
 		for (String preSubject : getDefinedSubjects()) {
 			final String subject = combineSubjects(preSubject, postSubject);
-			localConnection.publish(subject, payload);
+			publishPayload(subject, payload, chunk -> localConnection.publish(subject, chunk));
 	
 			logger.trace("Publish '{}' from Spark to NATS STREAMING ({})", payload, subject);
 		}
@@ -140,20 +144,9 @@ class SparkToNatsStreamingConnectorImpl extends SparkToNatsConnector<SparkToNats
 			throw(e);
 		}
 		logger.debug("A NATS Connection {} has been created for {}", newConnection, this);
+		announceDictionary(newConnection.getNatsConnection());
 		
-		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
-			@Override
-			public void run() {
-				logger.debug("Caught CTRL-C, shutting down gracefully..." + this);
-				try {
-					newConnection.close();
-				} catch (IOException | TimeoutException | InterruptedException e) {
-					if (logger.isDebugEnabled()) {
-						logger.error("Exception while unsubscribing " + e.toString());
-					}
-				}
-			}
-		}));
+		ShutdownRegistry.register(newConnection, Phase.CONNECTION, StreamingConnection::close);
 		return newConnection;
 	}
 
@@ -163,6 +156,7 @@ class SparkToNatsStreamingConnectorImpl extends SparkToNatsConnector<SparkToNats
 		removeFromPool();
 
 		if (connection != null) {
+			ShutdownRegistry.unregister(connection);
 			try {
 				connection.close();
 				logger.debug("{} has been CLOSED by {}", connection, super.toString());
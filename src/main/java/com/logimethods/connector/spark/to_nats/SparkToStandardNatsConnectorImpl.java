@@ -19,6 +19,9 @@ import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.logimethods.connector.nats_spark.ShutdownRegistry;
+import com.logimethods.connector.nats_spark.ShutdownRegistry.Phase;
+
 import io.nats.client.Connection;
 import io.nats.client.Message;
 import io.nats.client.Nats;
@@ -67,12 +70,13 @@ class SparkToStandardNatsConnectorImpl extends SparkToNatsConnector<SparkToStand
 	 * @throws Exception is thrown when there is no Connection nor Subject defined.
 	 */
 	@Override
-	protected void publishToNats(byte[] payload) throws Exception {
+	protected void publishToNats(byte[] data) throws Exception {
 		resetClosingTimeout();
+		final byte[] payload = compressPayload(data);
 	
 		final Connection localConnection = getConnection();
 		for (String subject : getDefinedSubjects()) {
-			localConnection.publish(subject, payload);
+			publishPayload(subject, payload, chunk -> localConnection.publish(subject, chunk));
 	
 			logger.trace("Send '{}' from Spark to NATS ({})", payload, subject);
 		}
@@ -85,13 +89,14 @@ class SparkToStandardNatsConnectorImpl extends SparkToNatsConnector<SparkToStand
 	 * @throws Exception is thrown when there is no Connection nor Subject defined.
 	 */
 	@Override
-	protected void publishToNats(String postSubject, byte[] payload) throws Exception {
+	protected void publishToNats(String postSubject, byte[] data) throws Exception {
 		resetClosingTimeout();
+		final byte[] payload = compressPayload(data);
 	
 		final Connection localConnection = getConnection();
 		for (String preSubject : getDefinedSubjects()) {
 			final String subject = combineSubjects(preSubject, postSubject);
-			localConnection.publish(subject, payload);
+			publishPayload(subject, payload, chunk -> localConnection.publish(subject, chunk));
 	
 			logger.trace("Send '{}' from Spark to NATS ({})", payload, subject);
 		}
@@ -111,18 +116,9 @@ class SparkToStandardNatsConnectorImpl extends SparkToNatsConnector<SparkToStand
 						NatsConnect();
 
 		logger.debug("A NATS Connection {} has been created for {}", newConnection, this);
+		announceDictionary(newConnection);
 		
-		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
-			@Override
-			public void run() {
-				logger.debug("Caught CTRL-C, shutting down gracefully... " + this);
-				try {
-					newConnection.close();
-				} catch (InterruptedException e) {
-					logger.warn(e.getMessage());
-				}
-			}
-		}));
+		ShutdownRegistry.register(newConnection, Phase.CONNECTION, Connection::close);
 		return newConnection;
 	}
 
@@ -159,6 +155,7 @@ class SparkToStandardNatsConnectorImpl extends SparkToNatsConnector<SparkToStand
 		removeFromPool();
 
 		if (connection != null) {
+			ShutdownRegistry.unregister(connection);
 			try {
 				connection.close();
 			} catch (InterruptedException e) {
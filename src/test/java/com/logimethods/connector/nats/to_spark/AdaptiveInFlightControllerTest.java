@@ -0,0 +1,71 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+public class AdaptiveInFlightControllerTest {
+
+	protected void record(AdaptiveInFlightController controller, int messages, long latencyNanos) {
+		for (int i = 0; i < messages; i++) {
+			controller.record(latencyNanos);
+		}
+	}
+
+	@Test
+	public void testSlowStartThenDecrease() {
+		final AdaptiveInFlightController controller = new AdaptiveInFlightController(10, 1000, 1000, 100);
+		assertEquals(100, controller.getWindow());
+
+		// No message, no change
+		assertEquals(100, controller.adjust());
+
+		// Window fully used below the target latency: doubled
+		record(controller, 100, 500);
+		assertEquals(200, controller.adjust());
+
+		// Window not fully used: unchanged
+		record(controller, 50, 500);
+		assertEquals(200, controller.adjust());
+
+		// Above the target latency: halved
+		record(controller, 200, 5000);
+		assertEquals(100, controller.adjust());
+
+		// After the first decrease, additive increase
+		record(controller, 100, 500);
+		assertEquals(110, controller.adjust());
+	}
+
+	@Test
+	public void testBounds() {
+		final AdaptiveInFlightController controller = new AdaptiveInFlightController(10, 150, 1000, 1024);
+		assertEquals(150, controller.getWindow());
+
+		for (int i = 0; i < 10; i++) {
+			record(controller, 1, 5000);
+			controller.adjust();
+		}
+		assertEquals(10, controller.getWindow());
+
+		// Additive increase (by 10%) up to the upper bound
+		for (int i = 0; i < 50; i++) {
+			record(controller, 1000, 0);
+			controller.adjust();
+		}
+		assertEquals(150, controller.getWindow());
+	}
+
+	@Test
+	public void testDeserialized() {
+		final AdaptiveInFlightController controller = SerializationUtils.clone(new AdaptiveInFlightController(10, 1000, 1000, 100));
+		record(controller, 100, 500);
+		assertEquals(200, controller.adjust());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidBounds() {
+		new AdaptiveInFlightController(10, 5, 1000, 100);
+	}
+}
@@ -0,0 +1,64 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CatchUpReplayTest {
+
+	@Test
+	public void testRangesCoverTheBacklog() {
+		final CatchUpReplay replay = new CatchUpReplay("A", 101, 1100, 4);
+		assertEquals(4, replay.getRanges());
+		long expected = 101;
+		for (int range = 0; range < replay.getRanges(); range++) {
+			assertEquals(expected, replay.getFrom(range));
+			assertTrue(replay.getTo(range) >= replay.getFrom(range));
+			expected = replay.getTo(range) + 1;
+		}
+		assertEquals(1101, expected);
+	}
+
+	@Test
+	public void testSmallBacklog() {
+		final CatchUpReplay replay = new CatchUpReplay("A", 5, 7, 8);
+		assertEquals(3, replay.getRanges());
+		assertEquals(7, replay.getTo(2));
+
+		// 10 messages over 4 ranges: 3 + 3 + 3 + 1
+		final CatchUpReplay rounded = new CatchUpReplay("A", 1, 10, 4);
+		assertEquals(4, rounded.getRanges());
+		assertEquals(10, rounded.getFrom(3));
+		assertEquals(10, rounded.getTo(3));
+
+		// 9 messages over 4 ranges: 3 + 3 + 3
+		assertEquals(3, new CatchUpReplay("A", 1, 9, 4).getRanges());
+	}
+
+	@Test
+	public void testCompletion() {
+		final CatchUpReplay replay = new CatchUpReplay("A", 1, 300, 3);
+		assertEquals(0, replay.getReplayedSequence());
+
+		assertTrue(replay.complete(1));
+		assertFalse(replay.complete(1));
+		assertTrue(replay.isCompleted(1));
+		assertFalse(replay.isComplete());
+		// The first range is still pending
+		assertEquals(0, replay.getReplayedSequence());
+
+		assertTrue(replay.complete(0));
+		assertEquals(200, replay.getReplayedSequence());
+
+		assertTrue(replay.complete(2));
+		assertTrue(replay.isComplete());
+		assertEquals(300, replay.getReplayedSequence());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testEmptyBacklog() {
+		new CatchUpReplay("A", 10, 9, 4);
+	}
+}
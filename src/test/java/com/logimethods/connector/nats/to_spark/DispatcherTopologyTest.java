@@ -0,0 +1,174 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.spark.storage.StorageLevel;
+import org.junit.Test;
+
+import com.logimethods.connector.nats_spark.ConsistentHashRing;
+import com.logimethods.connector.nats_spark.ShutdownRegistry;
+
+import io.nats.client.Connection;
+import io.nats.client.Dispatcher;
+
+public class DispatcherTopologyTest {
+
+	protected static final List<String> SUBJECTS = new ArrayList<String>();
+	static {
+		for (int i = 0; i < 10; i++) {
+			SUBJECTS.add("subject." + i);
+		}
+	}
+
+	protected static Connection connection() {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+				(connection, method, args) -> "createDispatcher".equals(method.getName()) ? dispatcher() : null);
+	}
+
+	protected static Dispatcher dispatcher() {
+		return (Dispatcher) Proxy.newProxyInstance(Dispatcher.class.getClassLoader(), new Class<?>[] { Dispatcher.class },
+				(dispatcher, method, args) -> {
+					switch (method.getName()) {
+					case "hashCode":
+						return System.identityHashCode(dispatcher);
+					case "equals":
+						return dispatcher == args[0];
+					case "toString":
+						return "Dispatcher@" + System.identityHashCode(dispatcher);
+					default:
+						return dispatcher;
+					}
+				});
+	}
+
+	protected Map<Dispatcher, List<String>> subscribe(DispatcherTopology topology, int poolSize) {
+		final StandardNatsToSparkConnectorImpl<String> connector =
+				NatsToSparkConnector
+					.receiveFromNats(String.class, StorageLevel.MEMORY_ONLY())
+					.withDispatcherTopology(topology, poolSize);
+		connector.natsDispatchers = new CopyOnWriteArrayList<Dispatcher>();
+
+		final int registered = ShutdownRegistry.size();
+		final Map<Dispatcher, List<String>> dispatchers = connector.subscribe(connection(), m -> {}, SUBJECTS);
+		assertEquals(registered + dispatchers.size(), ShutdownRegistry.size());
+		connector.onStop();
+		assertEquals(registered, ShutdownRegistry.size());
+		return dispatchers;
+	}
+
+	@Test
+	public void testStandardShared() {
+		final Map<Dispatcher, List<String>> dispatchers = subscribe(DispatcherTopology.SHARED, 4);
+		assertEquals(1, dispatchers.size());
+		assertEquals(SUBJECTS, dispatchers.values().iterator().next());
+	}
+
+	@Test
+	public void testStandardPool() {
+		final ConsistentHashRing ring = new ConsistentHashRing(4);
+		final Map<Dispatcher, List<String>> dispatchers = subscribe(DispatcherTopology.POOL, 4);
+		assertTrue(dispatchers.size() <= 4);
+
+		final Set<Integer> nodes = new HashSet<Integer>();
+		int subjects = 0;
+		for (List<String> dispatcherSubjects : dispatchers.values()) {
+			final int node = ring.nodeOf(dispatcherSubjects.get(0));
+			assertTrue(nodes.add(node));
+			for (String subject : dispatcherSubjects) {
+				assertEquals(subject, node, ring.nodeOf(subject));
+			}
+			subjects += dispatcherSubjects.size();
+		}
+		assertEquals(SUBJECTS.size(), subjects);
+	}
+
+	@Test
+	public void testStandardPerSubject() {
+		final Map<Dispatcher, List<String>> dispatchers = subscribe(DispatcherTopology.PER_SUBJECT, 4);
+		assertEquals(SUBJECTS.size(), dispatchers.size());
+		for (List<String> dispatcherSubjects : dispatchers.values()) {
+			assertEquals(1, dispatcherSubjects.size());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyPool() {
+		NatsToSparkConnector
+			.receiveFromNats(String.class, StorageLevel.MEMORY_ONLY())
+			.withDispatcherTopology(DispatcherTopology.POOL, 0);
+	}
+
+	protected Set<String> dispatcherNames(DispatcherTopology topology, int poolSize) {
+		final NatsStreamingToSparkConnectorImpl<String> connector =
+				NatsToSparkConnector
+					.receiveFromNatsStreaming(String.class, StorageLevel.MEMORY_ONLY(), "clusterID")
+					.withDispatcherTopology(topology, poolSize);
+		final Set<String> names = new HashSet<String>();
+		for (String subject : SUBJECTS) {
+			names.add(connector.getDispatcherName(subject));
+		}
+		return names;
+	}
+
+	@Test
+	public void testStreamingTopologies() {
+		assertEquals(1, dispatcherNames(DispatcherTopology.SHARED, 4).size());
+		assertTrue(dispatcherNames(DispatcherTopology.POOL, 4).size() <= 4);
+		assertEquals(SUBJECTS.size(), dispatcherNames(DispatcherTopology.PER_SUBJECT, 4).size());
+
+		final NatsStreamingToSparkConnectorImpl<String> connector =
+				NatsToSparkConnector
+					.receiveFromNatsStreaming(String.class, StorageLevel.MEMORY_ONLY(), "clusterID")
+					.withDispatcherTopology(DispatcherTopology.POOL, 4);
+		final ConsistentHashRing ring = new ConsistentHashRing(4);
+		for (String subject : SUBJECTS) {
+			for (String other : SUBJECTS) {
+				assertEquals(ring.nodeOf(subject) == ring.nodeOf(other),
+						connector.getDispatcherName(subject).equals(connector.getDispatcherName(other)));
+			}
+		}
+	}
+
+	@Test(timeout=5000)
+	public void testStreamingWorkers() throws Exception {
+		final NatsStreamingToSparkConnectorImpl<String> connector =
+				NatsToSparkConnector
+					.receiveFromNatsStreaming(String.class, StorageLevel.MEMORY_ONLY(), "clusterID")
+					.withWorkers(2);
+		connector.startWorkers();
+		try {
+			final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+			final CountDownLatch handled = new CountDownLatch(SUBJECTS.size());
+			for (String subject : SUBJECTS) {
+				connector.getDispatchingMessageHandler(subject, m -> {
+					threads.add(subject + "@" + Thread.currentThread().getName());
+					handled.countDown();
+				}).onMessage(null);
+			}
+			assertTrue(handled.await(1, TimeUnit.SECONDS));
+
+			// Each subject is always handled by the same worker, chosen by Consistent Hashing
+			final ConsistentHashRing ring = new ConsistentHashRing(2);
+			for (String handledBy : threads) {
+				final String subject = handledBy.substring(0, handledBy.indexOf('@'));
+				assertTrue(handledBy, handledBy.endsWith("-worker-" + ring.nodeOf(subject)));
+				assertNotEquals(Thread.currentThread().getName(), handledBy.substring(handledBy.indexOf('@') + 1));
+			}
+		} finally {
+			connector.onStop();
+		}
+	}
+}
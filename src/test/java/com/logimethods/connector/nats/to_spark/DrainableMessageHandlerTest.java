@@ -0,0 +1,53 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.nats.streaming.Message;
+
+public class DrainableMessageHandlerTest {
+
+	@Test(timeout=5000)
+	public void testDrain() throws InterruptedException {
+		final AtomicInteger handled = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final DrainableMessageHandler handler = new DrainableMessageHandler(m -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			handled.incrementAndGet();
+		});
+
+		final Thread thread = new Thread(() -> handler.onMessage(new Message() {}));
+		thread.start();
+		started.await();
+		// Still handling a message
+		assertFalse(handler.drain(50));
+		// Ignored once drained
+		handler.onMessage(new Message() {});
+		release.countDown();
+		assertTrue(handler.drain(1000));
+		thread.join();
+		assertEquals(1, handled.get());
+	}
+
+	@Test
+	public void testDrainWhenIdle() throws InterruptedException {
+		final AtomicInteger handled = new AtomicInteger();
+		final DrainableMessageHandler handler = new DrainableMessageHandler(m -> handled.incrementAndGet());
+		handler.onMessage(new Message() {});
+		assertTrue(handler.drain(0));
+		handler.onMessage(new Message() {});
+		assertEquals(1, handled.get());
+	}
+}
@@ -0,0 +1,76 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+import scala.Tuple2;
+
+public class KeyCombinerTest {
+
+	@Test
+	public void testCombination() {
+		final Counter combined = new Counter();
+		final KeyCombiner<Long, String> combiner = new KeyCombiner<Long, String>(Long::sum, true, combined);
+		// Enough keys to grow the table
+		for (int round = 0; round < 10; round++) {
+			for (int key = 0; key < 1000; key++) {
+				combiner.add("subject." + key, (long) round, "m" + round + "." + key);
+			}
+		}
+		assertEquals(1000, combiner.size());
+
+		final Map<String, Long> records = new HashMap<String, Long>();
+		final List<String> messages = new ArrayList<String>();
+		combiner.flush((flushedRecords, flushedMessages) -> {
+			for (Tuple2<String, Long> record : flushedRecords) {
+				records.put(record._1, record._2);
+			}
+			messages.addAll(flushedMessages);
+		});
+		assertEquals(1000, records.size());
+		assertEquals(Long.valueOf(45), records.get("subject.0"));
+		assertEquals(Long.valueOf(45), records.get("subject.999"));
+		assertEquals(10000, messages.size());
+		assertEquals(9000, combined.getCount());
+		assertEquals(0, combiner.size());
+
+		// The next combination starts from scratch
+		combiner.add("subject.0", 7L, "m");
+		records.clear();
+		combiner.flush((flushedRecords, flushedMessages) -> {
+			for (Tuple2<String, Long> record : flushedRecords) {
+				records.put(record._1, record._2);
+			}
+		});
+		assertEquals(1, records.size());
+		assertEquals(Long.valueOf(7), records.get("subject.0"));
+	}
+
+	@Test
+	public void testNoMessageKept() {
+		final KeyCombiner<String, String> combiner = new KeyCombiner<String, String>(String::concat, false, new Counter());
+		combiner.add("A", "a", "m1");
+		combiner.add("A", "b", "m2");
+
+		final List<Tuple2<String, String>> records = new ArrayList<Tuple2<String, String>>();
+		combiner.flush((flushedRecords, flushedMessages) -> {
+			records.addAll(flushedRecords);
+			assertTrue(flushedMessages.isEmpty());
+		});
+		assertEquals(1, records.size());
+		assertEquals("ab", records.get(0)._2);
+
+		// Nothing to flush
+		combiner.flush((flushedRecords, flushedMessages) -> records.addAll(flushedRecords));
+		assertEquals(1, records.size());
+	}
+}
@@ -0,0 +1,97 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.spark.HashPartitioner;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logimethods.connector.nats.spark.test.UnitTestUtilities;
+
+import scala.Option;
+import scala.Tuple2;
+import scala.reflect.ClassTag;
+import scala.reflect.ClassTag$;
+
+public class KeyPartitionedRDDTest {
+
+	protected static final int PARTITIONS = 3;
+	protected static final List<String> KEYS = Arrays.asList("A", "B", "C", "D", "E", "F", "G");
+
+	protected JavaSparkContext sc;
+
+	@Before
+	public void setUp() {
+		sc = new JavaSparkContext(UnitTestUtilities.newSparkConf().setAppName("KeyPartitionedRDDTest"));
+	}
+
+	@After
+	public void tearDown() {
+		if (sc != null) {
+			sc.stop();
+		}
+	}
+
+	@Test
+	public void testGroup() {
+		final int[][] blocksOf = KeyPartitionedRDD.group(new int[] { 2, 0, 2, 2, 0 }, 4);
+		assertEquals(4, blocksOf.length);
+		assertArrayEquals(new int[] { 1, 4 }, blocksOf[0]);
+		assertArrayEquals(new int[] {}, blocksOf[1]);
+		assertArrayEquals(new int[] { 0, 2, 3 }, blocksOf[2]);
+		assertArrayEquals(new int[] {}, blocksOf[3]);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPartitioner() {
+		// One block per key, each of them holding the records of that key
+		final HashPartitioner partitioner = new HashPartitioner(PARTITIONS);
+		final List<Tuple2<String, Integer>> records = new ArrayList<Tuple2<String, Integer>>();
+		final int[] blockPartitions = new int[KEYS.size()];
+		for (int i = 0; i < KEYS.size(); i++) {
+			records.add(new Tuple2<String, Integer>(KEYS.get(i), i));
+			blockPartitions[i] = partitioner.getPartition(KEYS.get(i));
+		}
+		final JavaRDD<Tuple2<String, Integer>> blocks = sc.parallelize(records, KEYS.size());
+
+		final ClassTag<Tuple2<String, Integer>> classTag = (ClassTag<Tuple2<String, Integer>>) (ClassTag<?>) ClassTag$.MODULE$.apply(Tuple2.class);
+		final KeyPartitionedRDD<Tuple2<String, Integer>> rdd = new KeyPartitionedRDD<Tuple2<String, Integer>>(blocks.rdd(), blockPartitions, PARTITIONS, classTag);
+		assertEquals(partitioner, rdd.partitioner().get());
+		assertEquals(PARTITIONS, rdd.partitions().length);
+
+		final List<List<Tuple2<String, Integer>>> partitions = JavaRDD.fromRDD(rdd, classTag).glom().collect();
+		int count = 0;
+		for (int partition = 0; partition < partitions.size(); partition++) {
+			for (Tuple2<String, Integer> record : partitions.get(partition)) {
+				assertEquals(record._1, partition, partitioner.getPartition(record._1));
+				count++;
+			}
+		}
+		assertEquals(records.size(), count);
+	}
+
+	@Test
+	public void testBlockPartitions() {
+		assertArrayEquals(new int[] { 1, 0, 2 },
+				KeyPartitionedInputDStream.getBlockPartitions(Arrays.asList(Option.<Object>apply(1), Option.<Object>apply(0), Option.<Object>apply(2)), PARTITIONS));
+	}
+
+	@Test
+	public void testMissingMetadata() {
+		// Not stored by partition: the RDD of the blocks is left as it is
+		assertNull(KeyPartitionedInputDStream.getBlockPartitions(Arrays.asList(Option.<Object>apply(1), Option.<Object>empty()), PARTITIONS));
+		assertNull(KeyPartitionedInputDStream.getBlockPartitions(Arrays.asList(Option.<Object>apply("1")), PARTITIONS));
+		assertNull(KeyPartitionedInputDStream.getBlockPartitions(Arrays.asList(Option.<Object>apply(PARTITIONS)), PARTITIONS));
+		assertNull(KeyPartitionedInputDStream.getBlockPartitions(Arrays.asList(Option.<Object>apply(-1)), PARTITIONS));
+	}
+}
@@ -0,0 +1,64 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+public class LatestValueConflatorTest {
+
+	@Test
+	public void testLatestPerSubject() {
+		final Counter conflated = new Counter();
+		final LatestValueConflator<String> conflator = new LatestValueConflator<String>(conflated);
+		assertNull(conflator.offer("A", "a1"));
+		assertNull(conflator.offer("B", "b1"));
+		assertEquals("a1", conflator.offer("A", "a2"));
+		assertEquals("a2", conflator.offer("A", "a3"));
+		assertEquals(2, conflated.getCount());
+
+		final List<String> stored = new ArrayList<String>();
+		assertEquals(2, conflator.flush(stored::add));
+		assertTrue(stored.contains("a3"));
+		assertTrue(stored.contains("b1"));
+
+		// The slots are kept, but emptied
+		stored.clear();
+		assertEquals(0, conflator.flush(stored::add));
+		assertEquals(2, conflator.subjects());
+		assertNull(conflator.offer("B", "b2"));
+		assertEquals(1, conflator.flush(stored::add));
+		assertEquals("b2", stored.get(0));
+	}
+
+	@Test
+	public void testConcurrentOffers() throws InterruptedException {
+		final Counter conflated = new Counter();
+		final LatestValueConflator<Integer> conflator = new LatestValueConflator<Integer>(conflated);
+		final int threads = 4;
+		final int messages = 10000;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				for (int i = 0; i < messages; i++) {
+					conflator.offer("subject." + (i % 10), i);
+				}
+				done.countDown();
+			}).start();
+		}
+		done.await();
+
+		final List<Integer> stored = new ArrayList<Integer>();
+		conflator.flush(stored::add);
+		// Each message is either stored or conflated
+		assertEquals(10, stored.size());
+		assertEquals(threads * messages - 10, conflated.getCount());
+	}
+}
@@ -0,0 +1,82 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+public class LoadShedderTest {
+
+	protected LoadShedder<String> newShedder(OverloadPolicy policy, int sampling, List<String> stored, Counter counter) {
+		return new LoadShedder<String>(policy, 2, sampling, stored::add, counter);
+	}
+
+	@Test
+	public void testDropNewest() throws InterruptedException {
+		final Counter counter = new Counter();
+		final LoadShedder<String> shedder = newShedder(OverloadPolicy.DROP_NEWEST, 1, new ArrayList<String>(), counter);
+		for (int i = 0; i < 5; i++) {
+			shedder.offer("subject", "m" + i);
+		}
+		assertEquals(2, shedder.size());
+		assertEquals(3, counter.getCount());
+		assertEquals("m0", shedder.next());
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		final Counter counter = new Counter();
+		final LoadShedder<String> shedder = newShedder(OverloadPolicy.DROP_OLDEST, 1, new ArrayList<String>(), counter);
+		for (int i = 0; i < 5; i++) {
+			shedder.offer("subject", "m" + i);
+		}
+		assertEquals(3, counter.getCount());
+		assertEquals("m3", shedder.next());
+		assertEquals("m4", shedder.next());
+	}
+
+	@Test
+	public void testSample() throws InterruptedException {
+		final Counter counter = new Counter();
+		final LoadShedder<String> shedder = newShedder(OverloadPolicy.SAMPLE, 3, new ArrayList<String>(), counter);
+		for (int i = 0; i < 8; i++) {
+			shedder.offer("subject", "m" + i);
+		}
+		// m2 & m5 replace the oldest ones (m0 & m1), while m3, m4, m6 & m7 are dropped
+		assertEquals(6, counter.getCount());
+		assertEquals("m2", shedder.next());
+		assertEquals("m5", shedder.next());
+	}
+
+	@Test
+	public void testLatestPerSubject() throws InterruptedException {
+		final Counter counter = new Counter();
+		final LoadShedder<String> shedder = newShedder(OverloadPolicy.LATEST_PER_SUBJECT, 1, new ArrayList<String>(), counter);
+		shedder.offer("a", "a1");
+		shedder.offer("b", "b1");
+		shedder.offer("a", "a2");
+		shedder.offer("c", "c1");
+		assertEquals(2, counter.getCount());
+		assertEquals("a2", shedder.next());
+		assertEquals("b1", shedder.next());
+	}
+
+	@Test(timeout=5000)
+	public void testStore() throws InterruptedException {
+		final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+		final LoadShedder<String> shedder = newShedder(OverloadPolicy.DROP_NEWEST, 1, stored, new Counter());
+		shedder.start("test");
+		shedder.offer("subject", "m0");
+		shedder.offer("subject", "m1");
+		while (stored.size() < 2) {
+			Thread.sleep(10);
+		}
+		shedder.stop();
+		assertEquals("m0", stored.get(0));
+	}
+}
@@ -0,0 +1,51 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+public class LocalLookupTableTest {
+
+	@Test
+	public void testUpdates() {
+		final Counter updates = new Counter();
+		final LocalLookupTable<String> table = new LocalLookupTable<String>(0, updates, new Counter());
+		assertEquals(0, table.getLastUpdateNanos());
+		table.update("AAPL", "Apple v1");
+		table.update("MSFT", "Microsoft");
+		table.update("AAPL", "Apple v2");
+		assertEquals("Apple v2", table.get("AAPL"));
+		assertEquals(2, table.size());
+		// Removal
+		table.update("MSFT", null);
+		assertNull(table.get("MSFT"));
+		assertEquals(1, table.size());
+		assertEquals(4, updates.getCount());
+		assertTrue(table.getLastUpdateNanos() != 0);
+	}
+
+	@Test
+	public void testEviction() {
+		final Counter evicted = new Counter();
+		final LocalLookupTable<Integer> table = new LocalLookupTable<Integer>(3, new Counter(), evicted);
+		table.update("a", 1);
+		table.update("b", 2);
+		table.update("c", 3);
+		// "a" becomes the most recently updated key
+		table.update("a", 10);
+		table.update("d", 4);
+		assertEquals(3, table.size());
+		assertNull(table.get("b"));
+		assertEquals(Integer.valueOf(10), table.get("a"));
+		assertEquals(1, evicted.getCount());
+
+		table.update("c", null);
+		table.update("e", 5);
+		assertEquals(3, table.size());
+		assertEquals(1, evicted.getCount());
+	}
+}
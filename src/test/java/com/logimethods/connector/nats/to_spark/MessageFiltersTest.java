@@ -0,0 +1,77 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+public class MessageFiltersTest {
+
+	protected static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testSubjectToken() {
+		final MessageFilter filter = MessageFilters.subjectToken(1, "EUR");
+		assertTrue(filter.accept("prices.EUR.USD", null));
+		assertTrue(filter.accept("prices.EUR", null));
+		assertFalse(filter.accept("prices.EURO.USD", null));
+		assertFalse(filter.accept("prices.USD.EUR", null));
+		assertFalse(filter.accept("prices", null));
+		assertTrue(MessageFilters.subjectToken(0, "prices").accept("prices.EUR", null));
+	}
+
+	@Test
+	public void testSubjectMatches() {
+		assertTrue(MessageFilters.subjectMatches("a.*.c").accept("a.b.c", null));
+		assertFalse(MessageFilters.subjectMatches("a.*.c").accept("a.b.c.d", null));
+		assertFalse(MessageFilters.subjectMatches("a.*.c").accept("a.b", null));
+		assertTrue(MessageFilters.subjectMatches("a.>").accept("a.b.c", null));
+		assertFalse(MessageFilters.subjectMatches("a.>").accept("a", null));
+		assertTrue(MessageFilters.subjectMatches("a.b").accept("a.b", null));
+		assertFalse(MessageFilters.subjectMatches("a.b").accept("a.bb", null));
+	}
+
+	@Test
+	public void testPayloadBytes() {
+		assertTrue(MessageFilters.payloadPrefix("ERROR").accept("logs", bytes("ERROR: disk full")));
+		assertFalse(MessageFilters.payloadPrefix("ERROR").accept("logs", bytes("INFO: ok")));
+		assertFalse(MessageFilters.payloadPrefix("ERROR").accept("logs", bytes("ERR")));
+		assertTrue(MessageFilters.payloadBytes(2, new byte[] { 7, 8 }).accept("bin", new byte[] { 0, 0, 7, 8, 9 }));
+		assertFalse(MessageFilters.payloadBytes(3, new byte[] { 7, 8 }).accept("bin", new byte[] { 0, 0, 7, 8, 9 }));
+	}
+
+	@Test
+	public void testJsonField() {
+		final MessageFilter trades = MessageFilters.jsonField("type", "trade");
+		assertTrue(trades.accept("events", bytes("{\"id\":1, \"type\" : \"trade\", \"qty\":10}")));
+		assertFalse(trades.accept("events", bytes("{\"id\":1, \"type\":\"quote\"}")));
+		assertFalse(trades.accept("events", bytes("{\"id\":1, \"subtype\":\"trade\"}")));
+		// The first occurrence does not match, the second one does
+		assertTrue(trades.accept("events", bytes("{\"meta\":{\"type\":\"x\"}, \"type\":\"trade\"}")));
+
+		final MessageFilter quantity = MessageFilters.jsonField("qty", "10");
+		assertTrue(quantity.accept("events", bytes("{\"qty\":10}")));
+		assertTrue(quantity.accept("events", bytes("{\"qty\": 10, \"id\":2}")));
+		assertFalse(quantity.accept("events", bytes("{\"qty\":100}")));
+	}
+
+	@Test
+	public void testCombinations() {
+		final MessageFilter filter = MessageFilters.subjectToken(0, "prices")
+											.and(MessageFilters.payloadPrefix("{").negate())
+											.or(MessageFilters.subjectToken(0, "alerts"));
+		assertTrue(filter.accept("prices.EUR", bytes("1.07")));
+		assertFalse(filter.accept("prices.EUR", bytes("{}")));
+		assertTrue(filter.accept("alerts.EUR", bytes("{}")));
+		assertFalse(filter.accept("other", bytes("1.07")));
+
+		// Filters are shipped to the receivers
+		final MessageFilter copy = SerializationUtils.clone(filter);
+		assertTrue(copy.accept("prices.EUR", bytes("1.07")));
+	}
+}
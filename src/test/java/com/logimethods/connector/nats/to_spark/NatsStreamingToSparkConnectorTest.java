@@ -1,14 +1,28 @@
 package com.logimethods.connector.nats.to_spark;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.spark.storage.StorageLevel;
 import org.junit.Test;
 
+import com.logimethods.connector.nats_spark.ShutdownRegistry;
+
+import io.nats.streaming.MessageHandler;
+import io.nats.streaming.Subscription;
 import io.nats.streaming.SubscriptionOptions;
 
 @SuppressWarnings("serial")
@@ -44,5 +58,71 @@ public class NatsStreamingToSparkConnectorTest implements Serializable {
 		
 		assertEquals(DURABLE_NAME, newConnector.getSubscriptionOptions().getDurableName());
 	}
-}
 
+	@Test(timeout=10000)
+	public void testSubscribeInParallelCancelledOnInterrupt() throws Exception {
+		final List<String> subjects = new ArrayList<String>();
+		for (int i = 0; i < 4; i++) {
+			subjects.add("subject." + i);
+		}
+		final List<String> unsubscribed = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicInteger interrupted = new AtomicInteger();
+		final CountDownLatch confirmed = new CountDownLatch(1);
+		final CountDownLatch pending = new CountDownLatch(subjects.size() - 1);
+		final NatsStreamingToSparkConnectorImpl<String> connector = new NatsStreamingToSparkConnectorImpl<String>(String.class, StorageLevel.MEMORY_ONLY(), "clusterID", "clientID") {
+			@Override
+			protected Subscription subscribe(String subject, MessageHandler messageHandler) throws IOException, InterruptedException, TimeoutException {
+				if (subject.equals(subjects.get(0))) {
+					final Subscription sub = (Subscription) Proxy.newProxyInstance(Subscription.class.getClassLoader(), new Class<?>[] { Subscription.class },
+							(proxy, method, args) -> {
+								switch (method.getName()) {
+								case "hashCode":
+									return System.identityHashCode(proxy);
+								case "equals":
+									return proxy == args[0];
+								case "unsubscribe":
+								case "close":
+									unsubscribed.add(subject);
+									return null;
+								default:
+									return null;
+								}
+							});
+					confirmed.countDown();
+					return sub;
+				}
+				// Never confirmed by the NATS Streaming Server
+				pending.countDown();
+				try {
+					Thread.sleep(Long.MAX_VALUE);
+				} catch (InterruptedException e) {
+					interrupted.incrementAndGet();
+					throw e;
+				}
+				return null;
+			}
+		}.withSubscriptionParallelism(subjects.size());
+
+		final int registered = ShutdownRegistry.size();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final Thread thread = new Thread(() -> {
+			try {
+				connector.subscribeInParallel(subjects, m -> {});
+			} catch (Exception e) {
+				failure.set(e);
+			}
+		});
+		thread.start();
+		assertTrue(confirmed.await(5, TimeUnit.SECONDS));
+		assertTrue(pending.await(5, TimeUnit.SECONDS));
+		thread.interrupt();
+		thread.join();
+
+		assertTrue(String.valueOf(failure.get()), failure.get() instanceof InterruptedException);
+		// The pending subscriptions have been cancelled, the confirmed one has been closed
+		assertEquals(subjects.size() - 1, interrupted.get());
+		assertEquals(Collections.singletonList(subjects.get(0)), unsubscribed);
+		assertTrue(connector.allSubscriptions.isEmpty());
+		assertEquals(registered, ShutdownRegistry.size());
+	}
+}
@@ -1,6 +1,9 @@
 package com.logimethods.connector.nats.to_spark;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -10,7 +13,11 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.function.Function;
 
 import org.apache.commons.lang3.SerializationUtils;
@@ -132,5 +139,79 @@ public class NatsToSparkConnectorTest implements Serializable {
 		
 		assertEquals(NATS_URL, newConnector.getNatsUrl());
 	}
-}
 
+	@Test
+	public void testReplicate() {
+		final NatsStreamingToSparkConnectorImpl<String> connector = 
+				NatsToSparkConnector
+					.receiveFromNatsStreaming(String.class, StorageLevel.MEMORY_ONLY(), "clusterID") 
+					.withNatsURL(NATS_URL) 
+					.withSubjects("DEFAULT_SUBJECT");
+		final String clientID = connector.clientID;
+
+		final List<NatsStreamingToSparkConnectorImpl<String>> receivers = NatsToSparkConnector.replicate(connector, 3);
+		assertEquals(3, receivers.size());
+		assertEquals(clientID, connector.clientID);
+
+		final Set<String> clientIDs = new HashSet<String>();
+		for (NatsStreamingToSparkConnectorImpl<String> receiver : receivers) {
+			assertNotSame(connector, receiver);
+			assertEquals(connector.natsQueue, receiver.natsQueue);
+			assertFalse(receiver.preferredLocation().isDefined());
+			clientIDs.add(receiver.clientID);
+		}
+		assertEquals(3, clientIDs.size());
+	}
+
+	@Test
+	public void testCatchUpOfReplicas() {
+		final NatsStreamingToSparkConnectorImpl<String> connector = 
+				NatsToSparkConnector
+					.receiveFromNatsStreaming(String.class, StorageLevel.MEMORY_ONLY(), "clusterID") 
+					.withSubjects("SUBJECT_1", "SUBJECT_2")
+					.withCatchUp(4);
+		assertTrue(connector.isCatchUpEnabled());
+		assertTrue(NatsToSparkConnector.replicate(connector, 1).get(0).isCatchUpEnabled());
+
+		// The replicas sharing a NATS Queue would all replay the same backlog
+		for (NatsStreamingToSparkConnectorImpl<String> receiver : NatsToSparkConnector.replicate(connector, 2)) {
+			assertFalse(receiver.isCatchUpEnabled());
+		}
+		connector.withSubjectSharding(true);
+		for (NatsStreamingToSparkConnectorImpl<String> receiver : NatsToSparkConnector.replicate(connector, 2)) {
+			assertTrue(receiver.isCatchUpEnabled());
+		}
+	}
+
+	@Test
+	public void testNoCatchUpOfDurableSubscriptions() {
+		final NatsStreamingToSparkConnectorImpl<String> connector = 
+				NatsToSparkConnector
+					.receiveFromNatsStreaming(String.class, StorageLevel.MEMORY_ONLY(), "clusterID") 
+					.withSubjects("SUBJECT_1", "SUBJECT_2")
+					.withCatchUp(4)
+					.durableName("DURABLE_NAME");
+		assertFalse(connector.isCatchUpEnabled());
+	}
+
+	@Test
+	public void testRestartBackoff() {
+		final StandardNatsToSparkConnectorImpl<String> connector = 
+				NatsToSparkConnector
+					.receiveFromNats(String.class, StorageLevel.MEMORY_ONLY())
+					.withRestartBackoff(Duration.ofMillis(100), Duration.ofSeconds(10));
+
+		for (int attempt = 0; attempt < 100; attempt++) {
+			final long expected = Math.min(10000, 100L << Math.min(attempt, 30));
+			final long delay = connector.getRestartDelayMillis(attempt);
+			assertTrue("Attempt " + attempt + ": " + delay, (delay >= expected / 2) && (delay <= expected));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOverloadPolicyRequiresPendingMessages() {
+		NatsToSparkConnector
+			.receiveFromNats(String.class, StorageLevel.MEMORY_ONLY())
+			.withOverloadPolicy(OverloadPolicy.DROP_OLDEST, 0);
+	}
+}
@@ -0,0 +1,64 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.spark.HashPartitioner;
+import org.junit.Test;
+
+import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.collection.mutable.ArrayBuffer;
+
+public class PartitionedBlocksTest {
+
+	@Test
+	public void testBlocksPerPartition() {
+		final int partitions = 4;
+		final Map<Integer, List<Tuple2<String, Integer>>> stored = new HashMap<Integer, List<Tuple2<String, Integer>>>();
+		final List<String> acknowledged = new ArrayList<String>();
+		final PartitionedBlocks<Integer, String> blocks = new PartitionedBlocks<Integer, String>(partitions, 
+				(ArrayBuffer<Tuple2<String, Integer>> block, Integer partition) -> stored.put(partition, JavaConverters.seqAsJavaListConverter(block).asJava()), 
+				acknowledged::add);
+
+		for (int i = 0; i < 100; i++) {
+			blocks.add(new Tuple2<String, Integer>("subject." + (i % 10), i), "m" + i);
+		}
+		blocks.addAll(Arrays.asList(new Tuple2<String, Integer>("subject.0", 100)), Arrays.asList("m100"));
+		assertEquals(101, blocks.size());
+
+		blocks.flush();
+		assertEquals(101, acknowledged.size());
+		assertEquals(0, blocks.size());
+
+		// Each block only holds the keys of its partition, as computed by Spark
+		final HashPartitioner partitioner = new HashPartitioner(partitions);
+		int records = 0;
+		for (Map.Entry<Integer, List<Tuple2<String, Integer>>> block : stored.entrySet()) {
+			for (Tuple2<String, Integer> record : block.getValue()) {
+				assertEquals(block.getKey().intValue(), partitioner.getPartition(record._1));
+				records++;
+			}
+		}
+		assertEquals(101, records);
+
+		// Nothing to store
+		blocks.flush();
+		assertEquals(101, acknowledged.size());
+	}
+
+	@Test
+	public void testGroupBlocksByPartition() {
+		final int[][] blocksOf = KeyPartitionedRDD.group(new int[] { 2, 0, 2, 1, 0 }, 4);
+		assertArrayEquals(new int[] { 1, 4 }, blocksOf[0]);
+		assertArrayEquals(new int[] { 3 }, blocksOf[1]);
+		assertArrayEquals(new int[] { 0, 2 }, blocksOf[2]);
+		assertArrayEquals(new int[] { }, blocksOf[3]);
+	}
+}
@@ -0,0 +1,99 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.UniformReservoir;
+
+public class PayloadArenaTest {
+
+	@Test
+	public void testBlock() {
+		final Histogram blockSizes = new Histogram(new UniformReservoir());
+		final PayloadArena<String> arena = new PayloadArena<String>(16, true, blockSizes);
+		arena.add("A", bytes("hello"), "m1");
+		arena.add("B", bytes(""), "m2");
+		// Continued in the second slab
+		arena.add("A", bytes("0123456789ab"), "m3");
+		// Larger than a slab
+		arena.add("C", bytes("a payload larger than a slab"), "m4");
+		assertEquals(4, arena.size());
+
+		final List<ArenaBlock> blocks = new ArrayList<ArenaBlock>();
+		final List<String> messages = new ArrayList<String>();
+		arena.flush((block, blockMessages) -> {
+			blocks.add(block);
+			messages.addAll(blockMessages);
+		});
+		assertEquals(1, blocks.size());
+		assertEquals(4, messages.size());
+		assertEquals(0, arena.size());
+
+		final ArenaBlock block = SerializationUtils.clone(blocks.get(0));
+		assertEquals(4, block.size());
+		assertEquals(3, block.subjects.length);
+		// 45 bytes, without any gap
+		assertEquals(3, block.slabs.length);
+		assertEquals("A", block.getSubject(2));
+		assertArrayEquals(bytes("0123456789ab"), block.getPayload(2));
+
+		final Iterator<String> decoded = block.decode((subject, payload) -> subject + ":" + new String(payload, StandardCharsets.UTF_8));
+		assertEquals("A:hello", decoded.next());
+		assertEquals("B:", decoded.next());
+		assertEquals("A:0123456789ab", decoded.next());
+		assertEquals("C:a payload larger than a slab", decoded.next());
+		assertFalse(decoded.hasNext());
+		assertEquals(1, blockSizes.getCount());
+		assertEquals(45, blockSizes.getSnapshot().getMax());
+	}
+
+	@Test
+	public void testReuse() {
+		final PayloadArena<String> arena = new PayloadArena<String>(64, false, new Histogram(new UniformReservoir()));
+		final List<ArenaBlock> blocks = new ArrayList<ArenaBlock>();
+		for (int b = 0; b < 3; b++) {
+			for (int i = 0; i < 2000; i++) {
+				arena.add("subject." + (i % 3), bytes(b + "-" + i), null);
+			}
+			arena.flush((block, messages) -> {
+				assertTrue(messages.isEmpty());
+				blocks.add(block);
+			});
+		}
+		assertEquals(3, blocks.size());
+		for (int b = 0; b < 3; b++) {
+			final ArenaBlock block = blocks.get(b);
+			assertEquals(2000, block.size());
+			assertEquals(3, block.subjects.length);
+			assertEquals("subject.1", block.getSubject(1999));
+			assertArrayEquals(bytes(b + "-1999"), block.getPayload(1999));
+		}
+	}
+
+	@Test
+	public void testEmptyFlush() {
+		final PayloadArena<String> arena = new PayloadArena<String>(64, true, new Histogram(new UniformReservoir()));
+		final List<ArenaBlock> blocks = new ArrayList<ArenaBlock>();
+		arena.flush((block, messages) -> blocks.add(block));
+		assertTrue(blocks.isEmpty());
+		arena.add("A", null, "m");
+		arena.flush((block, messages) -> blocks.add(block));
+		assertEquals(0, blocks.get(0).getPayload(0).length);
+		assertEquals(1, blocks.size());
+	}
+
+	protected static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,130 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+import com.logimethods.connector.nats_spark.PayloadChunks;
+
+public class PayloadReassemblerTest {
+
+	protected static List<byte[]> split(byte[] payload, int sliceSize) throws Exception {
+		final List<byte[]> chunks = new ArrayList<byte[]>();
+		PayloadChunks.publish(payload, PayloadChunks.HEADER_SIZE + sliceSize, chunks::add);
+		return chunks;
+	}
+
+	protected static byte[] payload(int size, int seed) {
+		final byte[] payload = new byte[size];
+		for (int i = 0; i < size; i++) {
+			payload[i] = (byte) (i + seed);
+		}
+		return payload;
+	}
+
+	@Test
+	public void testInterleavedPayloads() throws Exception {
+		final Counter reassembled = new Counter();
+		final Counter expired = new Counter();
+		final PayloadReassembler<String> reassembler = new PayloadReassembler<String>(10000, TimeUnit.SECONDS.toNanos(30), reassembled, expired);
+		final byte[] first = payload(1000, 1);
+		final byte[] second = payload(450, 2);
+		final List<byte[]> firstChunks = split(first, 100);
+		final List<byte[]> secondChunks = split(second, 100);
+		// Out of order, with a redelivered chunk
+		Collections.reverse(secondChunks);
+		secondChunks.add(1, secondChunks.get(0));
+
+		byte[] firstRebuilt = null;
+		byte[] secondRebuilt = null;
+		for (int i = 0; i < Math.max(firstChunks.size(), secondChunks.size()); i++) {
+			if (i < firstChunks.size()) {
+				final PayloadReassembler.Payload<String> payload = reassembler.add(firstChunks.get(i), null);
+				if (payload != null) {
+					firstRebuilt = payload.data;
+				}
+			}
+			if (i < secondChunks.size()) {
+				final PayloadReassembler.Payload<String> payload = reassembler.add(secondChunks.get(i), null);
+				if (payload != null) {
+					secondRebuilt = payload.data;
+				}
+			}
+		}
+		assertArrayEquals(first, firstRebuilt);
+		assertArrayEquals(second, secondRebuilt);
+		assertEquals(2, reassembled.getCount());
+		assertEquals(0, expired.getCount());
+		assertEquals(0, reassembler.size());
+		assertEquals(0, reassembler.getPendingBytes());
+	}
+
+	@Test
+	public void testBoundedMemory() throws Exception {
+		final Counter expired = new Counter();
+		final PayloadReassembler<String> reassembler = new PayloadReassembler<String>(1500, TimeUnit.SECONDS.toNanos(30), new Counter(), expired);
+		final List<byte[]> first = split(payload(1000, 1), 100);
+		final List<byte[]> second = split(payload(1000, 2), 100);
+		assertNull(reassembler.add(first.get(0), null));
+		// Makes room by dropping the oldest partial payload
+		assertNull(reassembler.add(second.get(0), null));
+		assertEquals(1, expired.getCount());
+		assertEquals(1, reassembler.size());
+		assertEquals(1000, reassembler.getPendingBytes());
+
+		// Larger than the whole buffer
+		assertNull(reassembler.add(split(payload(2000, 3), 100).get(0), null));
+		assertEquals(2, expired.getCount());
+		assertEquals(1, reassembler.size());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		final Counter expired = new Counter();
+		final PayloadReassembler<String> reassembler = new PayloadReassembler<String>(10000, TimeUnit.MILLISECONDS.toNanos(50), new Counter(), expired);
+		final List<byte[]> chunks = split(payload(300, 1), 100);
+		assertNull(reassembler.add(chunks.get(0), null));
+		Thread.sleep(100);
+		assertEquals(1, reassembler.expire());
+		assertEquals(1, expired.getCount());
+		assertEquals(0, reassembler.getPendingBytes());
+	}
+
+	@Test
+	public void testChunkMessages() throws Exception {
+		final PayloadReassembler<String> reassembler = new PayloadReassembler<String>(10000, TimeUnit.SECONDS.toNanos(30), new Counter(), new Counter());
+		final List<byte[]> chunks = split(payload(250, 1), 100);
+		assertNull(reassembler.add(chunks.get(0), "chunk0"));
+		assertNull(reassembler.add(chunks.get(1), "chunk1"));
+		// Redelivered: the first delivery is acknowledged with the payload
+		assertNull(reassembler.add(chunks.get(1), "chunk1 (redelivered)"));
+		final PayloadReassembler.Payload<String> payload = reassembler.add(chunks.get(2), "chunk2");
+		assertEquals(Arrays.asList("chunk0", "chunk1", "chunk2"), payload.messages);
+	}
+
+	@Test
+	public void testStreamingMessageAcksAllChunks() throws Exception {
+		final AtomicInteger acks = new AtomicInteger();
+		final List<io.nats.streaming.Message> chunks = new ArrayList<io.nats.streaming.Message>();
+		for (int i = 0; i < 3; i++) {
+			chunks.add(new io.nats.streaming.Message() {
+				@Override
+				public void ack() {
+					acks.incrementAndGet();
+				}
+			});
+		}
+		new PayloadReassembler.StreamingMessage(chunks, new byte[0]).ack();
+		assertEquals(3, acks.get());
+	}
+}
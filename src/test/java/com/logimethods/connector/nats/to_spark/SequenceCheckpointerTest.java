@@ -0,0 +1,95 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.nats.streaming.Message;
+
+public class SequenceCheckpointerTest {
+
+	protected static class SequencedMessage extends Message {
+		final String subject;
+		final long sequence;
+
+		SequencedMessage(String subject, long sequence) {
+			this.subject = subject;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public String getSubject() {
+			return subject;
+		}
+
+		@Override
+		public long getSequence() {
+			return sequence;
+		}
+	}
+
+	@Test
+	public void testLocalFileOffsetStore() throws IOException {
+		final String directory = Files.createTempDirectory("offsets").toString();
+		final LocalFileOffsetStore store = new LocalFileOffsetStore(directory, "receiver");
+		assertTrue(store.load().isEmpty());
+
+		final List<List<String>> blocks = new ArrayList<List<String>>();
+		final List<Message> acknowledged = new ArrayList<Message>();
+		final SequenceCheckpointer<String> checkpointer = new SequenceCheckpointer<String>(store, blocks::add, acknowledged::add);
+		assertEquals(0, checkpointer.getResumeSequence("A"));
+
+		checkpointer.add("a1", new SequencedMessage("A", 1));
+		checkpointer.add("b7", new SequencedMessage("B", 7));
+		checkpointer.add("a2", new SequencedMessage("A", 2));
+		// Nothing saved before the block is stored
+		assertTrue(store.load().isEmpty());
+
+		checkpointer.flush();
+		assertEquals(1, blocks.size());
+		assertEquals(3, blocks.get(0).size());
+		assertEquals(3, acknowledged.size());
+
+		final Map<String, Long> sequences = store.load();
+		assertEquals(Long.valueOf(2), sequences.get("A"));
+		assertEquals(Long.valueOf(7), sequences.get("B"));
+
+		// An empty block does not lead to a write
+		checkpointer.flush();
+		assertEquals(1, blocks.size());
+
+		// After a restart, resume after the last stored sequences
+		final SequenceCheckpointer<String> restarted = new SequenceCheckpointer<String>(store, blocks::add, acknowledged::add);
+		assertEquals(3, restarted.getResumeSequence("A"));
+		assertEquals(8, restarted.getResumeSequence("B"));
+		assertEquals(0, restarted.getResumeSequence("C"));
+	}
+
+	@Test
+	public void testCeiling() throws IOException {
+		final String directory = Files.createTempDirectory("offsets").toString();
+		final LocalFileOffsetStore store = new LocalFileOffsetStore(directory, "receiver");
+		final SequenceCheckpointer<String> checkpointer = new SequenceCheckpointer<String>(store, block -> {}, message -> {});
+
+		// Replayed out of order: the first range (until 100) is not complete yet
+		checkpointer.setCeiling("A", 100);
+		checkpointer.add("a50", new SequencedMessage("A", 50));
+		checkpointer.add("a250", new SequencedMessage("A", 250));
+		checkpointer.add("b3", new SequencedMessage("B", 3));
+		checkpointer.flush();
+		assertEquals(Long.valueOf(100), store.load().get("A"));
+		assertEquals(Long.valueOf(3), store.load().get("B"));
+
+		checkpointer.clearCeiling("A");
+		checkpointer.add("a251", new SequencedMessage("A", 251));
+		checkpointer.flush();
+		assertEquals(Long.valueOf(251), store.load().get("A"));
+	}
+}
@@ -0,0 +1,75 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SequenceWindowTest {
+
+	@Test
+	public void testDuplicates() {
+		final SequenceWindow window = new SequenceWindow(128);
+		for (long seq = 1000; seq < 1100; seq++) {
+			assertFalse(window.markAndCheckDuplicate(seq));
+		}
+		// Redeliveries within the window
+		assertTrue(window.markAndCheckDuplicate(1000));
+		assertTrue(window.markAndCheckDuplicate(1099));
+		// Never received (gap), then received
+		assertFalse(window.markAndCheckDuplicate(1200));
+		assertFalse(window.markAndCheckDuplicate(1150));
+		assertTrue(window.markAndCheckDuplicate(1150));
+		// Out of the window: considered as new
+		assertFalse(window.markAndCheckDuplicate(1000));
+	}
+
+	@Test
+	public void testLargeGap() {
+		final SequenceWindow window = new SequenceWindow(64);
+		assertFalse(window.markAndCheckDuplicate(10));
+		assertFalse(window.markAndCheckDuplicate(1000000));
+		assertFalse(window.markAndCheckDuplicate(1000000 - 10));
+		assertTrue(window.markAndCheckDuplicate(1000000));
+	}
+
+	@Test
+	public void testAcknowledged() {
+		final SequenceWindow window = new SequenceWindow(64);
+		assertFalse(window.markAndCheckDuplicate(10));
+		assertFalse(window.markAndCheckDuplicate(11));
+		window.markAcknowledged(10);
+		assertTrue(window.isAcknowledged(10));
+		// Received, but still in flight
+		assertFalse(window.isAcknowledged(11));
+		// Never received
+		window.markAcknowledged(12);
+		assertFalse(window.isAcknowledged(12));
+		// Out of the window
+		assertFalse(window.markAndCheckDuplicate(100));
+		assertFalse(window.isAcknowledged(10));
+		window.markAcknowledged(100);
+		assertTrue(window.isAcknowledged(100));
+		// Reused slot of the ring
+		assertFalse(window.markAndCheckDuplicate(164));
+		assertFalse(window.isAcknowledged(164));
+	}
+
+	@Test
+	public void testUnmarked() {
+		final SequenceWindow window = new SequenceWindow(64);
+		assertFalse(window.markAndCheckDuplicate(10));
+		assertFalse(window.markAndCheckDuplicate(11));
+		window.markAcknowledged(11);
+		// Rejected before being stored: its redelivery is not a duplicate
+		window.unmark(10);
+		assertFalse(window.markAndCheckDuplicate(10));
+		assertTrue(window.markAndCheckDuplicate(10));
+		window.unmark(11);
+		assertFalse(window.isAcknowledged(11));
+		assertFalse(window.markAndCheckDuplicate(11));
+		// Out of the window: ignored
+		window.unmark(1000);
+		assertFalse(window.markAndCheckDuplicate(12));
+	}
+}
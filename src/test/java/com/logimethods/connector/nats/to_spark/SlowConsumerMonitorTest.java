@@ -0,0 +1,169 @@
+package com.logimethods.connector.nats.to_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.spark.storage.StorageLevel;
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+import io.nats.client.Connection;
+import io.nats.client.Consumer;
+import io.nats.client.Dispatcher;
+import io.nats.client.MessageHandler;
+import io.nats.client.ConnectionListener.Events;
+
+public class SlowConsumerMonitorTest {
+
+	protected final Counter droppedCounter = new Counter();
+	protected final Counter slowConsumerCounter = new Counter();
+	protected final List<String> overloads = new ArrayList<String>();
+	protected final List<Events> events = new ArrayList<Events>();
+
+	protected SlowConsumerMonitor newMonitor(int sustainedPolls) {
+		return new SlowConsumerMonitor("receiver", sustainedPolls, droppedCounter, slowConsumerCounter, overloads::add, (connection, type) -> events.add(type));
+	}
+
+	/**
+	 * @return a NATS Consumer reporting the provided counts
+	 */
+	protected static Consumer newConsumer(AtomicLong dropped, long pending) {
+		return (Consumer) Proxy.newProxyInstance(Consumer.class.getClassLoader(), new Class<?>[] { Consumer.class },
+			(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "getDroppedCount": return dropped.get();
+					case "getPendingMessageCount": return pending;
+					case "hashCode": return System.identityHashCode(proxy);
+					case "equals": return proxy == args[0];
+					default: throw new UnsupportedOperationException(method.getName());
+				}
+			});
+	}
+
+	@Test
+	public void testSustainedOverload() {
+		final SlowConsumerMonitor monitor = newMonitor(3);
+		final AtomicLong dropped = new AtomicLong(10);
+		monitor.register(newConsumer(dropped, 0));
+
+		// The messages dropped before the registration are ignored
+		assertEquals(0, monitor.poll());
+		for (int i = 1; i <= 2; i++) {
+			dropped.addAndGet(5);
+			assertEquals(5, monitor.poll());
+			assertTrue(overloads.isEmpty());
+		}
+		dropped.addAndGet(5);
+		assertEquals(5, monitor.poll());
+		assertEquals(1, overloads.size());
+		assertEquals(15, droppedCounter.getCount());
+
+		// The count starts again after a notified overload
+		dropped.addAndGet(5);
+		monitor.poll();
+		assertEquals(1, overloads.size());
+	}
+
+	@Test
+	public void testQuietPollResetsTheCount() {
+		final SlowConsumerMonitor monitor = newMonitor(2);
+		final AtomicLong dropped = new AtomicLong();
+		monitor.register(newConsumer(dropped, 0));
+
+		dropped.incrementAndGet();
+		monitor.poll();
+		assertEquals(0, monitor.poll());
+		dropped.incrementAndGet();
+		monitor.poll();
+		assertTrue(overloads.isEmpty());
+
+		dropped.incrementAndGet();
+		monitor.poll();
+		assertEquals(1, overloads.size());
+	}
+
+	@Test
+	public void testSeveralConsumers() {
+		final SlowConsumerMonitor monitor = newMonitor(1);
+		final AtomicLong dropped1 = new AtomicLong();
+		final AtomicLong dropped2 = new AtomicLong();
+		monitor.register(newConsumer(dropped1, 3));
+		monitor.register(newConsumer(dropped2, 4));
+
+		dropped1.addAndGet(2);
+		dropped2.addAndGet(5);
+		assertEquals(7, monitor.poll());
+		assertEquals(1, overloads.size());
+		assertEquals(7, monitor.getPendingMessages());
+	}
+
+	@Test
+	public void testListeners() {
+		final SlowConsumerMonitor monitor = newMonitor(1);
+		monitor.slowConsumerDetected(null, newConsumer(new AtomicLong(), 0));
+		assertEquals(1, slowConsumerCounter.getCount());
+
+		monitor.connectionEvent(null, Events.DISCONNECTED);
+		assertEquals(1, events.size());
+		assertEquals(Events.DISCONNECTED, events.get(0));
+
+		monitor.detach();
+		monitor.connectionEvent(null, Events.CLOSED);
+		assertEquals(1, events.size());
+	}
+
+	@Test
+	public void testExtraConnectionsAreLimited() {
+		final List<String> errors = new ArrayList<String>();
+		final StandardNatsToSparkConnectorImpl<String> connector = new StandardNatsToSparkConnectorImpl<String>(String.class, StorageLevel.MEMORY_ONLY()) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected Connection connect() {
+				final Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+						(proxy, method, args) -> {
+							switch (method.getName()) {
+								case "hashCode": return System.identityHashCode(proxy);
+								case "equals": return proxy == args[0];
+								default: return null;
+							}
+						});
+				natsConnections.add(connection);
+				return connection;
+			}
+
+			@Override
+			protected Map<Dispatcher, List<String>> subscribe(Connection connection, MessageHandler messageHandler, Collection<String> subjects) {
+				return Collections.emptyMap();
+			}
+
+			@Override
+			public void reportError(String message, Throwable throwable) {
+				errors.add(message);
+			}
+		};
+		connector.withSlowConsumerDetection(SlowConsumerAction.EXTRA_RECEIVER, Duration.ofSeconds(1), 1);
+		connector.natsConnections = new CopyOnWriteArrayList<Connection>(Collections.singletonList(DispatcherTopologyTest.connection()));
+
+		for (int i = 0; i < OmnipotentStandardNatsToSparkConnector.MAX_EXTRA_CONNECTIONS; i++) {
+			connector.onSustainedOverload("overload");
+		}
+		assertEquals(1 + OmnipotentStandardNatsToSparkConnector.MAX_EXTRA_CONNECTIONS, connector.natsConnections.size());
+		assertTrue(errors.isEmpty());
+
+		connector.onSustainedOverload("overload");
+		assertEquals(1 + OmnipotentStandardNatsToSparkConnector.MAX_EXTRA_CONNECTIONS, connector.natsConnections.size());
+		assertEquals(1, errors.size());
+	}
+}
@@ -0,0 +1,47 @@
+package com.logimethods.connector.nats_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConsistentHashRingTest {
+
+	@Test
+	public void testDistribution() {
+		final int nodes = 4;
+		final int keys = 10000;
+		final ConsistentHashRing ring = new ConsistentHashRing(nodes);
+		final int[] counts = new int[nodes];
+		for (int i = 0; i < keys; i++) {
+			counts[ring.nodeOf("subject." + i)]++;
+		}
+		for (int count : counts) {
+			assertTrue("Unbalanced distribution: " + count, (count > keys / nodes / 2) && (count < keys / nodes * 2));
+		}
+	}
+
+	@Test
+	public void testStability() {
+		final int keys = 10000;
+		final ConsistentHashRing ring4 = new ConsistentHashRing(4);
+		final ConsistentHashRing ring5 = new ConsistentHashRing(5);
+		int moved = 0;
+		for (int i = 0; i < keys; i++) {
+			final String key = "subject." + i;
+			assertEquals(ring4.nodeOf(key), new ConsistentHashRing(4).nodeOf(key));
+			final int node = ring5.nodeOf(key);
+			if (node != ring4.nodeOf(key)) {
+				assertEquals(4, node);
+				moved++;
+			}
+		}
+		// About 1/5 of the keys should move to the new node
+		assertTrue("Too many moved keys: " + moved, moved < keys / 3);
+	}
+
+	@Test
+	public void testSingleNode() {
+		assertEquals(0, new ConsistentHashRing(1).nodeOf("any.subject"));
+	}
+}
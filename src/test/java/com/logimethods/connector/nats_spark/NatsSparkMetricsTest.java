@@ -0,0 +1,71 @@
+package com.logimethods.connector.nats_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.apache.spark.SparkEnv;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.metrics.MetricsSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.logimethods.connector.nats.spark.test.UnitTestUtilities;
+
+public class NatsSparkMetricsTest {
+
+	protected JavaSparkContext sc;
+
+	@Before
+	public void setUp() {
+		sc = new JavaSparkContext(UnitTestUtilities.newSparkConf().setAppName("NatsSparkMetricsTest"));
+	}
+
+	@After
+	public void tearDown() {
+		if (sc != null) {
+			sc.stop();
+		}
+	}
+
+	@Test
+	public void testMetricsCreatedAfterRegistration() throws Exception {
+		NatsSparkMetrics.getRegistry();
+		assertNull(sparkMetric("test.late.counter"));
+
+		NatsSparkMetrics.counter("test.late", "counter").inc(3);
+		final Metric counter = sparkMetric("test.late.counter");
+		assertNotNull(counter);
+		assertEquals(3, ((Counter) counter).getCount());
+
+		NatsSparkMetrics.gauge(() -> 1, "test.late", "gauge");
+		assertNotNull(sparkMetric("test.late.gauge"));
+		NatsSparkMetrics.getRegistry().remove("test.late.gauge");
+		assertNull(sparkMetric("test.late.gauge"));
+	}
+
+	/**
+	 * @return the metric registered into the Spark Metrics System under the NATS Source
+	 */
+	protected static Metric sparkMetric(String name) throws Exception {
+		final MetricsSystem system = SparkEnv.get().metricsSystem();
+		for (Field field : MetricsSystem.class.getDeclaredFields()) {
+			if (field.getType() == MetricRegistry.class) {
+				field.setAccessible(true);
+				for (Map.Entry<String, Metric> entry : ((MetricRegistry) field.get(system)).getMetrics().entrySet()) {
+					if (entry.getKey().endsWith(NatsSparkMetrics.SOURCE_NAME + "." + name)) {
+						return entry.getValue();
+					}
+				}
+			}
+		}
+		return null;
+	}
+}
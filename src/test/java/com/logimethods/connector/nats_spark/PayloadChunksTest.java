@@ -0,0 +1,87 @@
+package com.logimethods.connector.nats_spark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PayloadChunksTest {
+
+	@Test
+	public void testSplit() throws Exception {
+		final byte[] payload = new byte[1000];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) i;
+		}
+		final List<byte[]> chunks = new ArrayList<byte[]>();
+		final int chunkSize = PayloadChunks.HEADER_SIZE + 300;
+		assertEquals(4, PayloadChunks.publish(payload, chunkSize, chunks::add));
+		assertEquals(4, chunks.size());
+
+		final byte[] rebuilt = new byte[payload.length];
+		final long id = PayloadChunks.getId(chunks.get(0));
+		for (int i = 0; i < chunks.size(); i++) {
+			final byte[] chunk = chunks.get(i);
+			assertTrue(PayloadChunks.isChunk(chunk));
+			assertTrue(chunk.length <= chunkSize);
+			assertEquals(id, PayloadChunks.getId(chunk));
+			assertEquals(i, PayloadChunks.getIndex(chunk));
+			assertEquals(4, PayloadChunks.getCount(chunk));
+			assertEquals(payload.length, PayloadChunks.getTotalLength(chunk));
+			System.arraycopy(chunk, PayloadChunks.HEADER_SIZE, rebuilt, PayloadChunks.getOffset(chunk), chunk.length - PayloadChunks.HEADER_SIZE);
+		}
+		assertEquals(100 + PayloadChunks.HEADER_SIZE, chunks.get(3).length);
+		assertArrayEquals(payload, rebuilt);
+	}
+
+	@Test
+	public void testNotChunk() {
+		assertFalse(PayloadChunks.isChunk(null));
+		assertFalse(PayloadChunks.isChunk("A regular payload, long enough to hold a header".getBytes(StandardCharsets.UTF_8)));
+		final byte[] inconsistent = new byte[PayloadChunks.HEADER_SIZE + 10];
+		inconsistent[0] = PayloadChunks.MAGIC;
+		// index 0 out of 0 chunks
+		assertFalse(PayloadChunks.isChunk(inconsistent));
+	}
+
+	@Test
+	public void testInconsistentHeader() throws Exception {
+		final List<byte[]> chunks = new ArrayList<byte[]>();
+		PayloadChunks.publish(new byte[1000], PayloadChunks.HEADER_SIZE + 300, chunks::add);
+
+		// More chunks than bytes
+		assertFalse(PayloadChunks.isChunk(withInt(chunks.get(0), 13, 2000)));
+		// A count that does not match the size of the chunks
+		assertFalse(PayloadChunks.isChunk(withInt(chunks.get(0), 13, 5)));
+		assertFalse(PayloadChunks.isChunk(withInt(chunks.get(3), 13, 5)));
+		// A chunk out of its place
+		assertFalse(PayloadChunks.isChunk(withInt(chunks.get(1), 17, 250)));
+		// A last chunk that does not end the payload
+		assertFalse(PayloadChunks.isChunk(withInt(chunks.get(3), 21, 1100)));
+
+		final List<byte[]> single = new ArrayList<byte[]>();
+		PayloadChunks.publish(new byte[100], PayloadChunks.HEADER_SIZE + 300, single::add);
+		assertTrue(PayloadChunks.isChunk(single.get(0)));
+		assertFalse(PayloadChunks.isChunk(withInt(single.get(0), 21, 200)));
+	}
+
+	/**
+	 * @return a copy of that chunk, with the provided value written at that position of its header
+	 */
+	protected static byte[] withInt(byte[] chunk, int position, int value) {
+		final byte[] copy = chunk.clone();
+		PayloadCompression.writeInt(copy, position, value);
+		return copy;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooSmallChunks() throws Exception {
+		PayloadChunks.publish(new byte[100], PayloadChunks.HEADER_SIZE, chunk -> {});
+	}
+}
@@ -0,0 +1,221 @@
+package com.logimethods.connector.nats_spark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.spark.storage.StorageLevel;
+import org.junit.Test;
+
+import com.logimethods.connector.nats.to_spark.MessageFilter;
+import com.logimethods.connector.nats.to_spark.MessageFilters;
+import com.logimethods.connector.nats.to_spark.NatsToSparkConnector;
+
+import io.nats.client.Connection;
+import io.nats.client.Dispatcher;
+import io.nats.client.Message;
+import io.nats.client.MessageHandler;
+
+public class PayloadCompressionTest {
+
+	private static final String JSON = "{\"symbol\":\"ABC\",\"price\":123.45,\"volume\":1000,\"exchange\":\"NASDAQ\"}";
+
+	protected static byte[] repetitivePayload() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			builder.append(JSON);
+		}
+		return builder.toString().getBytes();
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final byte[] payload = repetitivePayload();
+		for (PayloadCodec codec : new PayloadCodec[] {PayloadCodec.SNAPPY, PayloadCodec.LZ4, PayloadCodec.ZSTD}) {
+			final byte[] compressed = PayloadCompression.compress(codec, payload, PayloadCompression.DEFAULT_THRESHOLD);
+			assertTrue(codec.toString(), PayloadCompression.isCompressed(compressed));
+			assertEquals(codec, PayloadCodec.fromId(compressed[1]));
+			assertTrue(codec.toString(), compressed.length < payload.length);
+			assertArrayEquals(codec.toString(), payload, PayloadCompression.decompress(compressed));
+		}
+	}
+
+	@Test
+	public void testSmallPayloadsAreNotCompressed() {
+		final byte[] payload = "Small".getBytes();
+		assertSame(payload, PayloadCompression.compress(PayloadCodec.LZ4, payload, PayloadCompression.DEFAULT_THRESHOLD));
+		final byte[] large = repetitivePayload();
+		assertSame(large, PayloadCompression.compress(PayloadCodec.NONE, large, 0));
+	}
+
+	@Test
+	public void testUncompressedPayloadsAreKept() {
+		final byte[] payload = JSON.getBytes();
+		assertFalse(PayloadCompression.isCompressed(payload));
+		assertSame(payload, PayloadCompression.decompress(payload));
+	}
+
+	@Test
+	public void testLookalikeHeadersAreKept() {
+		// Starts like a NONE header announcing 2 bytes
+		final byte[] none = new byte[] {PayloadCompression.MAGIC, PayloadCodec.NONE.getId(), 0, 0, 0, 2, 'a', 'b', 'c', 'd'};
+		assertSame(none, PayloadCompression.decompress(none));
+		// Starts like an LZ4 header, followed by a malformed block
+		final byte[] lz4 = new byte[] {PayloadCompression.MAGIC, PayloadCodec.LZ4.getId(), 0, 0, 0, 100, (byte) 0xFF, (byte) 0xFF, 1, 2};
+		assertSame(lz4, PayloadCompression.decompress(lz4));
+	}
+
+	@Test
+	public void testReceiverDecompression() {
+		final byte[] payload = repetitivePayload();
+		final byte[] compressed = PayloadCompression.compress(PayloadCodec.SNAPPY, payload, PayloadCompression.DEFAULT_THRESHOLD);
+
+		final TestConnector connector = new TestConnector();
+		connector.withDecompression(true);
+		assertEquals(new String(payload), connector.decode(compressed));
+		assertEquals(JSON, connector.decode(JSON.getBytes()));
+	}
+
+	@Test
+	public void testFilterOnDecompressedPayloads() {
+		final byte[] compressed = PayloadCompression.compress(PayloadCodec.LZ4, repetitivePayload(), PayloadCompression.DEFAULT_THRESHOLD);
+
+		final TestConnector connector = new TestConnector();
+		connector.withFilter(MessageFilters.payloadPrefix("{\"symbol\""));
+		assertFalse(connector.filter().accept("trades", compressed));
+		connector.withDecompression(true);
+		assertTrue(connector.filter().accept("trades", compressed));
+		assertTrue(connector.filter().accept("trades", JSON.getBytes()));
+	}
+
+	@Test
+	public void testDictionaryRoundTrip() {
+		final List<byte[]> samples = new ArrayList<byte[]>();
+		for (int i = 0; i < 2000; i++) {
+			samples.add(("{\"symbol\":\"S" + (i % 97) + "\",\"price\":" + (i * 7 % 1000) + ".25,\"volume\":" + i + ",\"exchange\":\"NASDAQ\"}").getBytes());
+		}
+		final PayloadDictionary dictionary = PayloadDictionary.train(42, samples, 16 * 1024);
+		assertSame(dictionary, PayloadDictionaries.get(42));
+		assertSame(dictionary, SerializationUtils.clone(dictionary));
+
+		final byte[] payload = JSON.getBytes();
+		final byte[] compressed = dictionary.compress(payload, 0);
+		assertTrue(compressed.length < payload.length);
+		assertEquals(Integer.valueOf(42), PayloadDictionary.extractVersion(compressed));
+		assertArrayEquals(payload, PayloadCompression.decompress(compressed));
+	}
+
+	@Test(timeout = 1000)
+	public void testUnknownDictionaryDoesNotBlock() {
+		assertNull(PayloadDictionaries.get(99, Duration.ofSeconds(5)));
+	}
+
+	@Test(timeout = 1000, expected = UnknownDictionaryException.class)
+	public void testUnknownDictionaryIsRejected() {
+		final byte[] payload = new byte[] {PayloadCompression.MAGIC, PayloadDictionary.CODEC_ID, 0, 0, 0, 99, 0, 0, 0, 8, 1, 2, 3};
+		PayloadCompression.decompress(payload, Duration.ofSeconds(5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testForeignBytesAreNotDictionaries() {
+		assertFalse(PayloadDictionary.isDictionary(null));
+		assertFalse(PayloadDictionary.isDictionary(new byte[] {0, 0, 0, 1}));
+		assertFalse(PayloadDictionary.isDictionary(JSON.getBytes()));
+		PayloadDictionary.fromBytes(JSON.getBytes());
+	}
+
+	@Test
+	public void testListenIgnoresForeignMessages() throws Exception {
+		final PayloadDictionary dictionary = PayloadDictionary.train(45, samples(), 8 * 1024);
+		assertTrue(PayloadDictionary.isDictionary(dictionary.toBytes()));
+		PayloadDictionaries.dictionaries.remove(45);
+
+		final List<MessageHandler> handlers = new ArrayList<MessageHandler>();
+		final Connection connection = connection(handlers);
+		try {
+			PayloadDictionaries.listen(connection, "control");
+			PayloadDictionaries.listen(connection, "control");
+			assertEquals(1, handlers.size());
+
+			handlers.get(0).onMessage(message(new byte[] {1, 2, 3}));
+			handlers.get(0).onMessage(message(JSON.getBytes()));
+			assertNull(PayloadDictionaries.dictionaries.get(45));
+			handlers.get(0).onMessage(message(dictionary.toBytes()));
+			assertEquals(45, PayloadDictionaries.dictionaries.get(45).getVersion());
+		} finally {
+			PayloadDictionaries.listeners.remove(connection);
+		}
+	}
+
+	@Test
+	public void testAnnouncedDictionaryCompletesRequest() throws Exception {
+		final PayloadDictionaries.PendingRequest pending = new PayloadDictionaries.PendingRequest(System.currentTimeMillis());
+		PayloadDictionaries.requests.put(43, pending);
+		final PayloadDictionary dictionary = PayloadDictionary.train(43, samples(), 8 * 1024);
+		assertSame(dictionary, pending.dictionary.get(1, TimeUnit.SECONDS));
+		assertFalse(PayloadDictionaries.requests.containsKey(43));
+	}
+
+	protected static List<byte[]> samples() {
+		final List<byte[]> samples = new ArrayList<byte[]>();
+		for (int i = 0; i < 1000; i++) {
+			samples.add(("{\"symbol\":\"S" + (i % 31) + "\",\"volume\":" + i + "}").getBytes());
+		}
+		return samples;
+	}
+
+	protected static Connection connection(List<MessageHandler> handlers) {
+		final Dispatcher dispatcher = (Dispatcher) Proxy.newProxyInstance(Dispatcher.class.getClassLoader(), new Class<?>[] { Dispatcher.class },
+				(proxy, method, args) -> proxy);
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "createDispatcher":
+						handlers.add((MessageHandler) args[0]);
+						return dispatcher;
+					case "getStatus":
+						return Connection.Status.CONNECTED;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+
+	protected static Message message(byte[] data) {
+		return (Message) Proxy.newProxyInstance(Message.class.getClassLoader(), new Class<?>[] { Message.class },
+				(proxy, method, args) -> "getData".equals(method.getName()) ? data : null);
+	}
+
+	@SuppressWarnings("serial")
+	static class TestConnector extends NatsToSparkConnector<TestConnector, String, String> {
+		TestConnector() {
+			super(String.class, StorageLevel.MEMORY_ONLY());
+		}
+
+		String decode(byte[] bytes) {
+			return decodeData(bytes);
+		}
+
+		MessageFilter filter() {
+			return getMeasuredFilter();
+		}
+
+		@Override
+		protected void receive() throws Exception {
+		}
+	}
+}
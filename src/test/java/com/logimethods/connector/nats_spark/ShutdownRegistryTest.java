@@ -0,0 +1,80 @@
+package com.logimethods.connector.nats_spark;
+
+import static com.logimethods.connector.nats.spark.test.UnitTestUtilities.NATS_LOCALHOST_URL;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.logimethods.connector.nats.spark.test.UnitTestUtilities;
+import com.logimethods.connector.nats_spark.ShutdownRegistry.Phase;
+
+import io.nats.client.Connection;
+import io.nats.client.Dispatcher;
+import io.nats.client.Nats;
+
+public class ShutdownRegistryTest {
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		UnitTestUtilities.startDefaultServer();
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		UnitTestUtilities.stopDefaultServer();
+	}
+
+	@Test(timeout=60000)
+	public void testClosedConnectionsAreUnregistered() throws Exception {
+		final ShutdownRegistry registry = new ShutdownRegistry(false);
+		final List<Connection> forgotten = new ArrayList<Connection>();
+
+		for (int i = 0; i < 200; i++) {
+			final Connection connection = registry.add(Nats.connect(NATS_LOCALHOST_URL), Phase.CONNECTION, Connection::close);
+			final Dispatcher dispatcher = registry.add(connection.createDispatcher(m -> {}), Phase.DISPATCHER, d -> {});
+			dispatcher.subscribe("shutdown.registry." + i);
+			if (i % 2 == 0) {
+				// Explicitly closed by its owner, as done by the receivers when they stop
+				registry.remove(dispatcher);
+				registry.remove(connection);
+				connection.close();
+				assertEquals(Connection.Status.CLOSED, connection.getStatus());
+			} else {
+				// Left to the shutdown
+				forgotten.add(connection);
+			}
+			assertEquals(2 * forgotten.size(), registry.count());
+		}
+
+		registry.close();
+		assertEquals(0, registry.count());
+		for (Connection connection : forgotten) {
+			assertEquals(Connection.Status.CLOSED, connection.getStatus());
+		}
+	}
+
+	@Test
+	public void testCloseInOrder() {
+		final ShutdownRegistry registry = new ShutdownRegistry(false);
+		final List<String> closed = new ArrayList<String>();
+		final String connection = new String("connection");
+		final String dispatcher = new String("dispatcher");
+		final String subscription = new String("subscription");
+		registry.add(connection, Phase.CONNECTION, closed::add);
+		registry.add(dispatcher, Phase.DISPATCHER, closed::add);
+		registry.add(subscription, Phase.SUBSCRIPTION, closed::add);
+
+		registry.close();
+
+		assertEquals(3, closed.size());
+		assertEquals("subscription", closed.get(0));
+		assertEquals("dispatcher", closed.get(1));
+		assertEquals("connection", closed.get(2));
+		assertEquals(0, registry.count());
+	}
+}
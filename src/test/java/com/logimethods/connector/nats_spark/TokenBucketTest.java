@@ -0,0 +1,58 @@
+package com.logimethods.connector.nats_spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.logimethods.connector.spark.to_nats.PublishingRateLimit;
+
+public class TokenBucketTest {
+
+	@Test
+	public void testBurst() {
+		final TokenBucket bucket = new TokenBucket(10, 1.0);
+		assertTrue(bucket.tryAcquire(10));
+		assertFalse(bucket.tryAcquire(1));
+	}
+
+	@Test(timeout=5000)
+	public void testSustainedRate() {
+		final TokenBucket bucket = new TokenBucket(100, 0.0);
+		final long start = System.nanoTime();
+		long waited = 0;
+		for (int i = 0; i < 20; i++) {
+			waited += bucket.acquire(1);
+		}
+		final long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		assertTrue("Elapsed: " + elapsedMillis, elapsedMillis >= 150);
+		assertTrue(waited > 0);
+	}
+
+	@Test(timeout=5000)
+	public void testSharedPerJVM() {
+		final PublishingRateLimit limit1 = new PublishingRateLimit("A.*", 100, 0);
+		final PublishingRateLimit limit2 = new PublishingRateLimit("A.*", 100, 0);
+		assertTrue(limit1.appliesTo("A.B"));
+		assertFalse(limit1.appliesTo("B.A"));
+		// The first limit drains the (one second) burst of the bucket, then keeps it empty...
+		for (int i = 0; i < 110; i++) {
+			limit1.throttle(100);
+		}
+		// ... so the second one, sharing that bucket, has to wait
+		assertTrue(limit2.throttle(100) > 0);
+		// While a distinct limit has its own bucket
+		assertEquals(0, new PublishingRateLimit("B.*", 100, 0).throttle(100));
+	}
+
+	@Test
+	public void testMatchesSubject() {
+		assertTrue(NatsSparkUtilities.matchesSubject("A.B", "A.B"));
+		assertTrue(NatsSparkUtilities.matchesSubject("A.*", "A.B"));
+		assertFalse(NatsSparkUtilities.matchesSubject("A.*", "A.B.C"));
+		assertTrue(NatsSparkUtilities.matchesSubject("A.>", "A.B.C"));
+		assertFalse(NatsSparkUtilities.matchesSubject("A.>", "A"));
+		assertFalse(NatsSparkUtilities.matchesSubject("A.B.C", "A.B"));
+	}
+}
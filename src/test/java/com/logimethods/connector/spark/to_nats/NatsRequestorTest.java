@@ -0,0 +1,108 @@
+package com.logimethods.connector.spark.to_nats;
+
+import static com.logimethods.connector.nats.spark.test.UnitTestUtilities.NATS_LOCALHOST_URL;
+import static com.logimethods.connector.nats.spark.test.UnitTestUtilities.NATS_URL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.spark.SparkException;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.logimethods.connector.nats.spark.test.UnitTestUtilities;
+
+import io.nats.client.Connection;
+import io.nats.client.Nats;
+
+public class NatsRequestorTest {
+
+	protected static final String SUBJECT = "requestor.upperCase";
+	protected static JavaSparkContext sc;
+	protected static Connection responder;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		UnitTestUtilities.startDefaultServer();
+		sc = new JavaSparkContext(UnitTestUtilities.newSparkConf().setAppName("NatsRequestorTest"));
+
+		// Responds to each request with its payload in upper case
+		responder = Nats.connect(NATS_LOCALHOST_URL);
+		responder.createDispatcher(m ->
+				responder.publish(m.getReplyTo(), new String(m.getData(), StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8)))
+			.subscribe(SUBJECT);
+		responder.flush(Duration.ofSeconds(1));
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		if (responder != null) {
+			responder.close();
+		}
+		if (sc != null) {
+			sc.stop();
+		}
+		UnitTestUtilities.stopDefaultServer();
+	}
+
+	protected static JavaRDD<String> records(int count) {
+		final List<String> records = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			records.add("record-" + i);
+		}
+		return sc.parallelize(records, 3);
+	}
+
+	@Test(timeout=60000)
+	public void testRequests() {
+		final List<String> responses =
+				NatsRequestor
+					.newRequestor()
+					.withNatsURL(NATS_URL)
+					.withSubject(SUBJECT)
+					.withMaxInFlight(4)
+					.request(records(100), String.class)
+					.collect();
+
+		assertEquals(100, responses.size());
+		for (int i = 0; i < responses.size(); i++) {
+			assertEquals("RECORD-" + i, responses.get(i));
+		}
+	}
+
+	@Test(timeout=60000)
+	public void testNoResponse() {
+		final List<String> responses =
+				NatsRequestor
+					.newRequestor()
+					.withNatsURL(NATS_URL)
+					.withSubject(SUBJECT + ".nobody")
+					.withRequestTimeout(Duration.ofMillis(200))
+					.withFailOnTimeout(false)
+					.request(records(3), String.class)
+					.collect();
+
+		assertEquals(3, responses.size());
+		for (String response : responses) {
+			assertNull(response);
+		}
+	}
+
+	@Test(timeout=60000, expected = SparkException.class)
+	public void testFailOnTimeout() {
+		NatsRequestor
+			.newRequestor()
+			.withNatsURL(NATS_URL)
+			.withSubject(SUBJECT + ".nobody")
+			.withRequestTimeout(Duration.ofMillis(200))
+			.request(records(3), String.class)
+			.collect();
+	}
+}
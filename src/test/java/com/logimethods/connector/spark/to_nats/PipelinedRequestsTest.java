@@ -0,0 +1,95 @@
+package com.logimethods.connector.spark.to_nats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+
+public class PipelinedRequestsTest {
+
+	protected static final ScheduledExecutorService responder = Executors.newScheduledThreadPool(4);
+
+	/**
+	 * Responds with the request in upper case, after a delay decreasing with the requests (so the responses come out of order).
+	 */
+	protected static Function<byte[], CompletableFuture<byte[]>> sender(AtomicInteger inFlight, AtomicInteger maxInFlight, long delayMs) {
+		final AtomicInteger count = new AtomicInteger();
+		return payload -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			final CompletableFuture<byte[]> response = new CompletableFuture<byte[]>();
+			final long delay = Math.max(0, delayMs - count.getAndIncrement());
+			responder.schedule(() -> {
+				inFlight.decrementAndGet();
+				response.complete(new String(payload, StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8));
+			}, delay, TimeUnit.MILLISECONDS);
+			return response;
+		};
+	}
+
+	protected static PipelinedRequests<String, String> requests(List<String> records, Function<byte[], CompletableFuture<byte[]>> sender,
+																int maxInFlight, long timeoutMs, boolean failOnTimeout, Timer latency, Counter timeouts) {
+		return new PipelinedRequests<String, String>(records.iterator(), s -> s.getBytes(StandardCharsets.UTF_8),
+													bytes -> new String(bytes, StandardCharsets.UTF_8), sender,
+													maxInFlight, TimeUnit.MILLISECONDS.toNanos(timeoutMs), failOnTimeout, latency, timeouts);
+	}
+
+	@Test
+	public void testOrderAndWindow() throws InterruptedException {
+		final List<String> records = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			records.add("record-" + i);
+		}
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final Timer latency = new Timer();
+		final PipelinedRequests<String, String> responses = requests(records, sender(inFlight, maxInFlight, 20), 8, 5000, true, latency, new Counter());
+
+		int i = 0;
+		while (responses.hasNext()) {
+			assertEquals("RECORD-" + i++, responses.next());
+			assertTrue(responses.inFlight() <= 8);
+		}
+		assertEquals(50, i);
+		assertTrue(maxInFlight.get() <= 8);
+		// The requests have been pipelined
+		assertTrue(maxInFlight.get() > 1);
+		// The latencies are recorded by the responding threads
+		for (int wait = 0; (wait < 100) && (latency.getCount() < 50); wait++) {
+			Thread.sleep(10);
+		}
+		assertEquals(50, latency.getCount());
+	}
+
+	@Test
+	public void testTimeout() {
+		final Counter timeouts = new Counter();
+		final Function<byte[], CompletableFuture<byte[]>> silent = payload -> new CompletableFuture<byte[]>();
+		final PipelinedRequests<String, String> responses = requests(Arrays.asList("a", "b"), silent, 2, 50, false, new Timer(), timeouts);
+		assertNull(responses.next());
+		assertNull(responses.next());
+		assertFalse(responses.hasNext());
+		assertEquals(2, timeouts.getCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFailOnTimeout() {
+		final Function<byte[], CompletableFuture<byte[]>> silent = payload -> new CompletableFuture<byte[]>();
+		requests(Arrays.asList("a"), silent, 2, 50, true, new Timer(), new Counter()).next();
+	}
+}